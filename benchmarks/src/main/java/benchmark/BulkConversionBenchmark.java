@@ -0,0 +1,80 @@
+package benchmark;
+
+import controller.ConverterController;
+import model.CurrencyRegistry;
+import model.StoredCurrency;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting an array of amounts with the bulk API against converting each amount with BigDecimal.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkConversionBenchmark {
+
+    @Param({"100000"})
+    private int size;
+
+    private ConverterController controller;
+    private int fromId;
+    private int toId;
+    private BigDecimal rate;
+    private int toDigits;
+    private BigDecimal[] decimalAmounts;
+    private BigDecimal[] decimalResults;
+    private double[] doubleAmounts;
+    private double[] doubleResults;
+    private long[] minorAmounts;
+    private long[] minorResults;
+
+    @Setup
+    public void setUp() {
+        this.controller = new ConverterController(StoredCurrency.fromJSON(Payloads.latestUSD()));
+        this.fromId = this.controller.getCurrencyId("British Pound");
+        this.toId = this.controller.getCurrencyId("Japanese Yen");
+        this.rate = this.controller.getSnapshot().getCrossRate(this.fromId, this.toId);
+        this.toDigits = CurrencyRegistry.minorDigitsOf(this.toId);
+
+        Random random = new Random(42);
+        this.decimalAmounts = new BigDecimal[this.size];
+        this.decimalResults = new BigDecimal[this.size];
+        this.doubleAmounts = new double[this.size];
+        this.doubleResults = new double[this.size];
+        this.minorAmounts = new long[this.size];
+        this.minorResults = new long[this.size];
+        for (int i = 0; i < this.size; i++) {
+            long cents = random.nextInt(100_000_000);
+            this.decimalAmounts[i] = BigDecimal.valueOf(cents, 2);
+            this.doubleAmounts[i] = this.decimalAmounts[i].doubleValue();
+            this.minorAmounts[i] = cents;
+        }
+    }
+
+    @Benchmark
+    public BigDecimal[] bigDecimalLoop() {
+        for (int i = 0; i < this.size; i++) {
+            this.decimalResults[i] = this.controller.convert(this.decimalAmounts[i], this.rate, this.toDigits);
+        }
+        return this.decimalResults;
+    }
+
+    @Benchmark
+    public double[] bulkDoubles() {
+        this.controller.convertAll(this.fromId, this.toId, this.doubleAmounts, this.doubleResults);
+        return this.doubleResults;
+    }
+
+    @Benchmark
+    public long[] bulkMinorUnits() {
+        this.controller.convertAll(this.fromId, this.toId, this.minorAmounts, this.minorResults);
+        return this.minorResults;
+    }
+}
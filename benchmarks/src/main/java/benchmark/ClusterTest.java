@@ -0,0 +1,281 @@
+package benchmark;
+
+import controller.ClusterNode;
+import controller.ConverterController;
+import controller.SnapshotListener;
+import model.StoredCurrency;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The ClusterTest class runs a cluster of converters in separate JVMs on the loopback interface against a
+ * StubRatesServer and checks that only the leader contacts the API.
+ *
+ * It starts the members, waits for every one of them to have rates, and checks that the stub was asked once. It then
+ * refreshes a follower, which must not contact the stub, and the leader, whose new rates must reach every follower.
+ * Finally it kills the leader and checks that the next member takes over, fetches the rates and pushes them to the
+ * members left. Run it with java -cp benchmarks/target/benchmarks.jar benchmark.ClusterTest and these system
+ * properties:
+ * <pre>
+ *  clustertest.members     The number of members, at least 3 (default 3)
+ *  clustertest.heartbeatMs The heartbeat interval of the members (default 250)
+ *  clustertest.leaseMs     The lease of the members (default 2500)
+ *  clustertest.timeoutMs   The longest wait for any step (default 20000)
+ * </pre>
+ */
+public class ClusterTest {
+
+    public static void main(String[] args) throws Exception {
+        int size = Math.max(3, Integer.getInteger("clustertest.members", 3));
+        long heartbeatMillis = Long.getLong("clustertest.heartbeatMs", 250);
+        long leaseMillis = Long.getLong("clustertest.leaseMs", 2500);
+        long timeoutMillis = Long.getLong("clustertest.timeoutMs", 20000);
+
+        StringBuilder members = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                members.append(',');
+            }
+            members.append("127.0.0.1:").append(freePort());
+        }
+
+        List<Member> cluster = new ArrayList<>();
+        try (StubRatesServer stub = new StubRatesServer(Payloads.latestUSD(), StubRatesServer.Mode.CANNED)) {
+            try {
+                long start = System.nanoTime();
+                for (int i = 0; i < size; i++) {
+                    cluster.add(new Member(i, stub, members.toString(), heartbeatMillis, leaseMillis));
+                }
+                for (Member member : cluster) {
+                    member.awaitPublished(timeoutMillis);
+                }
+                check(stub.getRequests() == 1, "every member has rates after " + stub.getRequests()
+                        + " request(s) to the API, in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                        + " ms");
+                check(cluster.get(0).isLeader(timeoutMillis) && !cluster.get(1).isLeader(timeoutMillis),
+                        "member 0 leads");
+
+                stub.setMode(StubRatesServer.Mode.CHANGING);
+                cluster.get(1).refresh(timeoutMillis);
+                check(stub.getRequests() == 1, "refreshing a follower does not contact the API");
+
+                cluster.get(0).refresh(timeoutMillis);
+                for (Member member : cluster.subList(1, size)) {
+                    member.awaitPublished(timeoutMillis);
+                }
+                check(stub.getRequests() == 2, "refreshing the leader contacts the API once and reaches "
+                        + (size - 1) + " follower(s)");
+
+                long killed = System.nanoTime();
+                cluster.get(0).kill();
+                if (!cluster.get(1).awaitLeader(timeoutMillis)) {
+                    throw new IllegalStateException("member 1 did not take over");
+                }
+                System.out.printf("member 1 took over %d ms after the leader was killed%n",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - killed));
+                cluster.get(1).refresh(timeoutMillis);
+                for (Member member : cluster.subList(2, size)) {
+                    member.awaitPublished(timeoutMillis);
+                }
+                check(stub.getRequests() >= 3, "the new leader contacts the API and reaches " + (size - 2)
+                        + " follower(s), " + stub.getRequests() + " request(s) to the API in total");
+            }
+            finally {
+                for (Member member : cluster) {
+                    member.kill();
+                }
+            }
+        }
+    }
+
+    private static void check(boolean passed, String description) {
+        if (!passed) {
+            throw new IllegalStateException("failed: " + description);
+        }
+        System.out.println("ok: " + description);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(directory)) {
+            walk.forEach(paths::add);
+        }
+        Collections.sort(paths, Collections.reverseOrder());
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Member is a cluster member running MemberMain in its own JVM, driven through its standard input and output.
+     */
+    private static final class Member {
+
+        private final int index;
+        private final Path dataDirectory;
+        private final Process process;
+        private final PrintWriter commands;
+        private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+        Member(int index, StubRatesServer stub, String members, long heartbeatMillis, long leaseMillis)
+                throws IOException {
+            this.index = index;
+            this.dataDirectory = Files.createTempDirectory("currency-clustertest");
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            this.process = new ProcessBuilder(java,
+                    "-cp", System.getProperty("java.class.path"),
+                    "-Dcurrency.data.dir=" + this.dataDirectory,
+                    "-Dcurrency.api.url=" + stub.getUri(),
+                    "-Dcurrency.refresh.jitterSeconds=0",
+                    "-Dcurrency.cluster.members=" + members,
+                    "-Dcurrency.cluster.member=" + index,
+                    "-Dcurrency.cluster.heartbeatMs=" + heartbeatMillis,
+                    "-Dcurrency.cluster.leaseMs=" + leaseMillis,
+                    MemberMain.class.getName())
+                    .redirectErrorStream(true)
+                    .start();
+            this.commands = new PrintWriter(new OutputStreamWriter(this.process.getOutputStream(),
+                    StandardCharsets.UTF_8), true);
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    read();
+                }
+            }, "clustertest-member-" + index);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void read() {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(this.process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.startsWith("published") && !line.startsWith("leader") && !line.startsWith("refreshed")) {
+                        System.out.println("member " + this.index + ": " + line);
+                    }
+                    this.lines.add(line);
+                }
+            }
+            catch (IOException e) {
+                return;
+            }
+        }
+
+        /**
+         * Waits for the member to print a line starting with a prefix, skipping the lines before it.
+         * @param prefix The prefix
+         * @param timeoutMillis The longest time to wait
+         * @return The line
+         * @throws InterruptedException If interrupted while waiting
+         * @throws IllegalStateException If no such line was printed in time
+         */
+        private String await(String prefix, long timeoutMillis) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (true) {
+                String line = this.lines.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (line == null) {
+                    throw new IllegalStateException("member " + this.index + " did not print " + prefix);
+                }
+                if (line.startsWith(prefix)) {
+                    return line;
+                }
+            }
+        }
+
+        void awaitPublished(long timeoutMillis) throws InterruptedException {
+            await("published", timeoutMillis);
+        }
+
+        void refresh(long timeoutMillis) throws InterruptedException {
+            this.commands.println("refresh");
+            await("refreshed", timeoutMillis);
+        }
+
+        boolean isLeader(long timeoutMillis) throws InterruptedException {
+            this.commands.println("leader");
+            return await("leader", timeoutMillis).endsWith("true");
+        }
+
+        boolean awaitLeader(long timeoutMillis) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (System.nanoTime() < deadline) {
+                if (isLeader(timeoutMillis)) {
+                    return true;
+                }
+                Thread.sleep(50);
+            }
+            return false;
+        }
+
+        void kill() throws IOException, InterruptedException {
+            this.process.destroyForcibly().waitFor();
+            if (Files.exists(this.dataDirectory)) {
+                deleteRecursively(this.dataDirectory);
+            }
+        }
+    }
+
+    /**
+     * MemberMain is run in a new JVM as one member of the cluster.
+     * It prints "published" whenever it publishes a snapshot, and answers the commands "refresh" with "refreshed"
+     * once the refresh is done and "leader" with "leader" followed by whether it leads the cluster.
+     */
+    public static class MemberMain {
+
+        public static void main(String[] args) throws IOException, InterruptedException {
+            ConverterController controller = new ConverterController();
+            final ClusterNode node = controller.getClusterNode();
+            if (node == null) {
+                throw new IllegalStateException("The cluster could not be joined");
+            }
+            controller.addSnapshotListener(new SnapshotListener() {
+                @Override
+                public void snapshotPublished(StoredCurrency snapshot) {
+                    System.out.println("published " + snapshot.getDate() + " " + snapshot.getRate("EUR"));
+                }
+            });
+
+            BufferedReader commands = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String command;
+            while ((command = commands.readLine()) != null) {
+                if (command.equals("refresh")) {
+                    try {
+                        controller.refresh().get();
+                    }
+                    catch (ExecutionException e) {
+                        System.out.println("Refresh failed: " + e.getCause().getMessage());
+                    }
+                    System.out.println("refreshed");
+                }
+                else if (command.equals("leader")) {
+                    System.out.println("leader " + node.isLeader());
+                }
+            }
+            controller.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package benchmark;
+
+import controller.ConverterController;
+import model.CrossRateMatrix;
+import model.Money;
+import model.StoredCurrency;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rate lookups and conversions of ConverterController against a captured rate snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConversionBenchmark {
+
+    private ConverterController controller;
+    private BigDecimal amount;
+    private BigDecimal rate;
+    private int fromId;
+    private int toId;
+    private Money money;
+    private CrossRateMatrix crossRates;
+
+    @Setup
+    public void setUp() {
+        this.controller = new ConverterController(StoredCurrency.fromJSON(Payloads.latestUSD()));
+        this.amount = new BigDecimal("1234.56");
+        this.rate = this.controller.getCurrencyRate("Euro");
+        this.fromId = this.controller.getCurrencyId("British Pound");
+        this.toId = this.controller.getCurrencyId("Japanese Yen");
+        this.money = Money.of(this.amount, this.fromId);
+        this.crossRates = this.controller.getSnapshot().getCrossRateMatrix();
+    }
+
+    @Benchmark
+    public BigDecimal convert() {
+        return this.controller.convert(this.amount, this.rate);
+    }
+
+    @Benchmark
+    public BigDecimal convertPair() {
+        return this.controller.convert(this.fromId, this.toId, this.amount);
+    }
+
+    @Benchmark
+    public Money convertMoney() {
+        return this.controller.convert(this.money, this.toId);
+    }
+
+    @Benchmark
+    public long convertMinorUnits() {
+        return Money.convertMinorUnits(this.money.getMinorUnits(), this.fromId, this.toId, this.crossRates);
+    }
+
+    @Benchmark
+    public BigDecimal getCurrencyRateByName() {
+        return this.controller.getCurrencyRate("Euro");
+    }
+
+    @Benchmark
+    public BigDecimal getCurrencyRateById() {
+        return this.controller.getCurrencyRate(this.toId);
+    }
+}
@@ -0,0 +1,99 @@
+package benchmark;
+
+import model.CurrencyGraph;
+import model.CurrencyRegistry;
+import model.RateTable;
+import model.StoredCurrency;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures updating the best rates of a CurrencyGraph sized for every registered currency when a cross quote improves
+ * on the rate through the base currency, and when it worsens again so the rates through the base are best once more.
+ * The graph holds the captured rates as quotes between USD and every other currency, in both directions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CurrencyGraphBenchmark {
+
+    /**
+     * A graph with a EUR to GBP quote just below the rate through USD, or just above it once improved.
+     */
+    public abstract static class Quotes {
+
+        CurrencyGraph graph;
+        int fromId;
+        int toId;
+        double improvedRate;
+        double worsenedRate;
+
+        void setUp() {
+            StoredCurrency snapshot = StoredCurrency.fromJSON(Payloads.latestUSD());
+            RateTable table = snapshot.getRateTable();
+            int baseId = CurrencyRegistry.idOf("USD");
+            this.graph = new CurrencyGraph();
+            for (int id = 0; id < table.size(); id++) {
+                if (id != baseId && table.hasRate(id)) {
+                    double rate = table.getRateAsDouble(id);
+                    this.graph.setQuote(baseId, id, rate);
+                    this.graph.setQuote(id, baseId, 1 / rate);
+                }
+            }
+            this.fromId = CurrencyRegistry.idOf("EUR");
+            this.toId = CurrencyRegistry.idOf("GBP");
+            double throughBase = this.graph.getBestRate(this.fromId, this.toId);
+            this.improvedRate = throughBase * 1.001;
+            this.worsenedRate = throughBase * 0.999;
+        }
+    }
+
+    /**
+     * Starts every invocation from the worsened quote.
+     */
+    @State(Scope.Thread)
+    public static class Improving extends Quotes {
+
+        @Setup(Level.Trial)
+        public void setUpGraph() {
+            setUp();
+        }
+
+        @Setup(Level.Invocation)
+        public void worsen() {
+            this.graph.setQuote(this.fromId, this.toId, this.worsenedRate);
+        }
+    }
+
+    /**
+     * Starts every invocation from the improved quote.
+     */
+    @State(Scope.Thread)
+    public static class Worsening extends Quotes {
+
+        @Setup(Level.Trial)
+        public void setUpGraph() {
+            setUp();
+        }
+
+        @Setup(Level.Invocation)
+        public void improve() {
+            this.graph.setQuote(this.fromId, this.toId, this.improvedRate);
+        }
+    }
+
+    @Benchmark
+    public double setQuoteImproving(Improving state) {
+        state.graph.setQuote(state.fromId, state.toId, state.improvedRate);
+        return state.graph.getBestRate(state.fromId, state.toId);
+    }
+
+    @Benchmark
+    public double setQuoteWorsening(Worsening state) {
+        state.graph.setQuote(state.fromId, state.toId, state.worsenedRate);
+        return state.graph.getBestRate(state.fromId, state.toId);
+    }
+}
@@ -0,0 +1,46 @@
+package benchmark;
+
+import model.CurrencyRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures finding currencies by what a user types: an exact name, a name in another case, the completions of a
+ * prefix and the closest match of a misspelled name.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CurrencyLookupBenchmark {
+
+    private final int[] completions = new int[16];
+
+    @Setup
+    public void setUp() {
+        CurrencyRegistry.closestMatch("warm up the index");
+    }
+
+    @Benchmark
+    public int idOfName() {
+        return CurrencyRegistry.idOfName("Japanese Yen");
+    }
+
+    @Benchmark
+    public int idOfNameIgnoringCase() {
+        return CurrencyRegistry.idOfName("japanese yen");
+    }
+
+    @Benchmark
+    public int complete() {
+        return CurrencyRegistry.complete("dol", this.completions);
+    }
+
+    @Benchmark
+    public int closestMatch() {
+        return CurrencyRegistry.closestMatch("Japanse Yenn");
+    }
+}
@@ -0,0 +1,353 @@
+package benchmark;
+
+import controller.ConverterController;
+import metrics.LatencyHistogram;
+import model.CurrencyRegistry;
+import model.StoredCurrency;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * The LoadTest class drives the converter end to end against a StubRatesServer and reports how it holds up.
+ *
+ * It first measures the cold start of ConverterController, from a new JVM to the first usable snapshot, both with no
+ * snapshot file, where the rates have to be fetched, and with the snapshot file left by the previous start. Each cold
+ * start runs in its own JVM so class loading and JIT compilation are part of the measurement.
+ *
+ * It then converts random amounts between random currencies on the configured number of threads, while another
+ * thread keeps refreshing the converter's rates from the stub in the configured mode, and reports the throughput,
+ * the latency percentiles and the bytes allocated per conversion. Run it with
+ * java -cp benchmarks/target/benchmarks.jar benchmark.LoadTest and these system properties:
+ * <pre>
+ *  loadtest.threads          The number of converting threads (default the number of processors)
+ *  loadtest.warmupSeconds    How long to convert before measuring (default 5)
+ *  loadtest.seconds          How long to measure (default 10)
+ *  loadtest.coldStarts       The number of cold starts of each kind (default 3)
+ *  loadtest.stubMode         The StubRatesServer mode while converting (default CHANGING)
+ *  loadtest.stubDelayMs      The delay of the SLOW mode in milliseconds (default 500)
+ *  loadtest.stubFailureRate  The fraction of failures of the FLAKY mode (default 0.5)
+ *  loadtest.fetchIntervalMs  The pause between refreshes while converting in milliseconds (default 100)
+ * </pre>
+ */
+public class LoadTest {
+
+    private static final int AMOUNT_COUNT = 4096;
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.getInteger("loadtest.threads", Runtime.getRuntime().availableProcessors());
+        long warmupSeconds = Long.getLong("loadtest.warmupSeconds", 5);
+        long seconds = Long.getLong("loadtest.seconds", 10);
+        int coldStarts = Integer.getInteger("loadtest.coldStarts", 3);
+        StubRatesServer.Mode mode = StubRatesServer.Mode.valueOf(System.getProperty("loadtest.stubMode", "CHANGING"));
+
+        try (StubRatesServer stub = new StubRatesServer(Payloads.latestUSD(), StubRatesServer.Mode.CANNED)) {
+            stub.setDelayMillis(Long.getLong("loadtest.stubDelayMs", 500));
+            stub.setFailureRate(Double.parseDouble(System.getProperty("loadtest.stubFailureRate", "0.5")));
+
+            if (coldStarts > 0) {
+                measureColdStarts(stub, coldStarts);
+            }
+            measureConversions(stub, mode, threads, warmupSeconds, seconds);
+        }
+    }
+
+    /**
+     * Starts the converter in new JVMs, without and then with a snapshot file, and prints the median times.
+     * @param stub The stub the converter fetches rates from
+     * @param runs The number of starts of each kind
+     * @throws IOException If a JVM could not be started or its data directory could not be created
+     * @throws InterruptedException If interrupted while waiting for a JVM
+     */
+    private static void measureColdStarts(StubRatesServer stub, int runs) throws IOException, InterruptedException {
+        long[][] withoutSnapshot = new long[runs][];
+        long[][] withSnapshot = new long[runs][];
+        for (int run = 0; run < runs; run++) {
+            Path dataDirectory = Files.createTempDirectory("currency-loadtest");
+            try {
+                withoutSnapshot[run] = startConverter(stub, dataDirectory);
+                withSnapshot[run] = startConverter(stub, dataDirectory);
+            }
+            finally {
+                deleteRecursively(dataDirectory);
+            }
+        }
+        printColdStarts("cold start without snapshot", withoutSnapshot);
+        printColdStarts("cold start with snapshot", withSnapshot);
+    }
+
+    /**
+     * Runs ColdStart in a new JVM with the same class path.
+     * @param stub The stub the converter fetches rates from
+     * @param dataDirectory The directory of the snapshot file and rate history
+     * @return The nanoseconds from creating the controller to the first usable snapshot, followed by the milliseconds
+     * from the start of the JVM to the same point
+     * @throws IOException If the JVM could not be started or did not report its times
+     * @throws InterruptedException If interrupted while waiting for the JVM
+     */
+    private static long[] startConverter(StubRatesServer stub, Path dataDirectory)
+            throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java,
+                "-cp", System.getProperty("java.class.path"),
+                "-Dcurrency.data.dir=" + dataDirectory,
+                "-Dcurrency.api.url=" + stub.getUri(),
+                ColdStart.class.getName())
+                .redirectErrorStream(true)
+                .start();
+
+        String last = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                last = line;
+            }
+        }
+        if (process.waitFor() != 0 || last == null || !last.startsWith("ready ")) {
+            throw new IOException("Cold start failed: " + last);
+        }
+        String[] times = last.split(" ");
+        return new long[] {Long.parseLong(times[1]), Long.parseLong(times[2])};
+    }
+
+    private static void printColdStarts(String name, long[][] runs) {
+        long[] controller = new long[runs.length];
+        long[] jvm = new long[runs.length];
+        for (int i = 0; i < runs.length; i++) {
+            controller[i] = runs[i][0];
+            jvm[i] = runs[i][1];
+        }
+        Arrays.sort(controller);
+        Arrays.sort(jvm);
+        System.out.printf("%-30s median %8.1f ms to first snapshot, %6d ms from JVM start (%d runs)%n",
+                name, controller[runs.length / 2] / 1e6, jvm[runs.length / 2], runs.length);
+    }
+
+    /**
+     * Converts on many threads while rates are fetched from the stub in the given mode, and prints the results.
+     * @param stub The stub rates are fetched from
+     * @param mode The mode of the stub while converting
+     * @param threads The number of converting threads
+     * @param warmupSeconds How long to convert before measuring
+     * @param seconds How long to measure
+     * @throws Exception If the converter could not be started or a thread failed
+     */
+    private static void measureConversions(StubRatesServer stub, StubRatesServer.Mode mode, int threads,
+                                           long warmupSeconds, long seconds) throws Exception {
+        Path dataDirectory = Files.createTempDirectory("currency-loadtest");
+        System.setProperty("currency.data.dir", dataDirectory.toString());
+        System.setProperty("currency.api.url", stub.getUri().toString());
+        ConverterController controller = new ConverterController();
+        try {
+            StoredCurrency snapshot = controller.getSnapshot();
+            stub.setMode(mode);
+
+            int[] ids = new int[CurrencyRegistry.size()];
+            int count = 0;
+            for (int id = 0; id < ids.length; id++) {
+                if (snapshot.getRate(id) != null) {
+                    ids[count++] = id;
+                }
+            }
+            final int[] currencies = Arrays.copyOf(ids, count);
+
+            final LatencyHistogram conversions = new LatencyHistogram("conversion");
+            final LatencyHistogram fetches = new LatencyHistogram("fetch");
+            final AtomicLong fetchFailures = new AtomicLong();
+            final AtomicLong allocatedBytes = new AtomicLong();
+            final AtomicLong measuredConversions = new AtomicLong();
+            final long measureStart = System.nanoTime() + Duration.ofSeconds(warmupSeconds).toNanos();
+            final long measureEnd = measureStart + Duration.ofSeconds(seconds).toNanos();
+            final CountDownLatch finished = new CountDownLatch(threads);
+            final List<Throwable> failures = new ArrayList<>();
+            final ConverterController converter = controller;
+
+            Thread fetcher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    fetch(converter, measureEnd, fetches, fetchFailures);
+                }
+            }, "loadtest-fetcher");
+            fetcher.setDaemon(true);
+            fetcher.start();
+
+            for (int t = 0; t < threads; t++) {
+                final long seed = t;
+                Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            convert(converter, currencies, seed, measureStart, measureEnd, conversions,
+                                    measuredConversions, allocatedBytes);
+                        }
+                        catch (RuntimeException e) {
+                            synchronized (failures) {
+                                failures.add(e);
+                            }
+                        }
+                        finally {
+                            finished.countDown();
+                        }
+                    }
+                }, "loadtest-worker-" + t);
+                worker.start();
+            }
+            finished.await();
+            fetcher.join();
+            if (!failures.isEmpty()) {
+                throw new IllegalStateException("A converting thread failed", failures.get(0));
+            }
+
+            double elapsedSeconds = seconds;
+            System.out.printf("conversions on %d threads, stub %s, %d s%n", threads, mode, seconds);
+            System.out.printf("  throughput  %,.0f conversions/s%n", measuredConversions.get() / elapsedSeconds);
+            printLatency("  latency", conversions);
+            System.out.printf("  allocation  %.1f bytes/conversion%n",
+                    (double) allocatedBytes.get() / Math.max(1, measuredConversions.get()));
+            System.out.printf("refreshes from the stub: %d, failed %d%n", fetches.getCount() + fetchFailures.get(),
+                    fetchFailures.get());
+            printLatency("  latency", fetches);
+        }
+        finally {
+            controller.close();
+            deleteRecursively(dataDirectory);
+        }
+    }
+
+    /**
+     * Converts random amounts between random currencies until the end of the measurement.
+     * @param controller The controller to convert with
+     * @param currencies The ids of the currencies with rates
+     * @param seed The seed of the random choices
+     * @param measureStart When to start recording, as a System.nanoTime value
+     * @param measureEnd When to stop, as a System.nanoTime value
+     * @param latencies The histogram of conversion times
+     * @param conversions The count of recorded conversions
+     * @param allocatedBytes The count of bytes allocated by recorded conversions
+     */
+    private static void convert(ConverterController controller, int[] currencies, long seed, long measureStart,
+                                long measureEnd, LatencyHistogram latencies, AtomicLong conversions,
+                                AtomicLong allocatedBytes) {
+        Random random = new Random(seed);
+        BigDecimal[] amounts = new BigDecimal[AMOUNT_COUNT];
+        int[] from = new int[AMOUNT_COUNT];
+        int[] to = new int[AMOUNT_COUNT];
+        for (int i = 0; i < AMOUNT_COUNT; i++) {
+            amounts[i] = BigDecimal.valueOf(random.nextInt(10_000_000), 2);
+            from[i] = currencies[random.nextInt(currencies.length)];
+            to[i] = currencies[random.nextInt(currencies.length)];
+        }
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long count = 0;
+        long allocatedAtStart = -1;
+        int i = 0;
+        long now = System.nanoTime();
+        while (now < measureEnd) {
+            boolean measuring = now >= measureStart;
+            if (measuring && allocatedAtStart < 0) {
+                allocatedAtStart = threadBean.getThreadAllocatedBytes(threadId);
+            }
+            controller.convert(from[i], to[i], amounts[i]);
+            long end = System.nanoTime();
+            if (measuring) {
+                latencies.record(end - now);
+                count++;
+            }
+            i = (i + 1) & (AMOUNT_COUNT - 1);
+            now = end;
+        }
+        if (allocatedAtStart >= 0) {
+            allocatedBytes.addAndGet(threadBean.getThreadAllocatedBytes(threadId) - allocatedAtStart);
+        }
+        conversions.addAndGet(count);
+    }
+
+    /**
+     * Refreshes the rates of the controller from the stub until the end of the measurement, pausing between
+     * refreshes, so the converting threads see every change of the stub's rates.
+     * @param controller The controller to refresh
+     * @param measureEnd When to stop, as a System.nanoTime value
+     * @param latencies The histogram of successful refresh times
+     * @param failures The count of failed refreshes
+     */
+    private static void fetch(ConverterController controller, long measureEnd, LatencyHistogram latencies,
+                              AtomicLong failures) {
+        long interval = Long.getLong("loadtest.fetchIntervalMs", 100);
+        while (System.nanoTime() < measureEnd) {
+            long start = System.nanoTime();
+            try {
+                controller.refresh().get();
+                latencies.record(System.nanoTime() - start);
+            }
+            catch (ExecutionException e) {
+                failures.incrementAndGet();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                Thread.sleep(interval);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void printLatency(String name, LatencyHistogram histogram) {
+        System.out.printf("%s     p50 %.3f ms, p99 %.3f ms, p999 %.3f ms, max %.3f ms%n", name,
+                histogram.getP50Millis(), histogram.getP99Millis(), histogram.getP999Millis(),
+                histogram.getMaxMillis());
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(directory)) {
+            walk.forEach(paths::add);
+        }
+        Collections.sort(paths, Collections.reverseOrder());
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * ColdStart is run in a new JVM to time creating a ConverterController until its first usable snapshot.
+     * It prints "ready", the nanoseconds taken by the controller and the milliseconds since the JVM started.
+     */
+    public static class ColdStart {
+
+        public static void main(String[] args) {
+            long start = System.nanoTime();
+            ConverterController controller = new ConverterController();
+            controller.getSnapshot();
+            long elapsed = System.nanoTime() - start;
+            long sinceJvmStart = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+            controller.close();
+            System.out.println("ready " + elapsed + " " + sinceJvmStart);
+        }
+    }
+}
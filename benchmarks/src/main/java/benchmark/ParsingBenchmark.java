@@ -0,0 +1,30 @@
+package benchmark;
+
+import model.StoredCurrency;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures turning a captured API response into a StoredCurrency object.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParsingBenchmark {
+
+    private String payload;
+
+    @Setup
+    public void setUp() {
+        this.payload = Payloads.latestUSD();
+    }
+
+    @Benchmark
+    public StoredCurrency storeCurrency() {
+        return StoredCurrency.fromJSON(this.payload);
+    }
+}
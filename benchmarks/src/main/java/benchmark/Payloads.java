@@ -0,0 +1,43 @@
+package benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Payloads provides the captured API responses used by the benchmarks so that no benchmark contacts the API.
+ */
+public final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * Reads a captured API response from the benchmark resources.
+     * @param name The name of the resource
+     * @return The captured JSON string
+     */
+    public static String read(String name) {
+        try (InputStream in = Payloads.class.getResourceAsStream("/" + name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The captured response of the latest rates relative to the U.S. dollar
+     */
+    public static String latestUSD() {
+        return read("latest_usd.json");
+    }
+}
@@ -0,0 +1,48 @@
+package benchmark;
+
+import model.SnapshotFile;
+import model.StoredCurrency;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures storing and recreating the snapshot file used between runs of the converter.
+ * A temporary file is used so the snapshot of the working directory is left alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+
+    private StoredCurrency storedCurrency;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.storedCurrency = StoredCurrency.fromJSON(Payloads.latestUSD());
+        this.file = Files.createTempFile("stored_currency", ".snapshot");
+        SnapshotFile.write(this.storedCurrency, this.file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Benchmark
+    public void serialize() throws IOException {
+        SnapshotFile.write(this.storedCurrency, this.file);
+    }
+
+    @Benchmark
+    public StoredCurrency deserialize() throws IOException {
+        return SnapshotFile.read(this.file);
+    }
+}
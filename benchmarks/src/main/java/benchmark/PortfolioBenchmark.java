@@ -0,0 +1,85 @@
+package benchmark;
+
+import model.CrossRateMatrix;
+import model.CurrencyRegistry;
+import model.Money;
+import model.Portfolio;
+import model.StoredCurrency;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures revaluing a portfolio at new rates against converting each of its positions, and updating a position.
+ * The rates alternate between the captured ones and the same rates moved by 1% so every revaluation sees new rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PortfolioBenchmark {
+
+    @Param({"1000000"})
+    private int positions;
+
+    private CrossRateMatrix[] rates;
+    private Money[] amounts;
+    private Portfolio portfolio;
+    private int reportingId;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String payload = Payloads.latestUSD();
+        this.rates = new CrossRateMatrix[] {
+                StoredCurrency.fromJSON(payload).getCrossRateMatrix(),
+                StoredCurrency.fromJSON(payload.replace("\"EUR\":0.9000089991", "\"EUR\":0.9090090891"))
+                        .getCrossRateMatrix()
+        };
+        this.reportingId = CurrencyRegistry.idOf("EUR");
+
+        int[] currencies = new int[CurrencyRegistry.size()];
+        int count = 0;
+        for (int id = 0; id < currencies.length; id++) {
+            if (this.rates[0].getCrossRate(id, this.reportingId) != null) {
+                currencies[count++] = id;
+            }
+        }
+
+        Random random = new Random(42);
+        this.amounts = new Money[this.positions];
+        this.portfolio = new Portfolio(this.reportingId);
+        for (int i = 0; i < this.positions; i++) {
+            this.amounts[i] = Money.ofMinorUnits(random.nextInt(100_000_000), currencies[random.nextInt(count)]);
+            this.portfolio.put("position-" + i, this.amounts[i]);
+        }
+        this.portfolio.revalue(this.rates[0]);
+    }
+
+    @Benchmark
+    public Money revalue() {
+        this.portfolio.revalue(this.rates[++this.next & 1]);
+        return this.portfolio.getTotal();
+    }
+
+    @Benchmark
+    public long convertEachPosition() {
+        CrossRateMatrix current = this.rates[++this.next & 1];
+        long total = 0;
+        for (Money amount : this.amounts) {
+            total += Money.convertMinorUnits(amount.getMinorUnits(), amount.getCurrencyId(), this.reportingId,
+                    current);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public Money updatePosition() {
+        int index = ++this.next % this.positions;
+        this.portfolio.put("position-" + index, this.amounts[(index + 1) % this.positions]);
+        return this.portfolio.getTotal();
+    }
+}
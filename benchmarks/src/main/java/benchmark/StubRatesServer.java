@@ -0,0 +1,214 @@
+package benchmark;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The StubRatesServer class stands in for the exchange rate API on a local port so load tests never contact it.
+ * It answers every GET of /latest according to its mode, which may be changed while it runs:
+ * <pre>
+ *  CANNED    The captured response, unchanged
+ *  SLOW      The captured response after the configured delay
+ *  FAILING   503 Service Unavailable
+ *  FLAKY     503 Service Unavailable for the configured fraction of requests and the captured response otherwise
+ *  CHANGING  The captured rates, each moved by up to 0.1% at random, dated today
+ * </pre>
+ * GETs of a dated path such as /2020-01-31 are answered the same way, except that a successful response holds the
+ * captured rates moved by up to 1% as a function of the date, dated on the last weekday on or before it, so a
+ * backfill gets the same rates for a date however many times it asks.
+ */
+public class StubRatesServer implements Closeable {
+
+    /**
+     * The ways the stub can answer.
+     */
+    public enum Mode {
+        CANNED,
+        SLOW,
+        FAILING,
+        FLAKY,
+        CHANGING
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String payload;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile Mode mode;
+    private volatile long delayMillis = 500;
+    private volatile double failureRate = 0.5;
+
+    /**
+     * Constructor for a StubRatesServer object, which starts listening on a free loopback port right away.
+     * @param payload The captured API response to serve
+     * @param mode How to answer
+     * @throws IOException If no port could be bound
+     */
+    public StubRatesServer(String payload, Mode mode) throws IOException {
+        this.payload = payload;
+        this.mode = mode;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange);
+            }
+        });
+        this.server.start();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        this.requests.incrementAndGet();
+        this.maxInFlight.accumulateAndGet(this.inFlight.incrementAndGet(), Math::max);
+        Mode current = this.mode;
+        try {
+            String path = exchange.getRequestURI().getPath();
+            LocalDate date = null;
+            if (!path.equals("/latest")) {
+                try {
+                    date = LocalDate.parse(path.substring(path.lastIndexOf('/') + 1));
+                }
+                catch (DateTimeParseException e) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+            }
+            if (current == Mode.SLOW) {
+                Thread.sleep(this.delayMillis);
+            }
+            boolean fail = current == Mode.FAILING
+                    || (current == Mode.FLAKY && ThreadLocalRandom.current().nextDouble() < this.failureRate);
+            if (fail) {
+                this.failures.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            String response = date != null ? datedPayload(date)
+                    : current == Mode.CHANGING ? changedPayload() : this.payload;
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+        }
+        finally {
+            this.inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Moves every captured rate but the base's by up to 0.1% and dates the response today.
+     * @return The changed response
+     */
+    private String changedPayload() {
+        JsonObject response = new JsonParser().parse(this.payload).getAsJsonObject();
+        String base = response.get("base").getAsString();
+        JsonObject rates = response.getAsJsonObject("rates");
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (Map.Entry<String, JsonElement> rate : rates.entrySet()) {
+            if (!rate.getKey().equals(base)) {
+                rate.setValue(new JsonParser().parse(Double.toString(
+                        rate.getValue().getAsDouble() * (1 + (random.nextDouble() - 0.5) * 0.002))));
+            }
+        }
+        response.addProperty("date", LocalDate.now().toString());
+        return response.toString();
+    }
+
+    /**
+     * Moves every captured rate but the base's by up to 1% as a function of the date and dates the response on the
+     * last weekday on or before the date, as the API does for weekends.
+     * @param date The requested date
+     * @return The response for the date
+     */
+    private String datedPayload(LocalDate date) {
+        while (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            date = date.minusDays(1);
+        }
+        JsonObject response = new JsonParser().parse(this.payload).getAsJsonObject();
+        String base = response.get("base").getAsString();
+        JsonObject rates = response.getAsJsonObject("rates");
+        Random random = new Random(date.toEpochDay());
+        for (Map.Entry<String, JsonElement> rate : rates.entrySet()) {
+            if (!rate.getKey().equals(base)) {
+                rate.setValue(new JsonParser().parse(Double.toString(
+                        rate.getValue().getAsDouble() * (1 + (random.nextDouble() - 0.5) * 0.02))));
+            }
+        }
+        response.addProperty("date", date.toString());
+        return response.toString();
+    }
+
+    /**
+     * @return The URL of the latest rates, for the currency.api.url system property
+     */
+    public URI getUri() {
+        return URI.create("http://127.0.0.1:" + this.server.getAddress().getPort() + "/latest");
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * @return The most requests the stub has been answering at once
+     */
+    public int getMaxInFlight() {
+        return this.maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+}
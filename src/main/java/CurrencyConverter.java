@@ -1,5 +1,12 @@
+import controller.BatchConverter;
 import controller.ConverterController;
+import controller.HistoryBackfill;
+import metrics.Metrics;
+import model.CurrencyRegistry;
 import view.ConverterGUI;
+import view.ConverterDaemon;
+import view.ConverterServer;
+import view.DaemonClient;
 
 import java.math.BigDecimal;
 
@@ -8,8 +15,63 @@ import java.math.BigDecimal;
  */
 public class CurrencyConverter {
 
+    private static final int DEFAULT_SERVER_PORT = 8080;
+
     public static void main(String[] args) {
-        if (args.length < 1 || args.length > 1) {
+        if (args.length < 1) {
+            System.out.println("usage: java CurrencyConverter client_mode");
+        }
+        else if (args[0].equalsIgnoreCase("BATCH")) {
+            if (args.length != 3) {
+                System.out.println("usage: java CurrencyConverter BATCH input_file output_file");
+            }
+            else {
+                Metrics.registerMBeans();
+                BatchConverter.run(new ConverterController(), args[1], args[2]);
+                if (Boolean.getBoolean("currency.metrics.dump")) {
+                    System.out.print(Metrics.dump());
+                }
+            }
+        }
+        else if (args[0].equalsIgnoreCase("BACKFILL")) {
+            if (args.length != 3) {
+                System.out.println("usage: java CurrencyConverter BACKFILL from_date to_date");
+            }
+            else {
+                ConverterController controller = new ConverterController();
+                HistoryBackfill.run(controller, args[1], args[2]);
+                controller.close();
+            }
+        }
+        else if (args[0].equalsIgnoreCase("SERVER")) {
+            if (args.length > 2) {
+                System.out.println("usage: java CurrencyConverter SERVER [port]");
+            }
+            else {
+                try {
+                    int port = args.length == 2 ? Integer.parseInt(args[1]) : DEFAULT_SERVER_PORT;
+                    Metrics.registerMBeans();
+                    ConverterServer.run(new ConverterController(), port);
+                } catch (NumberFormatException e) {
+                    System.out.println("usage: java CurrencyConverter SERVER [port]");
+                }
+            }
+        }
+        else if (args[0].equalsIgnoreCase("DAEMON")) {
+            if (args.length != 1) {
+                System.out.println("usage: java CurrencyConverter DAEMON");
+            }
+            else {
+                Metrics.registerMBeans();
+                ConverterDaemon.run(new ConverterController());
+            }
+        }
+        else if (args[0].equalsIgnoreCase("CLI") && args.length == 4) {
+            if (!DaemonClient.run(args[1], args[2], args[3])) {
+                System.exit(1);
+            }
+        }
+        else if (args.length > 1) {
             System.out.println("usage: java CurrencyConverter client_mode");
         }
         else if (args[0].equalsIgnoreCase("CLI")) {
@@ -19,9 +81,15 @@ public class CurrencyConverter {
             String newCurrency = controller.requestNewCurrency();
             BigDecimal rate = controller.getCurrencyRate(newCurrency);
 
-            controller.convert(amount, rate);
+            int minorDigits = CurrencyRegistry.minorDigitsOf(controller.getCurrencyId(newCurrency));
+            System.out.println(controller.convert(amount, rate, minorDigits));
+            if (controller.isStale()) {
+                System.out.println("Rates from " + controller.getSnapshot().getDate().toLocalDate() +
+                        " were used because newer rates could not be retrieved yet.");
+            }
         }
         else if (args[0].equalsIgnoreCase("GUI")) {
+            Metrics.registerMBeans();
             ConverterGUI.openGUI();
         }
         else {
@@ -0,0 +1,260 @@
+package controller;
+
+import model.CurrencyRegistry;
+import model.StoredCurrency;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+
+/**
+ * The BatchConverter class converts large CSV files of (amount, target currency) rows in a single run.
+ * The input file is split into byte ranges aligned to line boundaries and each range is converted by its own worker
+ * into a part file. The part files are then concatenated in order, so memory use only depends on the length of the
+ * longest row, not on the size of the input.
+ */
+public class BatchConverter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int INITIAL_LINE_LENGTH = 1 << 12;
+
+    private final ConverterController controller;
+    private final int workers;
+
+    /**
+     * Constructor for a BatchConverter object.
+     * @param controller The controller holding the rate snapshot used for every row
+     * @param workers The number of ranges the input is split into and converted concurrently
+     */
+    public BatchConverter(ConverterController controller, int workers) {
+        this.controller = controller;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Converts every row of the input file and writes the results to the output file.
+     * Each output row is the input row followed by the converted amount, or by ERROR if the row could not be converted.
+     * @param input The CSV file of amount,currency rows where the currency is an ISO code
+     * @param output The CSV file to write the converted rows to
+     * @return The number of rows read from the input file, not counting blank lines
+     * @throws IOException If the input could not be read or the output could not be written
+     */
+    public long convertFile(Path input, Path output) throws IOException {
+        final StoredCurrency snapshot = this.controller.getSnapshot();
+        long size = Files.size(input);
+        int parts = size < BUFFER_SIZE ? 1 : this.workers;
+
+        List<Path> partFiles = new ArrayList<>();
+        List<Future<Long>> results = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(parts);
+        try {
+            for (int i = 0; i < parts; i++) {
+                final long start = size * i / parts;
+                final long end = size * (i + 1) / parts;
+                final Path partFile = Files.createTempFile(output.toAbsolutePath().getParent(), "batch", ".part");
+                partFiles.add(partFile);
+                results.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws IOException {
+                        return convertRange(snapshot, input, start, end, partFile);
+                    }
+                }));
+            }
+
+            long rows = 0;
+            for (Future<Long> result : results) {
+                rows += awaitResult(result);
+            }
+            concatenate(partFiles, output);
+            return rows;
+        }
+        finally {
+            executor.shutdownNow();
+            for (Path partFile : partFiles) {
+                Files.deleteIfExists(partFile);
+            }
+        }
+    }
+
+    /**
+     * Converts the rows that start within the given byte range of the input file.
+     * A row crossing the end of the range belongs to this range; a row crossing its start belongs to the previous one.
+     * The line buffer grows to hold rows longer than it, so every row is echoed and converted whole.
+     * @param snapshot The currency data every row is converted with
+     * @param input The CSV file to read from
+     * @param start The offset of the first byte of the range
+     * @param end The offset after the last byte of the range
+     * @param partFile The file the converted rows of this range are written to
+     * @return The number of rows converted, not counting blank lines
+     * @throws IOException If the input could not be read or the part file could not be written
+     */
+    private long convertRange(StoredCurrency snapshot, Path input, long start, long end, Path partFile)
+            throws IOException {
+        long rows = 0;
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+             Writer out = Files.newBufferedWriter(partFile, StandardCharsets.UTF_8)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            byte[] line = new byte[INITIAL_LINE_LENGTH];
+            int lineLength = 0;
+            boolean skipping = start > 0;
+            long position = skipping ? start - 1 : start;
+            long lineStart = position;
+
+            channel.position(position);
+            buffer.flip();
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                    buffer.flip();
+                }
+                byte b = buffer.get();
+                position++;
+
+                if (skipping) {
+                    if (b == '\n') {
+                        skipping = false;
+                        lineStart = position;
+                        if (lineStart >= end) {
+                            break;
+                        }
+                    }
+                    continue;
+                }
+                if (b == '\n') {
+                    if (convertLine(snapshot, line, lineLength, out)) {
+                        rows++;
+                    }
+                    lineLength = 0;
+                    lineStart = position;
+                    if (lineStart >= end) {
+                        break;
+                    }
+                }
+                else {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+            if (!skipping && lineLength > 0 && lineStart < end && convertLine(snapshot, line, lineLength, out)) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Converts a single row and writes it to the output.
+     * @param snapshot The currency data the row is converted with
+     * @param line The bytes of the row without its line terminator
+     * @param length The number of bytes in the row
+     * @param out The writer of the part file
+     * @return Whether the line held a row, which is false for a blank line
+     * @throws IOException If the row could not be written
+     */
+    private boolean convertLine(StoredCurrency snapshot, byte[] line, int length, Writer out) throws IOException {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        if (length == 0) {
+            return false;
+        }
+        String row = new String(line, 0, length, StandardCharsets.UTF_8);
+        out.write(row);
+        out.write(',');
+
+        int comma = row.indexOf(',');
+        int currencyId = comma < 0 ? -1
+                : CurrencyRegistry.idOf(row.substring(comma + 1).trim().toUpperCase(Locale.ROOT));
+        BigDecimal rate = snapshot.getRate(currencyId);
+        if (rate == null) {
+            out.write("ERROR");
+        }
+        else {
+            try {
+                BigDecimal amount = new BigDecimal(row.substring(0, comma).trim());
+                out.write(this.controller.convert(amount, rate, CurrencyRegistry.minorDigitsOf(currencyId))
+                        .toPlainString());
+            } catch (NumberFormatException e) {
+                out.write("ERROR");
+            }
+        }
+        out.write('\n');
+        return true;
+    }
+
+    /**
+     * Waits for a worker to finish and rethrows its failure as an IOException.
+     * @param result The pending result of the worker
+     * @return The number of rows converted by the worker
+     * @throws IOException If the worker failed or was interrupted
+     */
+    private static long awaitResult(Future<Long> result) throws IOException {
+        try {
+            return result.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch conversion was interrupted");
+        }
+    }
+
+    /**
+     * Appends the part files to the output file in order.
+     * @param partFiles The part files in the order of their ranges
+     * @param output The file to write to
+     * @throws IOException If a part file could not be read or the output could not be written
+     */
+    private static void concatenate(List<Path> partFiles, Path output) throws IOException {
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Path partFile : partFiles) {
+                try (FileChannel in = FileChannel.open(partFile, StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a batch conversion of the given files using one worker per available processor.
+     * @param controller The controller holding the rate snapshot
+     * @param input The name of the input CSV file
+     * @param output The name of the output CSV file
+     */
+    public static void run(ConverterController controller, String input, String output) {
+        BatchConverter converter = new BatchConverter(controller, Runtime.getRuntime().availableProcessors());
+        try {
+            long rows = converter.convertFile(Paths.get(input), Paths.get(output));
+            System.out.println(rows + " rows converted");
+        }
+        catch (IOException | IllegalStateException e) {
+            System.out.println("Batch conversion failed: " + e.getMessage());
+        }
+    }
+}
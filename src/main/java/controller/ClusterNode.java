@@ -0,0 +1,700 @@
+package controller;
+
+import model.RateSource;
+import model.SnapshotFile;
+import model.StoredCurrency;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The ClusterNode class lets a fleet of converters share the rates fetched by a single member, so the API is
+ * contacted once per refresh whatever the size of the fleet.
+ *
+ * Every member lists the same members in the same order, and the first member that has been heard from within the
+ * lease is the leader. Only the leader fetches rates from the upstream RateSource, and it pushes every new snapshot
+ * to the other members in the compact SnapshotFile format. The members send each other a heartbeat carrying the date
+ * of their snapshot, and the leader pushes its snapshot again to any member that reports an older one, so a member
+ * that restarts catches up at its next heartbeat.
+ *
+ * A follower never contacts the API while the leader is alive. When the leader has not been heard from within the
+ * lease, the next member takes over and fetches the rates itself, right away if its snapshot is stale. A follower
+ * without any rates that gets none from the leader within two leases also fetches them itself. Members connect to
+ * each other over plain TCP and accept snapshots from any client, so the cluster port must only be reachable by the
+ * members.
+ *
+ * Every member is sent its frames by a thread of its own, which holds at most one heartbeat and one snapshot waiting
+ * to be sent, so a member that is down or stops reading never delays the frames of the others. A write that does not
+ * complete within the lease closes the connection. The settings come from these system properties:
+ * <pre>
+ *  currency.cluster.members     The host:port of every member, comma separated, in the same order on every member
+ *  currency.cluster.member      The index of this member in the list, whose host and port it listens on, which must
+ *                               be set whenever currency.cluster.members is
+ *  currency.cluster.heartbeatMs The interval between heartbeats (default 1000)
+ *  currency.cluster.leaseMs     How long a member is considered alive after it was last heard from (default 5000)
+ * </pre>
+ *
+ * Frames are laid out as magic (int), type (byte), sender index (int), snapshot version (long) and payload length
+ * (int), followed by the payload, which is empty for a heartbeat and the encoded snapshot for a snapshot frame.
+ */
+public class ClusterNode implements RateSource, SnapshotListener, Closeable {
+
+    private static final int MAGIC = 0x43434c55;
+    private static final byte HEARTBEAT = 1;
+    private static final byte SNAPSHOT = 2;
+    private static final int MAX_PAYLOAD_BYTES = 1 << 20;
+    private static final long NO_SNAPSHOT = Long.MIN_VALUE;
+    private static final byte[] NO_PAYLOAD = new byte[0];
+
+    private final RateSource upstream;
+    private final int index;
+    private final InetSocketAddress address;
+    private final Peer[] peers;
+    private final long heartbeatMillis;
+    private final long leaseNanos;
+    private final Object lock = new Object();
+    private final ScheduledExecutorService heartbeats;
+    private final ExecutorService connections;
+    private ConverterController controller;
+    private ServerSocket serverSocket;
+    private long startedAt;
+    private boolean leader;
+    private byte[] receivedPayload;
+    private StoredCurrency receivedSnapshot;
+    private volatile boolean closed;
+
+    /**
+     * Constructor for a ClusterNode object.
+     * @param upstream The source the leader fetches rates from
+     * @param members The address of every member, in the same order on every member
+     * @param index The index of this member in the list
+     * @param heartbeat The interval between heartbeats
+     * @param lease How long a member is considered alive after it was last heard from
+     * @throws IllegalArgumentException If the index is not in the list or the lease is not longer than the heartbeat
+     */
+    public ClusterNode(RateSource upstream, List<InetSocketAddress> members, int index, Duration heartbeat,
+                       Duration lease) {
+        if (index < 0 || index >= members.size()) {
+            throw new IllegalArgumentException("Cluster member " + index + " is not one of the "
+                    + members.size() + " members");
+        }
+        if (lease.compareTo(heartbeat) <= 0) {
+            throw new IllegalArgumentException("The cluster lease must be longer than the heartbeat interval");
+        }
+        this.upstream = upstream;
+        this.index = index;
+        this.address = members.get(index);
+        this.heartbeatMillis = heartbeat.toMillis();
+        this.leaseNanos = lease.toNanos();
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cluster-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.peers = new Peer[members.size()];
+        for (int i = 0; i < members.size(); i++) {
+            if (i != index) {
+                this.peers[i] = new Peer(i, members.get(i), this.heartbeats, (int) this.heartbeatMillis,
+                        lease.toMillis());
+            }
+        }
+        this.connections = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cluster-connection");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Creates the ClusterNode configured by system properties.
+     * @param upstream The source the leader fetches rates from
+     * @return The configured ClusterNode, or null if currency.cluster.members is not set
+     * @throws IllegalArgumentException If the members or the index of this member are malformed, or the index is not
+     * set
+     */
+    static ClusterNode fromSystemProperties(RateSource upstream) {
+        String members = System.getProperty("currency.cluster.members");
+        if (members == null || members.trim().isEmpty()) {
+            return null;
+        }
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String member : members.split(",")) {
+            String hostAndPort = member.trim();
+            int colon = hostAndPort.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Cluster member " + hostAndPort + " is not of the form host:port");
+            }
+            addresses.add(new InetSocketAddress(hostAndPort.substring(0, colon),
+                    Integer.parseInt(hostAndPort.substring(colon + 1))));
+        }
+        String member = System.getProperty("currency.cluster.member");
+        if (member == null || member.trim().isEmpty()) {
+            throw new IllegalArgumentException("currency.cluster.member must give the index of this member");
+        }
+        return new ClusterNode(upstream, addresses, Integer.parseInt(member.trim()),
+                Duration.ofMillis(Long.getLong("currency.cluster.heartbeatMs", 1000)),
+                Duration.ofMillis(Long.getLong("currency.cluster.leaseMs", 5000)));
+    }
+
+    /**
+     * Starts listening for the other members and sending them heartbeats.
+     * @param controller The controller whose snapshots are shared, which this node registers itself with
+     * @throws IOException If the port of this member could not be bound
+     */
+    void start(ConverterController controller) throws IOException {
+        this.controller = controller;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(this.address);
+        this.startedAt = System.nanoTime();
+        controller.addSnapshotListener(this);
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "cluster-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        this.heartbeats.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    heartbeat();
+                }
+                catch (RuntimeException e) {
+                    System.out.println("Cluster heartbeat failed: " + e.getMessage());
+                }
+            }
+        }, 0, this.heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String getName() {
+        return "cluster member " + this.index + " of " + this.upstream.getName();
+    }
+
+    /**
+     * Fetches rates from the upstream source if this member is the leader.
+     * A follower instead leaves its snapshot to be replaced by the one the leader pushes. A follower without rates
+     * waits for them until it becomes the leader or two leases have passed, and then fetches them itself.
+     * @return The fetched rates, or null if this member is a follower that has rates or the source reported them
+     * unchanged
+     * @throws IOException If the upstream source failed
+     * @throws InterruptedIOException If interrupted while waiting for the leader
+     */
+    @Override
+    public StoredCurrency fetchRates() throws IOException {
+        long deadline = System.nanoTime() + 2 * this.leaseNanos;
+        synchronized (this.lock) {
+            while (!isLeader() && !this.closed) {
+                if (this.controller.peekSnapshot().hasRates()) {
+                    return null;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    System.out.println("No rates were received from the cluster leader, fetching them directly");
+                    break;
+                }
+                try {
+                    this.lock.wait(Math.max(1, Math.min(TimeUnit.NANOSECONDS.toMillis(remaining),
+                            this.heartbeatMillis)));
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the cluster leader");
+                }
+            }
+        }
+        return this.upstream.fetchRates();
+    }
+
+    /**
+     * Pushes every snapshot this member publishes while it is the leader to the other members.
+     * @param snapshot The new snapshot
+     */
+    @Override
+    public void snapshotPublished(final StoredCurrency snapshot) {
+        if (!snapshot.hasRates() || !isLeader()) {
+            return;
+        }
+        try {
+            this.heartbeats.execute(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] payload = encode(snapshot);
+                    for (Peer peer : ClusterNode.this.peers) {
+                        if (peer != null) {
+                            peer.offer(new Frame(SNAPSHOT, ClusterNode.this.index, version(snapshot), payload));
+                        }
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            return;
+        }
+    }
+
+    /**
+     * Checks whether this member fetches the rates for the cluster.
+     * A member is the leader once it has been running for a lease and no member before it in the list has been
+     * heard from within the lease.
+     * @return Whether this member is the leader
+     */
+    public boolean isLeader() {
+        if (this.closed) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (now - this.startedAt < this.leaseNanos) {
+            return false;
+        }
+        for (int i = 0; i < this.index; i++) {
+            if (this.peers[i].isAlive(now, this.leaseNanos)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The index of this member in the list of members
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Queues a heartbeat for every other member, or the leader's snapshot for members that report an older one, and
+     * refreshes the rates if this member has just become the leader with stale rates.
+     */
+    private void heartbeat() {
+        boolean leading = isLeader();
+        StoredCurrency current = this.controller.peekSnapshot();
+        long version = version(current);
+        Frame snapshot = null;
+        for (Peer peer : this.peers) {
+            if (peer == null) {
+                continue;
+            }
+            if (leading && version != NO_SNAPSHOT && peer.snapshotVersion < version) {
+                if (snapshot == null) {
+                    snapshot = new Frame(SNAPSHOT, this.index, version, encode(current));
+                }
+                peer.offer(snapshot);
+            }
+            else {
+                peer.offer(new Frame(HEARTBEAT, this.index, version, NO_PAYLOAD));
+            }
+        }
+
+        synchronized (this.lock) {
+            boolean becameLeader = leading && !this.leader;
+            this.leader = leading;
+            this.lock.notifyAll();
+            if (!becameLeader) {
+                return;
+            }
+        }
+        System.out.println("Cluster member " + this.index + " is now fetching the rates");
+        if (!current.hasRates() || current.isStale(LocalDateTime.now())) {
+            this.controller.refresh();
+        }
+    }
+
+    /**
+     * Accepts connections from the other members until the node is closed.
+     */
+    private void accept() {
+        while (!this.closed) {
+            final Socket socket;
+            try {
+                socket = this.serverSocket.accept();
+            }
+            catch (IOException e) {
+                if (!this.closed) {
+                    System.out.println("Cluster connection could not be accepted: " + e.getMessage());
+                }
+                continue;
+            }
+            try {
+                this.connections.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        receive(socket);
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Reads the frames sent by a member until it closes the connection or is not heard from within the lease, in
+     * which case the member opens a new connection when it sends again.
+     * @param socket The connection
+     */
+    private void receive(Socket socket) {
+        try (Socket connection = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()))) {
+            connection.setSoTimeout((int) TimeUnit.NANOSECONDS.toMillis(this.leaseNanos));
+            while (!this.closed) {
+                int magic;
+                try {
+                    magic = in.readInt();
+                }
+                catch (EOFException e) {
+                    return;
+                }
+                byte type = in.readByte();
+                int sender = in.readInt();
+                long version = in.readLong();
+                int length = in.readInt();
+                if (magic != MAGIC || sender < 0 || sender >= this.peers.length || sender == this.index
+                        || length < 0 || length > MAX_PAYLOAD_BYTES) {
+                    System.out.println("Cluster connection from " + connection.getRemoteSocketAddress()
+                            + " sent a malformed frame");
+                    return;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                Peer peer = this.peers[sender];
+                peer.heard(System.nanoTime(), version);
+                if (type == SNAPSHOT) {
+                    received(sender, payload);
+                }
+            }
+        }
+        catch (SocketTimeoutException e) {
+            return;
+        }
+        catch (IOException | RuntimeException e) {
+            if (!this.closed) {
+                System.out.println("Cluster connection failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Publishes a snapshot pushed by another member if it is newer than the one in use.
+     * A snapshot of the same date replaces the one in use only when it comes from a member before this one, which
+     * lets the leader correct rates it fetched again within a day.
+     * The same snapshot pushed again, as happens when a heartbeat sent before it arrived makes the leader push it
+     * twice, is not published again.
+     * @param sender The index of the member that sent it
+     * @param payload The encoded snapshot
+     * @throws IOException If the snapshot could not be decoded
+     */
+    private void received(int sender, byte[] payload) throws IOException {
+        StoredCurrency pushed = null;
+        StoredCurrency current;
+        do {
+            synchronized (this.lock) {
+                current = this.controller.peekSnapshot();
+                if (current == this.receivedSnapshot && Arrays.equals(payload, this.receivedPayload)) {
+                    return;
+                }
+                if (pushed == null) {
+                    pushed = SnapshotFile.decode(ByteBuffer.wrap(payload));
+                }
+                if (!pushed.hasRates() || (current.hasRates() && (pushed.getDate().isBefore(current.getDate())
+                        || (!pushed.getDate().isAfter(current.getDate()) && sender > this.index)))) {
+                    return;
+                }
+                this.receivedPayload = payload;
+                this.receivedSnapshot = pushed;
+            }
+            // Published outside the lock so heartbeats are not held up by persisting, and judged again if the
+            // refresher published a snapshot in between
+        } while (!this.controller.publish(current, pushed));
+
+        synchronized (this.lock) {
+            this.lock.notifyAll();
+        }
+    }
+
+    private static byte[] encode(StoredCurrency snapshot) {
+        ByteBuffer buffer = SnapshotFile.encode(snapshot);
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.get(payload);
+        return payload;
+    }
+
+    /**
+     * @param snapshot A snapshot
+     * @return The version of the snapshot heartbeats compare, which orders snapshots by the date of their rates
+     */
+    private static long version(StoredCurrency snapshot) {
+        return snapshot.hasRates() ? snapshot.getDate().toEpochSecond(ZoneOffset.UTC) : NO_SNAPSHOT;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        }
+        catch (IOException e) {
+            return;
+        }
+    }
+
+    /**
+     * Stops sending heartbeats and accepting connections, so the other members elect a new leader once the lease of
+     * this one runs out.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.heartbeats.shutdownNow();
+        this.connections.shutdownNow();
+        if (this.serverSocket != null) {
+            try {
+                this.serverSocket.close();
+            }
+            catch (IOException e) {
+                System.out.println("Cluster port could not be closed: " + e.getMessage());
+            }
+        }
+        for (Peer peer : this.peers) {
+            if (peer != null) {
+                peer.close();
+            }
+        }
+        synchronized (this.lock) {
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Frame is a frame waiting to be sent to a member.
+     */
+    private static final class Frame {
+
+        private final byte type;
+        private final int sender;
+        private final long version;
+        private final byte[] payload;
+
+        Frame(byte type, int sender, long version, byte[] payload) {
+            this.type = type;
+            this.sender = sender;
+            this.version = version;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Peer is another member of the cluster, with the thread and connection frames are sent to it on and what was
+     * last heard from it.
+     */
+    private static final class Peer {
+
+        private final int index;
+        private final InetSocketAddress address;
+        private final ExecutorService sender;
+        private final ScheduledExecutorService watchdog;
+        private final int connectTimeoutMillis;
+        private final long writeTimeoutMillis;
+        private final AtomicReference<Frame> pendingSnapshot = new AtomicReference<>();
+        private final AtomicReference<Frame> pendingHeartbeat = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile long heardAt;
+        private volatile boolean heard;
+        private volatile long snapshotVersion = NO_SNAPSHOT;
+        private volatile Socket socket;
+        private DataOutputStream out;
+        private boolean reachable;
+
+        /**
+         * Constructor for a Peer object.
+         * @param index The index of the member
+         * @param address The address of the member
+         * @param watchdog The executor that closes connections whose writes take too long
+         * @param connectTimeoutMillis The longest time to wait for a connection
+         * @param writeTimeoutMillis The longest time to wait for a frame to be written
+         */
+        Peer(final int index, InetSocketAddress address, ScheduledExecutorService watchdog, int connectTimeoutMillis,
+             long writeTimeoutMillis) {
+            this.index = index;
+            this.address = address;
+            this.sender = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "cluster-peer-" + index);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.watchdog = watchdog;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.writeTimeoutMillis = writeTimeoutMillis;
+        }
+
+        void heard(long now, long version) {
+            this.heardAt = now;
+            this.heard = true;
+            this.snapshotVersion = version;
+        }
+
+        boolean isAlive(long now, long leaseNanos) {
+            return this.heard && now - this.heardAt < leaseNanos;
+        }
+
+        /**
+         * Queues a frame for the sender thread of this member without waiting for it to be sent.
+         * A frame of the same type still waiting is replaced, and a waiting snapshot is sent instead of a heartbeat,
+         * as every frame tells the member that the sender is alive.
+         * @param frame The frame
+         */
+        void offer(Frame frame) {
+            (frame.type == SNAPSHOT ? this.pendingSnapshot : this.pendingHeartbeat).set(frame);
+            if (!this.scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                this.sender.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendPending();
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+
+        /**
+         * Sends the frame waiting for this member, and records that the member has a snapshot once it is sent, so it
+         * is not sent again before its next heartbeat reports otherwise.
+         */
+        private void sendPending() {
+            this.scheduled.set(false);
+            Frame frame = this.pendingSnapshot.getAndSet(null);
+            if (frame != null) {
+                this.pendingHeartbeat.set(null);
+            }
+            else {
+                frame = this.pendingHeartbeat.getAndSet(null);
+            }
+            if (frame != null && send(frame) && frame.type == SNAPSHOT) {
+                this.snapshotVersion = Math.max(this.snapshotVersion, frame.version);
+            }
+        }
+
+        /**
+         * Sends a frame, connecting first if there is no open connection.
+         * A connection the member has closed, for example after it restarted, is replaced once right away. A member
+         * that cannot be reached is tried again at the next frame, and only a member becoming unreachable is logged.
+         * The connection is closed if the frame is not written within the write timeout.
+         * @param frame The frame
+         * @return Whether the frame was sent
+         */
+        private synchronized boolean send(Frame frame) {
+            boolean reconnected = false;
+            while (true) {
+                boolean wasConnected = this.out != null;
+                ScheduledFuture<?> timeout = null;
+                try {
+                    if (this.out == null) {
+                        connect();
+                    }
+                    final Socket connection = this.socket;
+                    timeout = this.watchdog.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            closeQuietly(connection);
+                        }
+                    }, this.writeTimeoutMillis, TimeUnit.MILLISECONDS);
+                    this.out.writeInt(MAGIC);
+                    this.out.writeByte(frame.type);
+                    this.out.writeInt(frame.sender);
+                    this.out.writeLong(frame.version);
+                    this.out.writeInt(frame.payload.length);
+                    this.out.write(frame.payload);
+                    this.out.flush();
+                    this.reachable = true;
+                    return true;
+                }
+                catch (RejectedExecutionException e) {
+                    disconnect();
+                    return false;
+                }
+                catch (IOException e) {
+                    disconnect();
+                    if (wasConnected && !reconnected) {
+                        reconnected = true;
+                        continue;
+                    }
+                    if (this.reachable) {
+                        System.out.println("Cluster member " + this.index + " could not be reached: "
+                                + e.getMessage());
+                    }
+                    this.reachable = false;
+                    return false;
+                }
+                finally {
+                    if (timeout != null) {
+                        timeout.cancel(false);
+                    }
+                }
+            }
+        }
+
+        private void connect() throws IOException {
+            Socket connection = new Socket();
+            try {
+                connection.setTcpNoDelay(true);
+                connection.connect(this.address, this.connectTimeoutMillis);
+                this.out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            }
+            catch (IOException e) {
+                closeQuietly(connection);
+                throw e;
+            }
+            this.socket = connection;
+        }
+
+        private synchronized void disconnect() {
+            if (this.socket != null) {
+                closeQuietly(this.socket);
+            }
+            this.socket = null;
+            this.out = null;
+        }
+
+        /**
+         * Stops sending frames and closes the connection, without waiting for a frame being written.
+         */
+        void close() {
+            this.sender.shutdownNow();
+            Socket connection = this.socket;
+            if (connection != null) {
+                closeQuietly(connection);
+            }
+        }
+    }
+}
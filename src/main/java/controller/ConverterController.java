@@ -1,86 +1,473 @@
 package controller;
 
+import metrics.ConversionEvent;
+import metrics.Metrics;
+import metrics.PersistEvent;
+import model.BulkConverter;
+import model.CrossRateMatrix;
+import model.CurrencyRegistry;
+import model.Money;
+import model.Portfolio;
+import model.RateHistory;
+import model.RateSource;
+import model.SharedRateRegion;
+import model.SnapshotFile;
 import model.StoredCurrency;
 import view.ConverterCLI;
 
 import java.io.*;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The ConverterController class handles the interactions between the model and view.
+ * The rates in use are held as an immutable StoredCurrency snapshot behind an atomic reference. Conversions read the
+ * latest snapshot without locking while a RateRefresher publishes new ones in the background, and SnapshotListeners are
+ * told about every new snapshot.
  */
 public class ConverterController {
 
-    private StoredCurrency storedCurrency;
+    private static final String SNAPSHOT_FILE_NAME = "stored_currency.snapshot";
+    private static final String LEGACY_FILE_NAME = "stored_currency.ser";
+    private static final String HISTORY_DIRECTORY_NAME = "rate_history";
+    private static final Duration FIRST_FETCH_TIMEOUT = Duration.ofSeconds(30);
+    private static final long SHARED_REGION_POLL_MILLIS = 50;
+    private static final long SHARED_REGION_TAKEOVER_MILLIS = 1000;
+
+    private final AtomicReference<StoredCurrency> snapshot;
+    private final List<SnapshotListener> listeners = new CopyOnWriteArrayList<>();
+    private final Object publishLock = new Object();
+    private final RateEventPublisher rateEvents;
+    private SharedRateRegion sharedRegion;
+    private volatile RateHistory rateHistory;
+    private volatile RateRefresher refresher;
+    private volatile ClusterNode cluster;
+    private ScheduledExecutorService takeover;
+    private boolean closed;
     private ConverterCLI cli;
-    private HashMap<String, String> currencyNames = createCurrencyNames();
 
     /**
      * Constructor for a ConverterController object.
-     * The currency stored in the serialized file is updated within the constructor.
+     * The currency stored in the snapshot file is used right away and refreshed in the background when it is stale.
+     *
+     * When the currency.shared.region system property names a file, the rates are shared with the other JVMs of the
+     * host through a SharedRateRegion of currency.shared.regionBytes bytes. The first JVM to open it refreshes the
+     * rates and writes every new snapshot into it, and the others never contact the API but pick up each new snapshot
+     * from the region as soon as it is written. They read the rate history without writing it, and try to take over
+     * as the writer every SHARED_REGION_TAKEOVER_MILLIS so the rates keep being refreshed once the writer exits.
+     *
+     * When the currency.cluster.members system property lists the converters of a fleet, this converter joins them
+     * as a ClusterNode, and only the leader of the cluster fetches the rates and pushes them to the others.
      */
     public ConverterController() {
-        this.storedCurrency = deserialize();
-        this.storedCurrency = updateCurrency();
+        this.snapshot = new AtomicReference<>(loadSnapshot());
+        this.rateEvents = new RateEventPublisher(this.snapshot.get());
+        this.listeners.add(this.rateEvents);
+        this.sharedRegion = openSharedRegion();
         this.cli = new ConverterCLI();
+
+        if (this.sharedRegion != null && !this.sharedRegion.isWriter()) {
+            this.rateHistory = openHistory(true);
+            followSharedRegion(this.snapshot.get());
+            Metrics.setSnapshotDate(this.snapshot.get().getDate());
+            startTakeover();
+            return;
+        }
+        this.rateHistory = openHistory(false);
+        Metrics.setSnapshotDate(this.snapshot.get().getDate());
+        startRefreshing();
+    }
+
+    /**
+     * Starts writing the shared rate region, if any, and refreshing the rates from the API or the cluster.
+     */
+    private void startRefreshing() {
+        appendHistory(this.snapshot.get());
+        writeSharedRegion(this.snapshot.get());
+        RateSource source = RateSource.fromSystemProperties();
+        this.cluster = startCluster(source);
+        RateRefresher started = new RateRefresher(this, this.cluster == null ? source : this.cluster,
+                RefreshSchedule.fromSystemProperties());
+        started.start();
+        this.refresher = started;
+    }
+
+    /**
+     * Follows the shared rate region in the background and tries to take over as its writer, so that a reader keeps
+     * its listeners up to date and starts refreshing the rates once the writer has exited.
+     */
+    private void startTakeover() {
+        this.takeover = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "shared-region-takeover");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.takeover.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                followSharedRegion(ConverterController.this.snapshot.get());
+                tryTakeOver();
+            }
+        }, SHARED_REGION_TAKEOVER_MILLIS, SHARED_REGION_TAKEOVER_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Establishes a HashMap of all currencies supported by the API with their abbreviations as their values
-     * @return HashMap of currencies
-     */
-    private static HashMap<String, String> createCurrencyNames() {
-        HashMap<String, String> currencyNames = new HashMap<>();
-        currencyNames.put("Australian Dollar", "AUD");
-        currencyNames.put("Bulgarian Lev", "BGN");
-        currencyNames.put("Brazilian Real", "BRL");
-        currencyNames.put("Canadian Dollar", "CAD");
-        currencyNames.put("Swiss Franc", "CHF");
-        currencyNames.put("Chinese Yuan", "CNY");
-        currencyNames.put("Czech Koruna", "CZK");
-        currencyNames.put("Danish Krone", "DKK");
-        currencyNames.put("Euro", "EUR");
-        currencyNames.put("British Pound", "GBP");
-        currencyNames.put("Hong Kong Dollar", "HKD");
-        currencyNames.put("Croatian Kuna", "HRK");
-        currencyNames.put("Hungarian Forint", "HUF");
-        currencyNames.put("Indonesian Rupiah", "IDR");
-        currencyNames.put("Israeli New Shekel", "ILS");
-        currencyNames.put("Indian Rupee", "INR");
-        currencyNames.put("Icelandic Krona", "ISK");
-        currencyNames.put("Japanese Yen", "JPY");
-        currencyNames.put("South Korean Won", "KRW");
-        currencyNames.put("Mexican Peso", "MXN");
-        currencyNames.put("Malaysian Ringgit", "MYR");
-        currencyNames.put("Norwegian Kroner", "NOK");
-        currencyNames.put("New Zealand Dollar", "NZD");
-        currencyNames.put("Philippine Peso", "PHP");
-        currencyNames.put("Polish Zloty", "PLN");
-        currencyNames.put("Romanian New Lei", "RON");
-        currencyNames.put("Russian Rouble", "RUB");
-        currencyNames.put("Swedish Krona", "SEK");
-        currencyNames.put("Singapore Dollar", "SGD");
-        currencyNames.put("Thai Baht", "THB");
-        currencyNames.put("Turkish New Lira", "TRY");
-        currencyNames.put("United States Dollar", "USD");
-        currencyNames.put("South African Rand", "ZAR");
-        return currencyNames;
-    }
-
-    /**
-     * Updates the data of storedCurrency if needed.
-     * If updated, the object is serialized in the file.
-     * @return The possibly updated StoredCurrency object
-     */
-    private StoredCurrency updateCurrency() {
-        storedCurrency.update();
-        if (storedCurrency.getJustUpdated()) {
-            storedCurrency.setJustUpdated(false);
-            serialize(storedCurrency);
+     * Becomes the writer of the shared rate region if no other JVM holds it any more, opening the rate history for
+     * writing and starting to refresh the rates.
+     */
+    private synchronized void tryTakeOver() {
+        if (this.closed || this.refresher != null) {
+            return;
+        }
+        try {
+            if (!this.sharedRegion.tryPromote()) {
+                return;
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Shared rate region could not be taken over: " + e.getMessage());
+            return;
+        }
+        this.takeover.shutdown();
+        followSharedRegion(this.snapshot.get());
+        this.rateHistory = openHistory(false);
+        startRefreshing();
+    }
+
+    /**
+     * Constructor for a ConverterController object that uses the given currency data as is.
+     * Nothing is read from or written to the snapshot file and the API is not contacted.
+     * @param storedCurrency The currency data to convert with
+     */
+    public ConverterController(StoredCurrency storedCurrency) {
+        this.snapshot = new AtomicReference<>(storedCurrency);
+        this.rateEvents = new RateEventPublisher(storedCurrency);
+        this.listeners.add(this.rateEvents);
+        this.cli = new ConverterCLI();
+    }
+
+    /**
+     * Makes new currency data the data used for conversions.
+     * The data is written to the snapshot file and added to the rate history, and every listener is notified.
+     * Publishes are made one at a time, so listeners and the files see them in the order they were made.
+     * @param currency The new currency data
+     */
+    void publish(StoredCurrency currency) {
+        synchronized (this.publishLock) {
+            this.snapshot.set(currency);
+            notifyListeners(currency);
+            writeSharedRegion(currency);
+
+            PersistEvent event = new PersistEvent();
+            event.begin();
+            long start = System.nanoTime();
+            saveSnapshot(currency);
+            appendHistory(currency);
+            Metrics.recordPersist(System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.date = currency.getDate().toLocalDate().toString();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Makes new currency data the data used for conversions if the data in use is still the data it was judged
+     * against, so data judged newer than a snapshot cannot replace one published since.
+     * @param expected The currency data that was in use when the new data was judged newer
+     * @param currency The new currency data
+     * @return Whether the new currency data was published
+     */
+    boolean publish(StoredCurrency expected, StoredCurrency currency) {
+        synchronized (this.publishLock) {
+            if (this.snapshot.get() != expected) {
+                return false;
+            }
+            publish(currency);
+            return true;
+        }
+    }
+
+    /**
+     * Tells every listener about new currency data that has become the data used for conversions.
+     * @param currency The new currency data
+     */
+    private void notifyListeners(StoredCurrency currency) {
+        Metrics.setSnapshotDate(currency.getDate());
+        for (SnapshotListener listener : this.listeners) {
+            try {
+                listener.snapshotPublished(currency);
+            }
+            catch (RuntimeException e) {
+                System.out.println("Snapshot listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Switches to the snapshot of the shared rate region if another JVM has written a newer one.
+     * Reading an unchanged region costs a single volatile read, so this is done on every request for the snapshot.
+     * @param current The snapshot in use
+     * @return The snapshot to use
+     */
+    private StoredCurrency followSharedRegion(StoredCurrency current) {
+        StoredCurrency shared;
+        try {
+            shared = this.sharedRegion.read();
+        }
+        catch (IOException e) {
+            return current;
+        }
+        if (shared == null || shared == current
+                || (current.hasRates() && shared.getDate().isBefore(current.getDate()))) {
+            return current;
+        }
+        if (this.snapshot.compareAndSet(current, shared)) {
+            notifyListeners(shared);
+        }
+        return this.snapshot.get();
+    }
+
+    /**
+     * Writes currency data into the shared rate region if this JVM is its writer.
+     * @param currency The currency data to share
+     */
+    private void writeSharedRegion(StoredCurrency currency) {
+        if (this.sharedRegion == null || !this.sharedRegion.isWriter() || !currency.hasRates()) {
+            return;
+        }
+        try {
+            this.sharedRegion.write(currency);
+        }
+        catch (IOException e) {
+            System.out.println("Shared rate region could not be written: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the shared rate region named by the currency.shared.region system property.
+     * @return The shared rate region, or null if the property is not set or the region could not be opened
+     */
+    private static SharedRateRegion openSharedRegion() {
+        String file = System.getProperty("currency.shared.region");
+        if (file == null || file.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return SharedRateRegion.open(Paths.get(file.trim()),
+                    Integer.getInteger("currency.shared.regionBytes", SharedRateRegion.DEFAULT_SIZE));
+        }
+        catch (IOException e) {
+            System.out.println("Shared rate region could not be opened: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Joins the cluster configured by the currency.cluster system properties.
+     * @param upstream The source the cluster leader fetches rates from
+     * @return The started cluster node, or null if no cluster is configured or it could not be joined, in which case
+     * this converter fetches its own rates
+     */
+    private ClusterNode startCluster(RateSource upstream) {
+        ClusterNode node;
+        try {
+            node = ClusterNode.fromSystemProperties(upstream);
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println("Cluster is misconfigured: " + e.getMessage());
+            return null;
+        }
+        if (node == null) {
+            return null;
+        }
+        try {
+            node.start(this);
+            return node;
+        }
+        catch (IOException e) {
+            System.out.println("Cluster could not be joined: " + e.getMessage());
+            node.close();
+            return null;
+        }
+    }
+
+    /**
+     * @return The node this converter joined the cluster with, or null if it fetches its own rates
+     */
+    public ClusterNode getClusterNode() {
+        return this.cluster;
+    }
+
+    /**
+     * Registers a listener to be notified of every new snapshot.
+     * @param listener The listener
+     */
+    public void addSnapshotListener(SnapshotListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeSnapshotListener(SnapshotListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Values a portfolio at the current rates and again at every new snapshot.
+     * @param portfolio The portfolio
+     * @return The listener that revalues the portfolio, which stops doing so once removed
+     */
+    public SnapshotListener trackPortfolio(final Portfolio portfolio) {
+        SnapshotListener listener = new SnapshotListener() {
+            @Override
+            public void snapshotPublished(StoredCurrency snapshot) {
+                portfolio.revalue(snapshot.getCrossRateMatrix());
+            }
+        };
+        addSnapshotListener(listener);
+        StoredCurrency current = this.snapshot.get();
+        if (current.hasRates()) {
+            portfolio.revalue(current.getCrossRateMatrix());
+        }
+        return listener;
+    }
+
+    /**
+     * @return The publisher of a RateEvent for every new snapshot, which can be subscribed to with any buffering
+     */
+    public RateEventPublisher getRateEvents() {
+        return this.rateEvents;
+    }
+
+    /**
+     * Finds the currency data to convert with.
+     * Only waits for the API if no rates have ever been retrieved.
+     * @return The latest currency data
+     * @throws IllegalStateException If no rates could be retrieved
+     */
+    public StoredCurrency getSnapshot() {
+        StoredCurrency current = this.snapshot.get();
+        if (this.refresher == null && this.sharedRegion != null) {
+            current = followSharedRegion(current);
+        }
+        Metrics.recordSnapshotRequest(current.hasRates());
+        if (!current.hasRates() && this.refresher != null) {
+            this.refresher.awaitFirstAttempt(FIRST_FETCH_TIMEOUT);
+            current = this.snapshot.get();
+        }
+        else if (!current.hasRates() && this.sharedRegion != null) {
+            current = awaitSharedRegion(current);
+        }
+        if (!current.hasRates()) {
+            throw new IllegalStateException("Currency rates are not available");
+        }
+        return current;
+    }
+
+    /**
+     * Retrieves new rates right away instead of waiting for the scheduled refresh.
+     * Concurrent callers share a single request to the API, as does a scheduled refresh that is due meanwhile.
+     * @return A future completed with the latest currency data once the refresh is done, or exceptionally if the rates
+     * could not be retrieved. A controller that does not contact the API completes it with its current data, which
+     * is the latest snapshot of the shared rate region if it reads one.
+     */
+    public CompletableFuture<StoredCurrency> refresh() {
+        if (this.refresher == null) {
+            StoredCurrency current = this.snapshot.get();
+            return CompletableFuture.completedFuture(
+                    this.sharedRegion == null ? current : followSharedRegion(current));
+        }
+        return this.refresher.refreshNow();
+    }
+
+    /**
+     * Waits for the writer of the shared rate region to write its first snapshot.
+     * @param current The snapshot in use, which holds no rates
+     * @return The snapshot to use, which still holds no rates if none was written in time
+     */
+    private StoredCurrency awaitSharedRegion(StoredCurrency current) {
+        long deadline = System.nanoTime() + FIRST_FETCH_TIMEOUT.toNanos();
+        while (!current.hasRates() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(SHARED_REGION_POLL_MILLIS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            current = followSharedRegion(current);
+        }
+        return current;
+    }
+
+    /**
+     * @return The latest currency data, which holds no rates if none have been retrieved yet
+     */
+    StoredCurrency peekSnapshot() {
+        return this.snapshot.get();
+    }
+
+    /**
+     * Finds the currency data to convert with without ever waiting for rates, for callers such as the GUI thread that
+     * must not block.
+     * @return The latest currency data, which holds no rates if none have been retrieved yet
+     */
+    public StoredCurrency getLatestSnapshot() {
+        StoredCurrency current = this.snapshot.get();
+        if (this.refresher == null && this.sharedRegion != null) {
+            current = followSharedRegion(current);
+        }
+        return current;
+    }
+
+    /**
+     * Checks whether the rates in use are out of date because newer rates could not be retrieved yet.
+     * @return Whether the rates in use are stale
+     */
+    public boolean isStale() {
+        return this.snapshot.get().isStale(LocalDateTime.now());
+    }
+
+    /**
+     * Stops refreshing the currency data in the background, leaves the cluster and completes the rate event stream.
+     */
+    public synchronized void close() {
+        this.closed = true;
+        if (this.takeover != null) {
+            this.takeover.shutdownNow();
+        }
+        if (this.cluster != null) {
+            this.cluster.close();
+        }
+        if (this.refresher != null) {
+            this.refresher.stop();
+        }
+        this.rateEvents.close();
+        if (this.sharedRegion != null) {
+            try {
+                this.sharedRegion.close();
+            }
+            catch (IOException e) {
+                System.out.println("Shared rate region could not be closed: " + e.getMessage());
+            }
         }
-        return storedCurrency;
     }
 
     /**
@@ -90,9 +477,163 @@ public class ConverterController {
      * @return The converted monetary amount
      */
     public BigDecimal convert(BigDecimal amount, BigDecimal rate) {
-        BigDecimal convertedAmount = amount.multiply(rate).setScale(2, RoundingMode.HALF_UP);
-        System.out.println(convertedAmount);
-        return convertedAmount;
+        return convert(amount, rate, 2);
+    }
+
+    /**
+     * Converts the inputted monetary amount to the selected currency
+     * @param amount The amount to convert to the new currency
+     * @param rate The rate of conversion from the original currency to the new currency
+     * @param minorDigits The number of minor unit digits of the new currency, which the result is rounded to
+     * @return The converted monetary amount
+     */
+    public BigDecimal convert(BigDecimal amount, BigDecimal rate, int minorDigits) {
+        if (!Metrics.countConversion()) {
+            return amount.multiply(rate).setScale(minorDigits, RoundingMode.HALF_UP);
+        }
+        ConversionEvent event = new ConversionEvent();
+        event.begin();
+        long start = System.nanoTime();
+        BigDecimal result = amount.multiply(rate).setScale(minorDigits, RoundingMode.HALF_UP);
+        Metrics.recordConversion(System.nanoTime() - start);
+        event.commit();
+        return result;
+    }
+
+    /**
+     * Converts a monetary amount to another currency using the precomputed cross rate of the pair.
+     * Only the result is allocated, as the amount is converted in minor units with long arithmetic.
+     * @param amount The amount to convert
+     * @param toId The id of the currency to convert to
+     * @return The converted amount, rounded to the minor units of the new currency
+     * @throws IllegalArgumentException If either currency is not supported
+     * @throws ArithmeticException If the converted amount is too large to be held in minor units
+     */
+    public Money convert(Money amount, int toId) {
+        if (!Metrics.countConversion()) {
+            return amount.convertTo(toId, getSnapshot().getCrossRateMatrix());
+        }
+        ConversionEvent event = new ConversionEvent();
+        event.begin();
+        long start = System.nanoTime();
+        Money result = amount.convertTo(toId, getSnapshot().getCrossRateMatrix());
+        Metrics.recordConversion(System.nanoTime() - start);
+        event.commit();
+        return result;
+    }
+
+    /**
+     * Converts a monetary amount between two currencies
+     * @param from The name of the currency to convert from
+     * @param to The name of the currency to convert to
+     * @param amount The amount to convert
+     * @return The converted monetary amount
+     * @throws IllegalArgumentException If either currency is not supported
+     */
+    public BigDecimal convert(String from, String to, BigDecimal amount) {
+        return convert(getCurrencyId(from), getCurrencyId(to), amount);
+    }
+
+    /**
+     * Converts a monetary amount between two currencies using the precomputed cross rate of the pair.
+     * The result is rounded to the minor units of the currency converted to, such as whole yen for JPY.
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @param amount The amount to convert
+     * @return The converted monetary amount
+     * @throws IllegalArgumentException If either currency is not supported
+     */
+    public BigDecimal convert(int fromId, int toId, BigDecimal amount) {
+        return convert(amount, getCrossRate(fromId, toId), CurrencyRegistry.minorDigitsOf(toId));
+    }
+
+    /**
+     * Converts many monetary amounts between two currencies at once, rounding each like convert does to the minor
+     * units of the currency converted to
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @param amounts The amounts to convert
+     * @param results The array the converted amounts are written to, which may be the amounts array itself
+     * @throws IllegalArgumentException If either currency is not supported or the arrays differ in length
+     */
+    public void convertAll(int fromId, int toId, double[] amounts, double[] results) {
+        BulkConverter.convert(amounts, getCrossRate(fromId, toId), CurrencyRegistry.minorDigitsOf(toId), results);
+    }
+
+    /**
+     * Converts many monetary amounts given in minor units between two currencies at once, rounding each like convert
+     * does
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @param amounts The amounts to convert in minor units of the currency converted from, such as cents
+     * @param results The array the converted amounts are written to in minor units of the currency converted to,
+     * which may be the amounts array itself
+     * @throws IllegalArgumentException If either currency is not supported or the arrays differ in length
+     * @throws ArithmeticException If a converted amount does not fit in a long
+     */
+    public void convertAll(int fromId, int toId, long[] amounts, long[] results) {
+        BulkConverter.convert(amounts, CurrencyRegistry.minorDigitsOf(fromId), getCrossRate(fromId, toId),
+                CurrencyRegistry.minorDigitsOf(toId), results);
+    }
+
+    private BigDecimal getCrossRate(int fromId, int toId) {
+        BigDecimal rate = getSnapshot().getCrossRate(fromId, toId);
+        if (rate == null) {
+            throw new IllegalArgumentException("The selected currencies are not supported");
+        }
+        return rate;
+    }
+
+    /**
+     * Converts a monetary amount between two currencies given by their ISO codes
+     * @param fromCode The ISO code of the currency to convert from
+     * @param toCode The ISO code of the currency to convert to
+     * @param amount The amount to convert
+     * @return The converted monetary amount
+     * @throws IllegalArgumentException If either currency is not supported
+     */
+    public BigDecimal convertByCode(String fromCode, String toCode, BigDecimal amount) {
+        return convert(CurrencyRegistry.idOf(fromCode.toUpperCase(Locale.ROOT)),
+                CurrencyRegistry.idOf(toCode.toUpperCase(Locale.ROOT)), amount);
+    }
+
+    /**
+     * Converts a monetary amount between two currencies at the rates in effect on a past date
+     * @param date The date of the rates to convert with
+     * @param from The name of the currency to convert from
+     * @param to The name of the currency to convert to
+     * @param amount The amount to convert
+     * @return The converted monetary amount
+     * @throws IllegalArgumentException If the rate history has no rate for either currency on or before the date
+     */
+    public BigDecimal convertAsOf(LocalDate date, String from, String to, BigDecimal amount) {
+        return convertAsOf(date, getCurrencyId(from), getCurrencyId(to), amount);
+    }
+
+    /**
+     * Converts a monetary amount between two currencies at the rates in effect on a past date
+     * @param date The date of the rates to convert with
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @param amount The amount to convert
+     * @return The converted monetary amount
+     * @throws IllegalArgumentException If the rate history has no rate for either currency on or before the date
+     */
+    public BigDecimal convertAsOf(LocalDate date, int fromId, int toId, BigDecimal amount) {
+        if (this.rateHistory == null) {
+            throw new IllegalArgumentException("The rate history is not available");
+        }
+        BigDecimal fromRate = this.rateHistory.getRate(fromId, date);
+        BigDecimal toRate = this.rateHistory.getRate(toId, date);
+        if (fromRate == null || toRate == null || fromRate.signum() == 0) {
+            throw new IllegalArgumentException("The selected currencies have no rates on " + date);
+        }
+        return convert(amount, toRate.divide(fromRate, CrossRateMatrix.MATH_CONTEXT),
+                CurrencyRegistry.minorDigitsOf(toId));
+    }
+
+    public RateHistory getRateHistory() {
+        return this.rateHistory;
     }
 
     /**
@@ -119,11 +660,9 @@ public class ConverterController {
      * @return The currency corresponding to the number inputted by the user
      */
     public String requestNewCurrency() {
-        System.out.println("Select currency to convert to: ");
+        System.out.println("Select currency to convert to, by number, name or code: ");
 
-        Set<String> keys = currencyNames.keySet();
-        List<String> names = new ArrayList<>(keys);
-        Collections.sort(names);
+        List<String> names = getCurrencyNames();
 
         printCurrencyNames(names);
         System.out.print("> ");
@@ -132,14 +671,48 @@ public class ConverterController {
         return names.get(index);
     }
 
+    /**
+     * @return The names of all currencies supported by the API in alphabetical order
+     */
+    public List<String> getCurrencyNames() {
+        return CurrencyRegistry.supportedNames();
+    }
+
     /**
      * Finds the rate of conversion corresponding to the user's requested currency.
      * @param newCurrency The abbreviation of the currency to convert to
      * @return The rate required to convert from the original currency to the new currency.
      */
     public BigDecimal getCurrencyRate(String newCurrency) {
-        String abbreviation = this.currencyNames.get(newCurrency);
-        return this.storedCurrency.getRate(abbreviation);
+        return getCurrencyRate(getCurrencyId(newCurrency));
+    }
+
+    /**
+     * Finds the rate of conversion corresponding to a currency id.
+     * Callers converting many amounts should resolve their currency ids once and use this method.
+     * @param currencyId The id of the currency to convert to
+     * @return The rate required to convert from the original currency to the new currency, or null if unknown
+     */
+    public BigDecimal getCurrencyRate(int currencyId) {
+        return getSnapshot().getRate(currencyId);
+    }
+
+    /**
+     * Finds the id of a currency from its name.
+     * @param currencyName The name or ISO code of the currency, in any case
+     * @return The id of the currency, or -1 if the name is unknown
+     */
+    public int getCurrencyId(String currencyName) {
+        return CurrencyRegistry.idOfName(currencyName);
+    }
+
+    /**
+     * Finds the rate of conversion corresponding to an ISO currency code.
+     * @param code The ISO code of the currency to convert to
+     * @return The rate required to convert from the original currency to the new currency, or null if unknown
+     */
+    public BigDecimal getCurrencyRateByCode(String code) {
+        return getCurrencyRate(CurrencyRegistry.idOf(code.toUpperCase(Locale.ROOT)));
     }
 
     /**
@@ -155,49 +728,106 @@ public class ConverterController {
     }
 
     /**
-     * Performs deserialization to recreate the StoredCurrency object from the serialized file
-     * @return Recreated StoredCurrency object that was stored in the serialized file
+     * Finds where a data file is kept, which is the directory of the currency.data.dir system property or the working
+     * directory if it is not set.
+     * @param name The name of the data file
+     * @return The path of the data file
      */
-    private static StoredCurrency deserialize() {
-        StoredCurrency storedCurrency = null;
+    static Path dataPath(String name) {
+        return Paths.get(System.getProperty("currency.data.dir", "")).resolve(name);
+    }
 
-        String fileName = "stored_currency.ser";
+    /**
+     * Reads the StoredCurrency object from the snapshot file.
+     * A serialized file written by earlier versions is migrated to the snapshot format the first time it is found.
+     * @return StoredCurrency object that was stored in the file, or an empty one if there is no usable file
+     */
+    private static StoredCurrency loadSnapshot() {
+        Path snapshot = dataPath(SNAPSHOT_FILE_NAME);
+        Path legacy = dataPath(LEGACY_FILE_NAME);
         try {
-            FileInputStream inputStream = new FileInputStream(fileName);
-            ObjectInputStream in = new ObjectInputStream(inputStream);
+            if (Files.exists(snapshot)) {
+                return SnapshotFile.read(snapshot);
+            }
+            if (Files.exists(legacy)) {
+                return migrateLegacyFile(legacy, snapshot);
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Stored currency could not be read: " + e.getMessage());
+        }
+        return new StoredCurrency();
+    }
 
+    /**
+     * Performs deserialization of a file written by earlier versions, stores its data in the snapshot format and
+     * deletes it.
+     * @param legacy The serialized file
+     * @param snapshot The snapshot file to write
+     * @return Recreated StoredCurrency object that was stored in the serialized file
+     * @throws IOException If the serialized file could not be read or the snapshot file could not be written
+     */
+    private static StoredCurrency migrateLegacyFile(Path legacy, Path snapshot) throws IOException {
+        StoredCurrency storedCurrency;
+        try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(legacy))) {
             storedCurrency = (StoredCurrency) in.readObject();
-
-            in.close();
-            inputStream.close();
         }
-        catch (IOException e) {
-            storedCurrency = new StoredCurrency();
+        catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Serialized file " + legacy + " is not a stored currency", e);
         }
-        catch (ClassNotFoundException e) {
-            e.printStackTrace();
+
+        if (storedCurrency.hasRates()) {
+            SnapshotFile.write(storedCurrency, snapshot);
         }
+        Files.delete(legacy);
         return storedCurrency;
     }
 
     /**
-     * Stores the current currency data in a serialized file so it may persist beyond the execution of the program.
-     * The serialization will allow API calls to stay at a minimal amount.
-     * @param currency The currency to be stored for future use
+     * Opens the store of past rates.
+     * @param readOnly Whether to only read the store, because another JVM writes it
+     * @return The store of past rates, or null if it could not be opened
      */
-    private static void serialize(StoredCurrency currency) {
-        String fileName = "stored_currency.ser";
+    private static RateHistory openHistory(boolean readOnly) {
         try {
-            FileOutputStream outputStream = new FileOutputStream(fileName);
-            ObjectOutputStream out = new ObjectOutputStream(outputStream);
+            Path directory = dataPath(HISTORY_DIRECTORY_NAME);
+            return readOnly ? RateHistory.openReadOnly(directory) : RateHistory.open(directory);
+        }
+        catch (IOException e) {
+            System.out.println("Rate history could not be opened: " + e.getMessage());
+            return null;
+        }
+    }
 
-            out.writeObject(currency);
+    /**
+     * Adds the current currency data to the store of past rates if it is newer than every stored snapshot.
+     * @param currency The currency data to add
+     */
+    private void appendHistory(StoredCurrency currency) {
+        if (this.rateHistory == null || !currency.hasRates()) {
+            return;
+        }
+        try {
+            this.rateHistory.append(currency);
+        }
+        catch (IOException e) {
+            Metrics.recordPersistError();
+            System.out.println("Rate history could not be written: " + e.getMessage());
+        }
+    }
 
-            out.close();
-            outputStream.close();
+    /**
+     * Stores the current currency data in the snapshot file so it may persist beyond the execution of the program.
+     * Storing the data will allow API calls to stay at a minimal amount.
+     * @param currency The currency to be stored for future use
+     */
+    private static void saveSnapshot(StoredCurrency currency) {
+        try {
+            SnapshotFile.write(currency, dataPath(SNAPSHOT_FILE_NAME));
         }
         catch (IOException e) {
-            System.out.println("File not found");
+            Metrics.recordPersistError();
+            System.out.println("Stored currency could not be written: " + e.getMessage());
         }
     }
 }
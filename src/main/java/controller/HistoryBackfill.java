@@ -0,0 +1,307 @@
+package controller;
+
+import model.BusinessCalendar;
+import model.GetJSON;
+import model.RateHistory;
+import model.StoredCurrency;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The HistoryBackfill class fills the rate history with the rates of past dates from the dated endpoints of the API.
+ *
+ * Dates are fetched concurrently by a fixed number of workers, which bounds the requests in flight, and every request
+ * first takes a token from a TokenBucket, which bounds how many are sent per second. Failed requests are retried here
+ * rather than by the GetJSON object, which makes a single attempt, so every retry takes a token as well. Fetched
+ * snapshots are merged into the history in batches, and the dates of every merged batch are then appended to a
+ * checkpoint file. A run that is interrupted therefore loses at most one batch, and the next run over the same range
+ * only fetches the dates that are neither checkpointed nor already in the history. Dates whose fetch failed are not
+ * checkpointed and are fetched again by the next run.
+ *
+ * Only business days of the default BusinessCalendar are fetched. The settings of run come from these system
+ * properties:
+ * <pre>
+ *  currency.backfill.concurrency       The most requests in flight (default 8)
+ *  currency.backfill.requestsPerSecond The most requests sent per second (default 5)
+ *  currency.backfill.batchSize         The number of snapshots merged into the history at once (default 50)
+ *  currency.api.maxAttempts            The number of attempts for each date before giving up (default 4)
+ * </pre>
+ */
+public class HistoryBackfill {
+
+    private static final String CHECKPOINT_FILE_NAME = "backfill.checkpoint";
+
+    private final GetJSON source;
+    private final RateHistory history;
+    private final Path checkpoint;
+    private final int maxInFlight;
+    private final TokenBucket limiter;
+    private final int batchSize;
+    private final int maxAttempts;
+
+    /**
+     * Constructor for a HistoryBackfill object.
+     * @param source The API to fetch past rates from
+     * @param history The history to fill
+     * @param checkpoint The file recording the dates already merged into the history
+     * @param maxInFlight The most requests in flight
+     * @param requestsPerSecond The most requests sent per second
+     * @param batchSize The number of snapshots merged into the history at once
+     * @param maxAttempts The number of attempts for each date before giving up
+     */
+    public HistoryBackfill(GetJSON source, RateHistory history, Path checkpoint, int maxInFlight,
+                           double requestsPerSecond, int batchSize, int maxAttempts) {
+        this.source = source;
+        this.history = history;
+        this.checkpoint = checkpoint;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.limiter = new TokenBucket(requestsPerSecond, this.maxInFlight);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * Fetches and merges the rates of every business day of a range that is not filled yet.
+     * @param from The first date of the range
+     * @param to The last date of the range
+     * @return The outcome of the run
+     * @throws IOException If the history or the checkpoint could not be written
+     * @throws InterruptedException If the thread was interrupted, after the snapshots already fetched were merged
+     */
+    public Result backfill(LocalDate from, LocalDate to) throws IOException, InterruptedException {
+        List<LocalDate> dates = pendingDates(from, to);
+        Result result = new Result(dates.size());
+        if (dates.isEmpty()) {
+            return result;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.maxInFlight, dates.size()),
+                new ThreadFactory() {
+                    private int count;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "backfill-" + ++this.count);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        CompletionService<StoredCurrency> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<StoredCurrency>, LocalDate> requested = new HashMap<>();
+        List<LocalDate> batchDates = new ArrayList<>();
+        List<StoredCurrency> batch = new ArrayList<>();
+        try {
+            for (final LocalDate date : dates) {
+                requested.put(completion.submit(new Callable<StoredCurrency>() {
+                    @Override
+                    public StoredCurrency call() throws IOException, InterruptedException {
+                        return fetch(date);
+                    }
+                }), date);
+            }
+
+            for (int i = 0; i < dates.size(); i++) {
+                Future<StoredCurrency> done = completion.take();
+                LocalDate date = requested.get(done);
+                try {
+                    StoredCurrency snapshot = done.get();
+                    if (snapshot != null) {
+                        batch.add(snapshot);
+                    }
+                    batchDates.add(date);
+                }
+                catch (ExecutionException e) {
+                    result.failed.add(date);
+                    System.out.println("Rates of " + date + " could not be fetched: " + e.getCause().getMessage());
+                }
+                if (batchDates.size() >= this.batchSize) {
+                    merge(batch, batchDates, result);
+                    System.out.println(result.fetched + " of " + result.requested + " dates fetched");
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+            merge(batch, batchDates, result);
+        }
+        return result;
+    }
+
+    /**
+     * Fetches the rates of a date, taking a token from the limiter before every attempt.
+     * @param date The date of the rates
+     * @return The fetched snapshot
+     * @throws IOException If the last attempt failed or the API rejected the request
+     * @throws InterruptedException If the thread was interrupted while waiting for a token
+     */
+    private StoredCurrency fetch(LocalDate date) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            this.limiter.acquire();
+            IOException failure;
+            try {
+                return this.source.fetchRates(date);
+            }
+            catch (IOException e) {
+                if (attempt >= this.maxAttempts || !GetJSON.isRetryable(e)) {
+                    throw e;
+                }
+                failure = e;
+            }
+            GetJSON.sleepBeforeRetry(attempt, failure);
+        }
+    }
+
+    /**
+     * Lists the business days of a range that are neither checkpointed nor in the history.
+     * @param from The first date of the range
+     * @param to The last date of the range
+     * @return The dates to fetch, in order
+     * @throws IOException If the checkpoint could not be read
+     */
+    private List<LocalDate> pendingDates(LocalDate from, LocalDate to) throws IOException {
+        Set<LocalDate> done = readCheckpoint();
+        BusinessCalendar calendar = BusinessCalendar.getDefault();
+        List<LocalDate> dates = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            if (calendar.isBusinessDay(date) && !done.contains(date) && !this.history.contains(date)) {
+                dates.add(date);
+            }
+        }
+        return dates;
+    }
+
+    /**
+     * Reads the dates recorded in the checkpoint, ignoring a line left partly written by an interrupted run.
+     * @return The checkpointed dates
+     * @throws IOException If the checkpoint could not be read
+     */
+    private Set<LocalDate> readCheckpoint() throws IOException {
+        Set<LocalDate> dates = new HashSet<>();
+        if (!Files.exists(this.checkpoint)) {
+            return dates;
+        }
+        for (String line : Files.readAllLines(this.checkpoint, StandardCharsets.UTF_8)) {
+            try {
+                dates.add(LocalDate.parse(line.trim()));
+            }
+            catch (DateTimeParseException e) {
+                // A partly written line is fetched again
+            }
+        }
+        return dates;
+    }
+
+    /**
+     * Merges a batch of snapshots into the history, then records their dates in the checkpoint and clears the batch.
+     * @param batch The fetched snapshots
+     * @param batchDates The requested dates of the snapshots
+     * @param result The outcome of the run so far
+     * @throws IOException If the history or the checkpoint could not be written
+     */
+    private void merge(List<StoredCurrency> batch, List<LocalDate> batchDates, Result result) throws IOException {
+        if (batchDates.isEmpty()) {
+            return;
+        }
+        result.added += this.history.merge(batch);
+        StringBuilder lines = new StringBuilder();
+        for (LocalDate date : batchDates) {
+            lines.append(date).append(System.lineSeparator());
+        }
+        Files.write(this.checkpoint, lines.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        result.fetched += batchDates.size();
+        batch.clear();
+        batchDates.clear();
+    }
+
+    /**
+     * Runs a backfill of the rate history of the controller, configured by the currency.backfill system properties.
+     * @param controller The controller holding the rate history
+     * @param from The first date of the range, as an ISO date
+     * @param to The last date of the range, as an ISO date
+     */
+    public static void run(ConverterController controller, String from, String to) {
+        RateHistory history = controller.getRateHistory();
+        if (history == null) {
+            System.out.println("Backfill failed: the rate history is not available");
+            return;
+        }
+        if (history.isReadOnly()) {
+            System.out.println("Backfill failed: the rate history is written by another process");
+            return;
+        }
+        try {
+            GetJSON source = GetJSON.fromSystemProperties(
+                    URI.create(System.getProperty("currency.api.url", GetJSON.DEFAULT_URL)), 1);
+            HistoryBackfill backfill = new HistoryBackfill(source, history,
+                    ConverterController.dataPath(CHECKPOINT_FILE_NAME),
+                    Integer.getInteger("currency.backfill.concurrency", 8),
+                    Double.parseDouble(System.getProperty("currency.backfill.requestsPerSecond", "5")),
+                    Integer.getInteger("currency.backfill.batchSize", 50),
+                    Integer.getInteger("currency.api.maxAttempts", 4));
+            Result result = backfill.backfill(LocalDate.parse(from), LocalDate.parse(to));
+            System.out.println(result.fetched + " dates fetched, " + result.added + " snapshots added, "
+                    + result.failed.size() + " dates failed");
+        }
+        catch (IOException | DateTimeParseException | IllegalArgumentException e) {
+            System.out.println("Backfill failed: " + e.getMessage());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Backfill interrupted, run it again to resume");
+        }
+    }
+
+    /**
+     * Result is the outcome of a backfill.
+     */
+    public static final class Result {
+
+        private final int requested;
+        private int fetched;
+        private int added;
+        private final List<LocalDate> failed = new ArrayList<>();
+
+        Result(int requested) {
+            this.requested = requested;
+        }
+
+        /**
+         * @return The number of dates that were neither checkpointed nor in the history
+         */
+        public int getRequested() {
+            return this.requested;
+        }
+
+        /**
+         * @return The number of dates fetched and checkpointed
+         */
+        public int getFetched() {
+            return this.fetched;
+        }
+
+        /**
+         * @return The number of snapshots added to the history, which is less than the number of dates fetched when
+         * the API answered for a holiday with the rates of an earlier date
+         */
+        public int getAdded() {
+            return this.added;
+        }
+
+        /**
+         * @return The dates whose fetch failed, which the next run fetches again
+         */
+        public List<LocalDate> getFailed() {
+            return Collections.unmodifiableList(this.failed);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package controller;
+
+import model.CurrencyRegistry;
+
+import java.math.BigDecimal;
+
+/**
+ * A RateDelta is the change of the rate of one currency between two snapshots.
+ * Rates are relative to the base currency of the snapshots, so a change of the base rate shows up in every currency.
+ */
+public final class RateDelta {
+
+    private final int currencyId;
+    private final BigDecimal previousRate;
+    private final BigDecimal rate;
+
+    /**
+     * Constructor for a RateDelta object.
+     * @param currencyId The id of the currency
+     * @param previousRate The rate in the earlier snapshot, or null if it had no rate for the currency
+     * @param rate The rate in the later snapshot, or null if it has no rate for the currency
+     */
+    RateDelta(int currencyId, BigDecimal previousRate, BigDecimal rate) {
+        this.currencyId = currencyId;
+        this.previousRate = previousRate;
+        this.rate = rate;
+    }
+
+    public int getCurrencyId() {
+        return this.currencyId;
+    }
+
+    public String getCurrencyCode() {
+        return CurrencyRegistry.codeOf(this.currencyId);
+    }
+
+    public BigDecimal getPreviousRate() {
+        return this.previousRate;
+    }
+
+    public BigDecimal getRate() {
+        return this.rate;
+    }
+
+    /**
+     * @return Whether the rate ends up where it started, which happens when changes are conflated
+     */
+    boolean isUnchanged() {
+        return this.previousRate == null ? this.rate == null
+                : this.rate != null && this.previousRate.compareTo(this.rate) == 0;
+    }
+
+    @Override
+    public String toString() {
+        return getCurrencyCode() + " " + this.previousRate + " -> " + this.rate;
+    }
+}
@@ -0,0 +1,69 @@
+package controller;
+
+import model.StoredCurrency;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A RateEvent tells subscribers of a RateEventPublisher that the rates have changed.
+ * Every refresh is announced by a SNAPSHOT event carrying the new snapshot, followed by DELTAS events carrying the
+ * currencies whose rates changed, a batch at a time.
+ */
+public final class RateEvent {
+
+    /**
+     * The kinds of rate events.
+     */
+    public enum Type {
+        SNAPSHOT,
+        DELTAS
+    }
+
+    private final Type type;
+    private final StoredCurrency snapshot;
+    private final List<RateDelta> deltas;
+
+    /**
+     * Constructor for a RateEvent object.
+     * @param type The kind of event
+     * @param snapshot The snapshot the event leads to
+     * @param deltas The changed rates, which are empty for SNAPSHOT events
+     */
+    private RateEvent(Type type, StoredCurrency snapshot, List<RateDelta> deltas) {
+        this.type = type;
+        this.snapshot = snapshot;
+        this.deltas = deltas;
+    }
+
+    static RateEvent snapshot(StoredCurrency snapshot) {
+        return new RateEvent(Type.SNAPSHOT, snapshot, Collections.<RateDelta>emptyList());
+    }
+
+    static RateEvent deltas(StoredCurrency snapshot, List<RateDelta> deltas) {
+        return new RateEvent(Type.DELTAS, snapshot, Collections.unmodifiableList(deltas));
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * @return The snapshot the event leads to, which is the latest one delivered so far
+     */
+    public StoredCurrency getSnapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * @return The changed rates, which are empty for SNAPSHOT events
+     */
+    public List<RateDelta> getDeltas() {
+        return this.deltas;
+    }
+
+    @Override
+    public String toString() {
+        return this.type + " " + this.snapshot.getDate() + (this.type == Type.DELTAS ? " " + this.deltas : "");
+    }
+}
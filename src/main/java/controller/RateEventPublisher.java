@@ -0,0 +1,381 @@
+package controller;
+
+import model.RateTable;
+import model.StoredCurrency;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The RateEventPublisher class publishes a RateEvent stream to any number of Flow subscribers.
+ * Every new snapshot published by the controller is announced with a SNAPSHOT event followed by DELTAS events holding
+ * the currencies whose rates changed, at most a batch size of them per event.
+ *
+ * Each subscriber has a bounded buffer and receives events on a shared pool of delivery threads, one event at a time
+ * and only as many as it has requested, so a slow subscriber never holds up the refresh or the other subscribers.
+ * When a buffer is full its OverflowPolicy decides what to give up: DROP_OLDEST discards the oldest buffered event,
+ * while CONFLATE merges everything buffered into the latest SNAPSHOT event followed by DELTAS events holding the net
+ * change of every currency in batches, so the subscriber catches up without missing any currency. A conflated buffer
+ * holds one more event than there are batches of changed currencies, which may exceed its capacity when the capacity
+ * is small and the batches are too.
+ */
+public class RateEventPublisher implements Flow.Publisher<RateEvent>, SnapshotListener {
+
+    /**
+     * What to do with a new event when the buffer of a subscriber is full.
+     */
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        CONFLATE
+    }
+
+    public static final int DEFAULT_BUFFER_CAPACITY = 16;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final List<RateSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor;
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private StoredCurrency previous;
+    private boolean closed;
+
+    /**
+     * Constructor for a RateEventPublisher object.
+     * @param current The snapshot in use, which the first published snapshot is compared to
+     */
+    public RateEventPublisher(StoredCurrency current) {
+        this.previous = current;
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rate-events-" + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Subscribes with a buffer of DEFAULT_BUFFER_CAPACITY events that drops the oldest event when full, and deltas in
+     * batches of DEFAULT_BATCH_SIZE.
+     * @param subscriber The subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super RateEvent> subscriber) {
+        subscribe(subscriber, DEFAULT_BUFFER_CAPACITY, OverflowPolicy.DROP_OLDEST, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Subscribes with the given buffering.
+     * @param subscriber The subscriber
+     * @param bufferCapacity The largest number of events buffered for the subscriber, at least 2, which CONFLATE may
+     * exceed by the DELTAS events the net changes are batched into
+     * @param policy What to do with a new event when the buffer is full
+     * @param batchSize The largest number of currencies in a DELTAS event, or 1 for an event per currency
+     * @throws IllegalArgumentException If the capacity is below 2 or the batch size below 1
+     */
+    public void subscribe(Flow.Subscriber<? super RateEvent> subscriber, int bufferCapacity, OverflowPolicy policy,
+                          int batchSize) {
+        if (bufferCapacity < 2 || batchSize < 1) {
+            throw new IllegalArgumentException("The buffer must hold 2 events and batches 1 delta");
+        }
+        RateSubscription subscription = new RateSubscription(subscriber, bufferCapacity, policy, batchSize);
+        synchronized (this) {
+            if (this.closed) {
+                subscription.complete();
+            }
+            else {
+                this.subscriptions.add(subscription);
+            }
+        }
+        subscription.schedule();
+    }
+
+    /**
+     * Publishes the events of a new snapshot to every subscriber.
+     * @param snapshot The new currency data
+     */
+    @Override
+    public void snapshotPublished(StoredCurrency snapshot) {
+        List<RateDelta> deltas;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            deltas = findDeltas(this.previous, snapshot);
+            this.previous = snapshot;
+        }
+        for (RateSubscription subscription : this.subscriptions) {
+            subscription.offer(snapshot, deltas);
+        }
+    }
+
+    /**
+     * Compares the rates of two snapshots.
+     * @param previous The earlier snapshot, which may hold no rates
+     * @param current The later snapshot, which may hold no rates
+     * @return The change of every currency whose rate differs between them
+     */
+    private static List<RateDelta> findDeltas(StoredCurrency previous, StoredCurrency current) {
+        RateTable before = previous.hasRates() ? previous.getRateTable() : null;
+        RateTable after = current.hasRates() ? current.getRateTable() : null;
+        int size = Math.max(before == null ? 0 : before.size(), after == null ? 0 : after.size());
+        List<RateDelta> deltas = new ArrayList<>();
+        for (int id = 0; id < size; id++) {
+            RateDelta delta = new RateDelta(id, before == null ? null : before.getRate(id),
+                    after == null ? null : after.getRate(id));
+            if (!delta.isUnchanged()) {
+                deltas.add(delta);
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * Completes every subscription once its buffered events have been delivered and stops accepting new snapshots.
+     */
+    public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        for (RateSubscription subscription : this.subscriptions) {
+            subscription.complete();
+        }
+        this.executor.shutdown();
+    }
+
+    /**
+     * @return The number of subscribers that have not cancelled
+     */
+    public int getSubscriberCount() {
+        return this.subscriptions.size();
+    }
+
+    /**
+     * @return The number of events discarded from full buffers with the DROP_OLDEST policy
+     */
+    public long getDroppedEvents() {
+        return this.droppedEvents.get();
+    }
+
+    /**
+     * A RateSubscription buffers the events of one subscriber and delivers them on the delivery threads.
+     * Deliveries are serialized by counting the drains requested, so only one thread at a time runs a drain and
+     * requests made during a drain are picked up before it ends.
+     */
+    private final class RateSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super RateEvent> subscriber;
+        private final int capacity;
+        private final OverflowPolicy policy;
+        private final int batchSize;
+        private final ArrayDeque<RateEvent> buffer = new ArrayDeque<>();
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+        private long demand;
+        private boolean subscribed;
+        private boolean completed;
+        private boolean cancelled;
+        private Throwable error;
+
+        RateSubscription(Flow.Subscriber<? super RateEvent> subscriber, int capacity, OverflowPolicy policy,
+                         int batchSize) {
+            this.subscriber = subscriber;
+            this.capacity = capacity;
+            this.policy = policy;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    this.error = new IllegalArgumentException("Requested " + n + " events, must be positive");
+                }
+                else {
+                    this.demand = this.demand + n < 0 ? Long.MAX_VALUE : this.demand + n;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                this.cancelled = true;
+                this.buffer.clear();
+            }
+            RateEventPublisher.this.subscriptions.remove(this);
+        }
+
+        /**
+         * Buffers the events of a new snapshot and schedules their delivery.
+         * @param snapshot The new currency data
+         * @param deltas The currencies whose rates changed
+         */
+        void offer(StoredCurrency snapshot, List<RateDelta> deltas) {
+            synchronized (this) {
+                if (this.cancelled || this.completed) {
+                    return;
+                }
+                add(RateEvent.snapshot(snapshot));
+                for (int start = 0; start < deltas.size(); start += this.batchSize) {
+                    add(RateEvent.deltas(snapshot,
+                            deltas.subList(start, Math.min(deltas.size(), start + this.batchSize))));
+                }
+            }
+            schedule();
+        }
+
+        private void add(RateEvent event) {
+            if (this.buffer.size() >= this.capacity) {
+                if (this.policy == OverflowPolicy.CONFLATE) {
+                    conflate();
+                }
+                else {
+                    this.buffer.poll();
+                    RateEventPublisher.this.droppedEvents.incrementAndGet();
+                }
+            }
+            this.buffer.add(event);
+            if (this.buffer.size() > this.capacity) {
+                conflate();
+            }
+        }
+
+        /**
+         * Replaces the buffered events with the latest SNAPSHOT event and DELTAS events holding the net change of
+         * every currency in batches, leaving out currencies whose rate ended up where it started.
+         */
+        private void conflate() {
+            StoredCurrency latest = null;
+            Map<Integer, RateDelta> merged = new LinkedHashMap<>();
+            for (RateEvent event : this.buffer) {
+                latest = event.getSnapshot();
+                for (RateDelta delta : event.getDeltas()) {
+                    RateDelta earlier = merged.get(delta.getCurrencyId());
+                    BigDecimal previousRate = earlier == null ? delta.getPreviousRate() : earlier.getPreviousRate();
+                    merged.put(delta.getCurrencyId(), new RateDelta(delta.getCurrencyId(), previousRate,
+                            delta.getRate()));
+                }
+            }
+            List<RateDelta> deltas = new ArrayList<>();
+            for (RateDelta delta : merged.values()) {
+                if (!delta.isUnchanged()) {
+                    deltas.add(delta);
+                }
+            }
+            this.buffer.clear();
+            if (latest != null) {
+                this.buffer.add(RateEvent.snapshot(latest));
+                for (int start = 0; start < deltas.size(); start += this.batchSize) {
+                    this.buffer.add(RateEvent.deltas(latest,
+                            deltas.subList(start, Math.min(deltas.size(), start + this.batchSize))));
+                }
+            }
+        }
+
+        /**
+         * Delivers onComplete once the buffered events have been delivered.
+         */
+        void complete() {
+            synchronized (this) {
+                this.completed = true;
+            }
+            schedule();
+        }
+
+        void schedule() {
+            if (this.pendingDrains.getAndIncrement() == 0) {
+                try {
+                    RateEventPublisher.this.executor.execute(this);
+                }
+                catch (RejectedExecutionException e) {
+                    run();
+                }
+            }
+        }
+
+        /**
+         * Delivers as many buffered events as have been requested, then any terminal signal that is due.
+         */
+        @Override
+        public void run() {
+            int drains = this.pendingDrains.get();
+            while (drains != 0) {
+                drain();
+                drains = this.pendingDrains.addAndGet(-drains);
+            }
+        }
+
+        private void drain() {
+            boolean first;
+            synchronized (this) {
+                first = !this.subscribed;
+                this.subscribed = true;
+            }
+            try {
+                if (first) {
+                    this.subscriber.onSubscribe(this);
+                }
+                while (true) {
+                    RateEvent event;
+                    Throwable failure = null;
+                    boolean done = false;
+                    synchronized (this) {
+                        if (this.cancelled) {
+                            return;
+                        }
+                        if (this.error != null) {
+                            failure = this.error;
+                            event = null;
+                        }
+                        else if (this.demand > 0 && !this.buffer.isEmpty()) {
+                            event = this.buffer.poll();
+                            if (this.demand != Long.MAX_VALUE) {
+                                this.demand--;
+                            }
+                        }
+                        else {
+                            event = null;
+                            done = this.completed && this.buffer.isEmpty();
+                            if (!done) {
+                                return;
+                            }
+                        }
+                    }
+                    if (failure != null) {
+                        cancel();
+                        this.subscriber.onError(failure);
+                        return;
+                    }
+                    if (done) {
+                        cancel();
+                        this.subscriber.onComplete();
+                        return;
+                    }
+                    this.subscriber.onNext(event);
+                }
+            }
+            catch (RuntimeException e) {
+                cancel();
+                System.out.println("Rate event subscriber failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package controller;
+
+import model.RateSource;
+import model.StoredCurrency;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The RateRefresher class retrieves new rates from a RateSource on a background thread.
+ * A refresh is scheduled by a RefreshSchedule for a little after the API is next expected to have new rates, and
+ * failed refreshes are retried after its retry delay. Conversions never wait for a refresh unless no rates have ever
+ * been retrieved.
+ *
+ * Refreshes are single-flight: while one is in progress, scheduled refreshes and every caller of refreshNow share it
+ * instead of contacting the API again.
+ */
+class RateRefresher {
+
+    private final ConverterController controller;
+    private final RateSource source;
+    private final RefreshSchedule schedule;
+    private final ScheduledExecutorService executor;
+    private final CountDownLatch firstAttempt;
+    private final AtomicReference<CompletableFuture<StoredCurrency>> inFlight;
+    private ScheduledFuture<?> next;
+
+    /**
+     * Constructor for a RateRefresher object.
+     * @param controller The controller whose snapshot is refreshed
+     * @param source The source of new rates
+     * @param schedule The schedule of refreshes
+     */
+    RateRefresher(ConverterController controller, RateSource source, RefreshSchedule schedule) {
+        this.controller = controller;
+        this.source = source;
+        this.schedule = schedule;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rate-refresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.firstAttempt = new CountDownLatch(1);
+        this.inFlight = new AtomicReference<>();
+    }
+
+    /**
+     * Starts refreshing, immediately if there are no rates, after a short jitter if the current snapshot is stale and
+     * at its scheduled time otherwise.
+     */
+    void start() {
+        StoredCurrency snapshot = this.controller.peekSnapshot();
+        if (!snapshot.hasRates()) {
+            schedule(Duration.ZERO);
+        }
+        else if (snapshot.isStale(LocalDateTime.now())) {
+            this.firstAttempt.countDown();
+            schedule(this.schedule.startupDelay());
+        }
+        else {
+            this.firstAttempt.countDown();
+            scheduleUpdate(snapshot);
+        }
+    }
+
+    /**
+     * Stops refreshing.
+     */
+    void stop() {
+        this.executor.shutdownNow();
+        CompletableFuture<StoredCurrency> current = this.inFlight.get();
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+
+    /**
+     * Waits until the first refresh has been attempted, if one was needed when refreshing started.
+     * @param timeout The longest time to wait
+     * @return Whether the first attempt finished within the timeout
+     */
+    boolean awaitFirstAttempt(Duration timeout) {
+        try {
+            return this.firstAttempt.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Refreshes the rates now, or joins the refresh already in progress.
+     * @return A future completed with the latest snapshot once the refresh is done, or exceptionally with the
+     * IOException or RuntimeException that made it fail. Cancelling it does not affect the refresh.
+     */
+    CompletableFuture<StoredCurrency> refreshNow() {
+        while (true) {
+            CompletableFuture<StoredCurrency> current = this.inFlight.get();
+            if (current != null) {
+                return current.copy();
+            }
+            final CompletableFuture<StoredCurrency> refresh = new CompletableFuture<>();
+            if (this.inFlight.compareAndSet(null, refresh)) {
+                try {
+                    this.executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            refresh(refresh);
+                        }
+                    });
+                }
+                catch (RejectedExecutionException e) {
+                    this.inFlight.compareAndSet(refresh, null);
+                    refresh.completeExceptionally(e);
+                }
+                return refresh.copy();
+            }
+        }
+    }
+
+    /**
+     * Retrieves new rates, completes the refresh and schedules the next one.
+     * @param refresh The future of the refresh
+     */
+    private void refresh(CompletableFuture<StoredCurrency> refresh) {
+        try {
+            StoredCurrency snapshot = this.source.fetchRates();
+            if (snapshot == null) {
+                snapshot = this.controller.peekSnapshot();
+            }
+            else {
+                this.controller.publish(snapshot);
+            }
+            scheduleUpdate(snapshot);
+            this.inFlight.compareAndSet(refresh, null);
+            refresh.complete(snapshot);
+        }
+        catch (IOException | RuntimeException e) {
+            this.inFlight.compareAndSet(refresh, null);
+            refresh.completeExceptionally(e);
+            if (this.executor.isShutdown()) {
+                return;
+            }
+            System.out.println("Currency rates could not be refreshed: " + e.getMessage());
+            schedule(this.schedule.retryDelay());
+        }
+        finally {
+            this.firstAttempt.countDown();
+        }
+    }
+
+    /**
+     * Schedules a refresh for this node's time after the API is next expected to have new rates.
+     * @param snapshot The latest snapshot
+     */
+    private void scheduleUpdate(StoredCurrency snapshot) {
+        if (!snapshot.hasRates()) {
+            schedule(this.schedule.retryDelay());
+            return;
+        }
+        schedule(this.schedule.delayUntil(snapshot.getUpdateDateTime(), LocalDateTime.now()));
+    }
+
+    /**
+     * Replaces the scheduled refresh with one after the given delay.
+     * @param delay The delay
+     */
+    private synchronized void schedule(Duration delay) {
+        if (this.executor.isShutdown()) {
+            return;
+        }
+        if (this.next != null) {
+            this.next.cancel(false);
+        }
+        try {
+            this.next = this.executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    refreshNow();
+                }
+            }, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            this.next = null;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package controller;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The RefreshSchedule class decides how long to wait before the next refresh so that a fleet of converters does not
+ * contact the API all at once.
+ *
+ * Each node waits past the time new rates are expected by an offset taken from its node id, which spreads the nodes
+ * evenly over the stagger window however many there are, and every delay gets a random jitter on top. The settings come
+ * from these system properties:
+ * <pre>
+ *  currency.node.id                The id of this node (default the HOSTNAME environment variable, or the process id)
+ *  currency.refresh.staggerSeconds The window the nodes are spread over (default 600)
+ *  currency.refresh.jitterSeconds  The largest random delay added to every refresh (default 30)
+ *  currency.refresh.retrySeconds   The delay before retrying a failed refresh (default 300)
+ * </pre>
+ */
+class RefreshSchedule {
+
+    private static final double GOLDEN_RATIO_FRACTION = 0.6180339887498949;
+
+    private final Duration nodeOffset;
+    private final long jitterMillis;
+    private final Duration retryDelay;
+
+    /**
+     * Constructor for a RefreshSchedule object.
+     * @param nodeId The id of this node
+     * @param stagger The window the nodes are spread over
+     * @param jitter The largest random delay added to every refresh
+     * @param retryDelay The delay before retrying a failed refresh
+     */
+    RefreshSchedule(String nodeId, Duration stagger, Duration jitter, Duration retryDelay) {
+        this.nodeOffset = Duration.ofMillis((long) (stagger.toMillis() * spread(nodeId)));
+        this.jitterMillis = jitter.toMillis();
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Creates the RefreshSchedule configured by system properties.
+     * @return The configured RefreshSchedule
+     */
+    static RefreshSchedule fromSystemProperties() {
+        String nodeId = System.getProperty("currency.node.id");
+        if (nodeId == null || nodeId.trim().isEmpty()) {
+            nodeId = System.getenv("HOSTNAME");
+        }
+        if (nodeId == null || nodeId.trim().isEmpty()) {
+            nodeId = Long.toString(ProcessHandle.current().pid());
+        }
+        return new RefreshSchedule(nodeId.trim(),
+                Duration.ofSeconds(Long.getLong("currency.refresh.staggerSeconds", 600)),
+                Duration.ofSeconds(Long.getLong("currency.refresh.jitterSeconds", 30)),
+                Duration.ofSeconds(Long.getLong("currency.refresh.retrySeconds", 300)));
+    }
+
+    /**
+     * Maps a node id to a fraction of the stagger window.
+     * Numeric ids are multiplied by the fractional part of the golden ratio, which keeps any number of consecutive ids
+     * evenly spread. Only their low 32 bits are used, so the product is exact in a double and keeps its fractional
+     * part. Other ids are hashed, mixed and turned into a fraction from the top 53 bits of the hash.
+     * @param nodeId The id of the node
+     * @return A fraction from 0 inclusive to 1 exclusive
+     */
+    private static double spread(String nodeId) {
+        long number;
+        try {
+            number = Long.parseLong(nodeId);
+        }
+        catch (NumberFormatException e) {
+            long hash = 0;
+            for (byte b : nodeId.getBytes(StandardCharsets.UTF_8)) {
+                hash = hash * 31 + (b & 0xff);
+            }
+            return (mix(hash) >>> 11) * 0x1p-53;
+        }
+        return (Math.floorMod(number, 1L << 32) * GOLDEN_RATIO_FRACTION) % 1;
+    }
+
+    /**
+     * Scrambles the bits of a hash so that ids differing only in their last characters are spread over the whole
+     * range, using the finalizer of SplitMix64.
+     * @param hash The hash
+     * @return The mixed hash
+     */
+    private static long mix(long hash) {
+        long mixed = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        mixed = (mixed ^ (mixed >>> 27)) * 0x94d049bb133111ebL;
+        return mixed ^ (mixed >>> 31);
+    }
+
+    /**
+     * Finds how long to wait before refreshing for rates expected at a given time.
+     * @param updateDateTime The time the API is next expected to have new rates
+     * @param now The current time
+     * @return The delay until this node's share of the stagger window after the update time, plus jitter, or the
+     * retry delay if the update time has passed without new rates
+     */
+    Duration delayUntil(LocalDateTime updateDateTime, LocalDateTime now) {
+        Duration untilUpdate = Duration.between(now, updateDateTime);
+        if (untilUpdate.isNegative()) {
+            return retryDelay();
+        }
+        return untilUpdate.plus(this.nodeOffset).plus(jitter());
+    }
+
+    /**
+     * @return How long to wait before retrying a failed refresh, plus jitter
+     */
+    Duration retryDelay() {
+        return this.retryDelay.plus(jitter());
+    }
+
+    /**
+     * @return How long to wait before refreshing stale rates found at startup, which is only the jitter
+     */
+    Duration startupDelay() {
+        return jitter();
+    }
+
+    private Duration jitter() {
+        return this.jitterMillis <= 0 ? Duration.ZERO
+                : Duration.ofMillis(ThreadLocalRandom.current().nextLong(this.jitterMillis));
+    }
+}
@@ -0,0 +1,16 @@
+package controller;
+
+import model.StoredCurrency;
+
+/**
+ * A SnapshotListener is notified whenever the controller starts converting with new rates.
+ */
+public interface SnapshotListener {
+
+    /**
+     * Called on the thread that retrieved the new rates, after they have become the rates used for conversions.
+     * Implementations should return quickly and hand any lengthy work to another thread.
+     * @param snapshot The new currency data
+     */
+    void snapshotPublished(StoredCurrency snapshot);
+}
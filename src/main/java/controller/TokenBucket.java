@@ -0,0 +1,50 @@
+package controller;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TokenBucket class limits how often requests are sent.
+ * Tokens are added at a steady rate up to the size of the burst, and every request takes one, waiting for it if the
+ * bucket is empty. Waiting callers are served in no particular order.
+ */
+class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long refilled;
+
+    /**
+     * Constructor for a TokenBucket object, which starts full.
+     * @param ratePerSecond The number of tokens added every second
+     * @param burst The most tokens the bucket holds, which is how many requests may be sent at once after a pause
+     * @throws IllegalArgumentException If the rate is not positive or the burst is less than 1
+     */
+    TokenBucket(double ratePerSecond, int burst) {
+        if (!(ratePerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("A token bucket needs a positive rate and a burst of at least 1");
+        }
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilled = System.nanoTime();
+    }
+
+    /**
+     * Takes a token, waiting until one is available.
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    synchronized void acquire() throws InterruptedException {
+        while (true) {
+            long now = System.nanoTime();
+            this.tokens = Math.min(this.burst, this.tokens + (now - this.refilled) * this.tokensPerNano);
+            this.refilled = now;
+            if (this.tokens >= 1) {
+                this.tokens--;
+                return;
+            }
+            long waitNanos = (long) Math.ceil((1 - this.tokens) / this.tokensPerNano);
+            TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, waitNanos));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * ConversionEvent is the flight recorder event of a single conversion.
+ * It is disabled by default as conversions are too frequent to record every one of them in a normal recording, and
+ * only the sampled conversions that Metrics times are recorded.
+ */
+@Name("currency.Conversion")
+@Label("Conversion")
+@Category({"Currency Converter", "Conversions"})
+@Description("A single conversion of an amount")
+@Enabled(false)
+public class ConversionEvent extends jdk.jfr.Event {
+}
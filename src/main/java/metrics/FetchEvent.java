@@ -0,0 +1,28 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * FetchEvent is the flight recorder event of a request for rates sent to a provider.
+ */
+@Name("currency.Fetch")
+@Label("Rates Fetch")
+@Category({"Currency Converter", "Rates"})
+@Description("A request for the latest rates, including reading and parsing the response")
+public class FetchEvent extends jdk.jfr.Event {
+
+    @Label("Source")
+    public String source;
+
+    @Label("Status")
+    @Description("The HTTP status of the response, or 0 if none was received")
+    public int status;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,153 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class records durations in nanoseconds into log-linear buckets.
+ *
+ * Durations below 2^SUB_BUCKET_BITS nanoseconds get a bucket each. Every larger power of two is split into
+ * 2^SUB_BUCKET_BITS buckets of equal width, so a recorded duration is known to within about 3% whatever its size,
+ * as in an HDR histogram. Recording is an atomic increment of a fixed bucket and of a LongAdder for the total, and the
+ * maximum is only written when exceeded, so it never allocates or locks and may be called from any thread on hot
+ * paths. Percentiles are read from a copy of the buckets, which may miss durations recorded while it is being taken.
+ */
+public final class LatencyHistogram implements LatencyHistogramMXBean {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final String name;
+    private final AtomicLongArray counts;
+    private final LongAdder total;
+    private final AtomicLong max;
+
+    /**
+     * Constructor for a LatencyHistogram object.
+     * @param name The name of the phase whose durations are recorded
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.total = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records a duration.
+     * @param nanos The duration in nanoseconds, which is counted as 0 if negative
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(bucketOf(value));
+        this.total.add(value);
+        long current = this.max.get();
+        while (value > current && !this.max.compareAndSet(current, value)) {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * Finds the bucket of a duration.
+     * @param value The duration in nanoseconds, which must not be negative
+     * @return The index of the bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Finds the largest duration that falls in a bucket.
+     * @param bucket The index of the bucket
+     * @return The duration in nanoseconds
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Finds a percentile of the recorded durations.
+     * @param percentile The percentile, between 0 and 1
+     * @return The duration in nanoseconds below which the given share of the durations fall, or 0 if none were
+     * recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = this.counts.get(i);
+            count += copy[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += copy[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += this.counts.get(i);
+        }
+        return count;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long count = getCount();
+        return count == 0 ? 0 : this.total.sum() / NANOS_PER_MILLI / count;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return getPercentileNanos(0.5) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return getPercentileNanos(0.9) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return getPercentileNanos(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return getPercentileNanos(0.999) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return this.max.get() / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,23 @@
+package metrics;
+
+/**
+ * The management interface of a LatencyHistogram, with every duration given in milliseconds.
+ */
+public interface LatencyHistogramMXBean {
+
+    String getName();
+
+    long getCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+}
@@ -0,0 +1,247 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Metrics class keeps the counters and latency histograms of the converter.
+ *
+ * Fetches, parsing, persisting and conversions are recorded here by the code that performs them. Counters are
+ * LongAdders and durations go into LatencyHistograms, so recording never locks. Conversions are all counted but only a
+ * sample of them is timed. The same phases are also recorded as
+ * flight recorder events by the code that performs them, so they can be correlated with garbage collection.
+ *
+ * Every metric can be read over JMX once registerMBeans has been called, under the currency.converter domain, or as
+ * text from dump.
+ */
+public final class Metrics {
+
+    private static final String DOMAIN = "currency.converter";
+
+    private static final LatencyHistogram FETCH_LATENCY = new LatencyHistogram("fetch");
+    private static final LatencyHistogram PARSE_TIME = new LatencyHistogram("parse");
+    private static final LatencyHistogram PERSIST_TIME = new LatencyHistogram("persist");
+    private static final LatencyHistogram CONVERSION_TIME = new LatencyHistogram("conversion");
+    private static final LatencyHistogram[] HISTOGRAMS = {FETCH_LATENCY, PARSE_TIME, PERSIST_TIME, CONVERSION_TIME};
+
+    private static final LongAdder FETCHES = new LongAdder();
+    private static final LongAdder FETCH_ERRORS = new LongAdder();
+    private static final LongAdder FETCHES_NOT_MODIFIED = new LongAdder();
+    private static final LongAdder FETCHED_BYTES = new LongAdder();
+    private static final LongAdder PERSIST_ERRORS = new LongAdder();
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+    private static final RateMeter CONVERSIONS = new RateMeter();
+    private static final int CONVERSION_SAMPLE_INTERVAL = 64;
+
+    private static volatile long snapshotEpochSecond = -1;
+    private static boolean registered;
+
+    private Metrics() {
+    }
+
+    /**
+     * Records a completed request to a rate provider.
+     * @param nanos The time from sending the request to parsing the response
+     * @param bytes The number of bytes of the response body as received
+     * @param notModified Whether the provider reported that its rates have not changed
+     */
+    public static void recordFetch(long nanos, long bytes, boolean notModified) {
+        FETCHES.increment();
+        FETCHED_BYTES.add(bytes);
+        if (notModified) {
+            FETCHES_NOT_MODIFIED.increment();
+        }
+        FETCH_LATENCY.record(nanos);
+    }
+
+    /**
+     * Records a request to a rate provider that failed.
+     */
+    public static void recordFetchError() {
+        FETCHES.increment();
+        FETCH_ERRORS.increment();
+    }
+
+    public static void recordParse(long nanos) {
+        PARSE_TIME.record(nanos);
+    }
+
+    public static void recordPersist(long nanos) {
+        PERSIST_TIME.record(nanos);
+    }
+
+    public static void recordPersistError() {
+        PERSIST_ERRORS.increment();
+    }
+
+    /**
+     * Records a request for the rate snapshot.
+     * @param hit Whether rates were already in memory, rather than the request having to wait for the API
+     */
+    public static void recordSnapshotRequest(boolean hit) {
+        if (hit) {
+            CACHE_HITS.increment();
+        }
+        else {
+            CACHE_MISSES.increment();
+        }
+    }
+
+    /**
+     * Counts a conversion and decides whether it is one of the sampled conversions that are timed.
+     * Conversions take a few tens of nanoseconds, so only one in CONVERSION_SAMPLE_INTERVAL of them is timed, added to
+     * the rate and recorded as a flight recorder event, which keeps the clock reads off most of them.
+     * @return Whether the conversion should be timed and passed to recordConversion
+     */
+    public static boolean countConversion() {
+        CONVERSIONS.increment();
+        return ThreadLocalRandom.current().nextInt(CONVERSION_SAMPLE_INTERVAL) == 0;
+    }
+
+    /**
+     * Records a sampled conversion.
+     * @param nanos The duration of the conversion
+     */
+    public static void recordConversion(long nanos) {
+        CONVERSIONS.sample(CONVERSION_SAMPLE_INTERVAL);
+        CONVERSION_TIME.record(nanos);
+    }
+
+    /**
+     * Sets the date of the rates in use, from which the age of the snapshot is measured.
+     * @param date The date of the rates, or null if there are none
+     */
+    public static void setSnapshotDate(LocalDateTime date) {
+        snapshotEpochSecond = date == null ? -1 : date.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    /**
+     * Registers the counters and every latency histogram with the platform MBean server.
+     * Calling this method again has no effect.
+     */
+    public static synchronized void registerMBeans() {
+        if (registered) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new Counters(), new ObjectName(DOMAIN + ":type=Metrics"));
+            for (LatencyHistogram histogram : HISTOGRAMS) {
+                server.registerMBean(histogram, new ObjectName(DOMAIN + ":type=Latency,name=" + histogram.getName()));
+            }
+            registered = true;
+        }
+        catch (JMException e) {
+            System.out.println("Metrics could not be registered: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes every metric as text, one metric per line in the form name value.
+     * Durations are given in milliseconds.
+     * @return The text of the metrics
+     */
+    public static String dump() {
+        Counters counters = new Counters();
+        StringBuilder out = new StringBuilder();
+        appendLine(out, "fetch.count", counters.getFetches());
+        appendLine(out, "fetch.errors", counters.getFetchErrors());
+        appendLine(out, "fetch.not_modified", counters.getFetchesNotModified());
+        appendLine(out, "fetch.bytes", counters.getFetchedBytes());
+        appendLine(out, "persist.errors", counters.getPersistErrors());
+        appendLine(out, "snapshot.age_seconds", counters.getSnapshotAgeSeconds());
+        appendLine(out, "snapshot.cache_hits", counters.getCacheHits());
+        appendLine(out, "snapshot.cache_misses", counters.getCacheMisses());
+        appendLine(out, "conversion.count", counters.getConversions());
+        appendLine(out, "conversion.per_second", counters.getConversionsPerSecond());
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            String prefix = histogram.getName() + ".latency.";
+            appendLine(out, prefix + "count", histogram.getCount());
+            appendLine(out, prefix + "mean_ms", histogram.getMeanMillis());
+            appendLine(out, prefix + "p50_ms", histogram.getP50Millis());
+            appendLine(out, prefix + "p90_ms", histogram.getP90Millis());
+            appendLine(out, prefix + "p99_ms", histogram.getP99Millis());
+            appendLine(out, prefix + "p999_ms", histogram.getP999Millis());
+            appendLine(out, prefix + "max_ms", histogram.getMaxMillis());
+        }
+        return out.toString();
+    }
+
+    private static void appendLine(StringBuilder out, String name, long value) {
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void appendLine(StringBuilder out, String name, double value) {
+        out.append(name).append(' ').append(String.format(Locale.ROOT, "%.3f", value)).append('\n');
+    }
+
+    /**
+     * Counters exposes the counters over JMX.
+     */
+    private static final class Counters implements MetricsMXBean {
+
+        @Override
+        public long getFetches() {
+            return FETCHES.sum();
+        }
+
+        @Override
+        public long getFetchErrors() {
+            return FETCH_ERRORS.sum();
+        }
+
+        @Override
+        public long getFetchesNotModified() {
+            return FETCHES_NOT_MODIFIED.sum();
+        }
+
+        @Override
+        public long getFetchedBytes() {
+            return FETCHED_BYTES.sum();
+        }
+
+        @Override
+        public long getPersistErrors() {
+            return PERSIST_ERRORS.sum();
+        }
+
+        @Override
+        public long getSnapshotAgeSeconds() {
+            long epochSecond = snapshotEpochSecond;
+            return epochSecond < 0 ? -1 : System.currentTimeMillis() / 1000 - epochSecond;
+        }
+
+        @Override
+        public long getCacheHits() {
+            return CACHE_HITS.sum();
+        }
+
+        @Override
+        public long getCacheMisses() {
+            return CACHE_MISSES.sum();
+        }
+
+        @Override
+        public long getConversions() {
+            return CONVERSIONS.getCount();
+        }
+
+        @Override
+        public double getConversionsPerSecond() {
+            return CONVERSIONS.getRatePerSecond();
+        }
+
+        @Override
+        public String dump() {
+            return Metrics.dump();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package metrics;
+
+/**
+ * The management interface of the counters kept by Metrics.
+ */
+public interface MetricsMXBean {
+
+    long getFetches();
+
+    long getFetchErrors();
+
+    long getFetchesNotModified();
+
+    long getFetchedBytes();
+
+    long getPersistErrors();
+
+    long getSnapshotAgeSeconds();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getConversions();
+
+    double getConversionsPerSecond();
+
+    /**
+     * @return Every metric in the text format of Metrics.dump
+     */
+    String dump();
+}
@@ -0,0 +1,19 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * ParseEvent is the flight recorder event of a rates response being parsed.
+ */
+@Name("currency.Parse")
+@Label("Rates Parse")
+@Category({"Currency Converter", "Rates"})
+@Description("Parsing of a rates response into a snapshot")
+public class ParseEvent extends jdk.jfr.Event {
+
+    @Label("Rates")
+    public int rates;
+}
@@ -0,0 +1,19 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * PersistEvent is the flight recorder event of a new snapshot being written to the snapshot file and rate history.
+ */
+@Name("currency.Persist")
+@Label("Snapshot Persist")
+@Category({"Currency Converter", "Rates"})
+@Description("Writing of a new snapshot to the snapshot file and the rate history")
+public class PersistEvent extends jdk.jfr.Event {
+
+    @Label("Snapshot Date")
+    public String date;
+}
@@ -0,0 +1,69 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The RateMeter class counts events and measures how many happened per second over the last minute.
+ * Every event is counted in a LongAdder, without reading the clock. The rate is estimated from a sample of the events,
+ * each standing for a number of them, which are counted in one slot per second of a ring of WINDOW_SECONDS slots. A
+ * slot is reset by the first sample of a new second that maps to it, so neither call ever locks.
+ */
+public final class RateMeter {
+
+    private static final int WINDOW_SECONDS = 60;
+
+    private final LongAdder total;
+    private final AtomicLongArray seconds;
+    private final AtomicLongArray counts;
+
+    public RateMeter() {
+        this.total = new LongAdder();
+        this.seconds = new AtomicLongArray(WINDOW_SECONDS);
+        this.counts = new AtomicLongArray(WINDOW_SECONDS);
+    }
+
+    /**
+     * Counts an event.
+     */
+    public void increment() {
+        this.total.increment();
+    }
+
+    /**
+     * Adds a sampled event happening now to the rate.
+     * @param weight The number of events the sample stands for
+     */
+    public void sample(long weight) {
+        long second = System.currentTimeMillis() / 1000;
+        int slot = (int) (second % WINDOW_SECONDS);
+        long slotSecond = this.seconds.get(slot);
+        if (slotSecond != second && this.seconds.compareAndSet(slot, slotSecond, second)) {
+            this.counts.set(slot, 0);
+        }
+        this.counts.addAndGet(slot, weight);
+    }
+
+    /**
+     * @return The number of events counted since the meter was created
+     */
+    public long getCount() {
+        return this.total.sum();
+    }
+
+    /**
+     * Estimates the average rate of events over the last minute from the samples, excluding the current second.
+     * @return The number of events per second
+     */
+    public double getRatePerSecond() {
+        long now = System.currentTimeMillis() / 1000;
+        long events = 0;
+        for (int slot = 0; slot < WINDOW_SECONDS; slot++) {
+            long second = this.seconds.get(slot);
+            if (second < now && second >= now - WINDOW_SECONDS) {
+                events += this.counts.get(slot);
+            }
+        }
+        return (double) events / WINDOW_SECONDS;
+    }
+}
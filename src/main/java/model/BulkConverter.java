@@ -0,0 +1,280 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * The BulkConverter class converts whole arrays of amounts at a single rate.
+ *
+ * Every method rounds its results to the minor units of the currency converted to HALF_UP, exactly as converting
+ * each amount on its own with BigDecimal and setScale(digits, RoundingMode.HALF_UP) would, but without creating a
+ * BigDecimal per amount.
+ *
+ * Amounts given as doubles are converted in chunks. The amounts of a chunk are multiplied and rounded in loops free
+ * of branches, which the JIT compiles to SIMD instructions. A separate loop finds the few amounts whose scaled value
+ * lies too close to a rounding tie for the error of double arithmetic to be ruled out, and only those are converted
+ * with BigDecimal.
+ *
+ * Amounts given as longs are counts of minor units, such as cents. They are multiplied by the unscaled rate into 128
+ * bits and divided back to minor units of the other currency with integer arithmetic, so every result is exact
+ * without any BigDecimal.
+ */
+public final class BulkConverter {
+
+    private static final int CHUNK_SIZE = 1024;
+    private static final double TIE_TOLERANCE = 0x1p-48;
+    private static final double MAX_EXACT_SCALED = 0x1p52;
+    private static final int MAX_LONG_POWER_OF_TEN = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_LONG_POWER_OF_TEN + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private BulkConverter() {
+    }
+
+    /**
+     * Converts amounts given as doubles.
+     * Each result is the double closest to the amount multiplied by the rate and rounded to the given number of
+     * decimal places HALF_UP, where the amount is taken to be BigDecimal.valueOf of the double.
+     * @param amounts The amounts to convert
+     * @param rate The rate of conversion
+     * @param digits The number of decimal places to round to, such as 2 for cents or 0 for whole yen
+     * @param results The array the converted amounts are written to, which may be the amounts array itself
+     * @throws IllegalArgumentException If the arrays are not of the same length or the digits are out of range
+     */
+    public static void convert(double[] amounts, BigDecimal rate, int digits, double[] results) {
+        checkLengths(amounts.length, results.length);
+        checkDigits(digits);
+        double unit = POWERS_OF_TEN[digits];
+        double factor = rate.doubleValue() * unit;
+        double[] scaled = new double[Math.min(CHUNK_SIZE, amounts.length)];
+        int[] tieIndexes = new int[scaled.length];
+        double[] tieResults = new double[scaled.length];
+
+        for (int start = 0; start < amounts.length; start += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, amounts.length - start);
+
+            for (int i = 0; i < length; i++) {
+                scaled[i] = amounts[start + i] * factor;
+            }
+
+            int ties = 0;
+            for (int i = 0; i < length; i++) {
+                double magnitude = Math.abs(scaled[i]);
+                double distanceToTie = Math.abs(magnitude - Math.floor(magnitude) - 0.5);
+                if ((distanceToTie <= magnitude * TIE_TOLERANCE || magnitude >= MAX_EXACT_SCALED)
+                        && Double.isFinite(magnitude)) {
+                    tieIndexes[ties] = start + i;
+                    tieResults[ties++] = BigDecimal.valueOf(amounts[start + i]).multiply(rate)
+                            .setScale(digits, RoundingMode.HALF_UP).doubleValue();
+                }
+            }
+
+            for (int i = 0; i < length; i++) {
+                double value = scaled[i];
+                results[start + i] = Math.copySign(Math.floor(Math.abs(value) + 0.5), value) / unit;
+            }
+
+            for (int i = 0; i < ties; i++) {
+                results[tieIndexes[i]] = tieResults[i];
+            }
+        }
+    }
+
+    /**
+     * Converts amounts given as counts of minor units, such as cents.
+     * @param amounts The amounts to convert in minor units of the currency converted from
+     * @param fromDigits The number of minor unit digits of the currency converted from
+     * @param rate The rate of conversion
+     * @param toDigits The number of minor unit digits of the currency converted to
+     * @param results The array the converted amounts are written to in minor units of the currency converted to,
+     * which may be the amounts array itself
+     * @throws IllegalArgumentException If the arrays are not of the same length or the digits are out of range
+     * @throws ArithmeticException If a converted amount does not fit in a long
+     */
+    public static void convert(long[] amounts, int fromDigits, BigDecimal rate, int toDigits, long[] results) {
+        checkLengths(amounts.length, results.length);
+        checkDigits(fromDigits);
+        checkDigits(toDigits);
+        BigDecimal integral = rate.scale() < 0 ? rate.setScale(0) : rate;
+        if (integral.unscaledValue().bitLength() > 63) {
+            for (int i = 0; i < amounts.length; i++) {
+                results[i] = convertExactly(amounts[i], fromDigits, rate, toDigits);
+            }
+            return;
+        }
+
+        long unscaledRate = integral.unscaledValue().longValue();
+        int rateScale = integral.scale();
+        if (rateScale + fromDigits < toDigits) {
+            for (int i = 0; i < amounts.length; i++) {
+                results[i] = convertMinorUnits(amounts[i], unscaledRate, rateScale, fromDigits, toDigits);
+            }
+            return;
+        }
+
+        int scale = rateScale + fromDigits - toDigits;
+        for (int i = 0; i < amounts.length; i++) {
+            results[i] = multiplyRoundHalfUp(amounts[i], unscaledRate, scale);
+        }
+    }
+
+    /**
+     * Converts an amount given in minor units to the minor units of another currency.
+     * @param amount The amount in minor units of the currency converted from
+     * @param unscaledRate The unscaled value of the rate of conversion
+     * @param rateScale The scale of the rate of conversion, which must not be negative
+     * @param fromDigits The number of minor unit digits of the currency converted from
+     * @param toDigits The number of minor unit digits of the currency converted to
+     * @return The converted amount in minor units of the currency converted to, rounded HALF_UP
+     * @throws ArithmeticException If the converted amount does not fit in a long
+     */
+    static long convertMinorUnits(long amount, long unscaledRate, int rateScale, int fromDigits, int toDigits) {
+        int scale = rateScale + fromDigits - toDigits;
+        if (scale >= 0) {
+            return multiplyRoundHalfUp(amount, unscaledRate, scale);
+        }
+        if (-scale > MAX_LONG_POWER_OF_TEN) {
+            return convertExactly(amount, fromDigits, BigDecimal.valueOf(unscaledRate, rateScale), toDigits);
+        }
+        return Math.multiplyExact(Math.multiplyExact(amount, unscaledRate), POWERS_OF_TEN[-scale]);
+    }
+
+    /**
+     * Multiplies an integer by a decimal and rounds the product to an integer HALF_UP.
+     * @param amount The integer
+     * @param unscaledRate The unscaled value of the decimal
+     * @param scale The scale of the decimal, which must not be negative
+     * @return The rounded product
+     * @throws ArithmeticException If the rounded product does not fit in a long
+     */
+    static long multiplyRoundHalfUp(long amount, long unscaledRate, int scale) {
+        if (amount == Long.MIN_VALUE || unscaledRate == Long.MIN_VALUE) {
+            return convertExactly(amount, 0, BigDecimal.valueOf(unscaledRate, scale), 0);
+        }
+        long magnitude = Math.abs(amount);
+        long rate = Math.abs(unscaledRate);
+        long high = Math.multiplyHigh(magnitude, rate);
+        long low = magnitude * rate;
+
+        long rounded;
+        if (scale == 0) {
+            if (high != 0 || low < 0) {
+                throw new ArithmeticException("Converted amount does not fit in a long");
+            }
+            rounded = low;
+        }
+        else {
+            long truncated;
+            if (high == 0 && low >= 0 && scale - 1 <= MAX_LONG_POWER_OF_TEN) {
+                truncated = low / POWERS_OF_TEN[scale - 1];
+            }
+            else {
+                truncated = divideByPowerOfTen(high, low, scale - 1);
+            }
+            rounded = truncated / 10 + (truncated % 10 >= 5 ? 1 : 0);
+        }
+        return (amount < 0) != (unscaledRate < 0) ? -rounded : rounded;
+    }
+
+    /**
+     * Divides an unsigned 128-bit integer by a power of ten, discarding the remainder.
+     * Dividing by 10^(scale - 1) first and rounding on the last digit of the quotient gives the same result as
+     * rounding the division by 10^scale, as the discarded remainder cannot move the quotient across a tie.
+     * @param high The upper 64 bits of the dividend
+     * @param low The lower 64 bits of the dividend
+     * @param exponent The power of ten to divide by
+     * @return The quotient
+     * @throws ArithmeticException If the quotient does not fit in a long
+     */
+    private static long divideByPowerOfTen(long high, long low, int exponent) {
+        while (exponent > 0) {
+            int step = Math.min(exponent, MAX_LONG_POWER_OF_TEN);
+            long divisor = POWERS_OF_TEN[step];
+            long quotientHigh = Long.divideUnsigned(high, divisor);
+            long remainderHigh = Long.remainderUnsigned(high, divisor);
+            low = divideUnsigned128(remainderHigh, low, divisor);
+            high = quotientHigh;
+            exponent -= step;
+        }
+        if (high != 0 || low < 0) {
+            throw new ArithmeticException("Converted amount does not fit in a long");
+        }
+        return low;
+    }
+
+    /**
+     * Divides an unsigned 128-bit integer by an unsigned 64-bit integer whose quotient fits in 64 bits, following
+     * the divlu algorithm of Hacker's Delight.
+     * @param high The upper 64 bits of the dividend, which must be less than the divisor
+     * @param low The lower 64 bits of the dividend
+     * @param divisor The divisor
+     * @return The quotient as an unsigned long
+     */
+    private static long divideUnsigned128(long high, long low, long divisor) {
+        final long base = 1L << 32;
+        final long mask = base - 1;
+        int shift = Long.numberOfLeadingZeros(divisor);
+        long v = divisor << shift;
+        long vHigh = v >>> 32;
+        long vLow = v & mask;
+        long uHigh = shift == 0 ? high : (high << shift) | (low >>> (64 - shift));
+        long uLow = low << shift;
+        long uLow1 = uLow >>> 32;
+        long uLow0 = uLow & mask;
+
+        long q1 = Long.divideUnsigned(uHigh, vHigh);
+        long remainder = uHigh - q1 * vHigh;
+        while (Long.compareUnsigned(q1, base) >= 0 || Long.compareUnsigned(q1 * vLow, remainder * base + uLow1) > 0) {
+            q1--;
+            remainder += vHigh;
+            if (Long.compareUnsigned(remainder, base) >= 0) {
+                break;
+            }
+        }
+
+        long middle = uHigh * base + uLow1 - q1 * v;
+        long q0 = Long.divideUnsigned(middle, vHigh);
+        remainder = middle - q0 * vHigh;
+        while (Long.compareUnsigned(q0, base) >= 0 || Long.compareUnsigned(q0 * vLow, remainder * base + uLow0) > 0) {
+            q0--;
+            remainder += vHigh;
+            if (Long.compareUnsigned(remainder, base) >= 0) {
+                break;
+            }
+        }
+        return q1 * base + q0;
+    }
+
+    /**
+     * Converts an amount given as an unscaled integer with BigDecimal.
+     * @param amount The unscaled amount
+     * @param amountScale The number of decimal places of the amount
+     * @param rate The rate of conversion
+     * @param resultScale The number of decimal places of the result
+     * @return The unscaled converted amount
+     * @throws ArithmeticException If the converted amount does not fit in a long
+     */
+    static long convertExactly(long amount, int amountScale, BigDecimal rate, int resultScale) {
+        return BigDecimal.valueOf(amount, amountScale).multiply(rate)
+                .setScale(resultScale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static void checkLengths(int amounts, int results) {
+        if (amounts != results) {
+            throw new IllegalArgumentException("The results array must be as long as the amounts array");
+        }
+    }
+
+    private static void checkDigits(int digits) {
+        if (digits < 0 || digits > MAX_LONG_POWER_OF_TEN) {
+            throw new IllegalArgumentException("The number of decimal places must be between 0 and "
+                    + MAX_LONG_POWER_OF_TEN);
+        }
+    }
+}
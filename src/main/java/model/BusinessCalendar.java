@@ -0,0 +1,103 @@
+package model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A BusinessCalendar tells on which days the rate provider publishes new rates.
+ * StoredCurrency uses the default calendar to find when the provider is next expected to have new rates.
+ */
+public interface BusinessCalendar {
+
+    /**
+     * Checks whether the provider publishes rates on a day.
+     * @param date The day
+     * @return Whether the day is a business day
+     */
+    boolean isBusinessDay(LocalDate date);
+
+    /**
+     * Finds the first business day after a day.
+     * @param date The day
+     * @return The first business day after the day
+     */
+    default LocalDate nextBusinessDay(LocalDate date) {
+        LocalDate next = date.plusDays(1);
+        for (int i = 0; i < 366 && !isBusinessDay(next); i++) {
+            next = next.plusDays(1);
+        }
+        return next;
+    }
+
+    /**
+     * @return A calendar in which every day from Monday to Friday is a business day
+     */
+    static BusinessCalendar weekdays() {
+        return holidays(new HashSet<LocalDate>());
+    }
+
+    /**
+     * Creates a calendar in which every day from Monday to Friday is a business day except the given holidays.
+     * @param holidays The holidays
+     * @return The calendar
+     */
+    static BusinessCalendar holidays(Collection<LocalDate> holidays) {
+        final Set<LocalDate> closed = new HashSet<>(holidays);
+        return new BusinessCalendar() {
+            @Override
+            public boolean isBusinessDay(LocalDate date) {
+                DayOfWeek day = date.getDayOfWeek();
+                return day != DayOfWeek.SATURDAY && day != DayOfWeek.SUNDAY && !closed.contains(date);
+            }
+        };
+    }
+
+    /**
+     * Creates the calendar configured by the currency.calendar.holidays system property, which names a file listing
+     * one holiday per line as an ISO date. Blank lines and lines starting with # are ignored.
+     * @return The configured calendar, or weekdays() if the property is not set or the file cannot be read
+     */
+    static BusinessCalendar fromSystemProperties() {
+        String file = System.getProperty("currency.calendar.holidays");
+        if (file == null || file.trim().isEmpty()) {
+            return weekdays();
+        }
+        try {
+            Set<LocalDate> holidays = new HashSet<>();
+            for (String line : Files.readAllLines(Paths.get(file.trim()), StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    holidays.add(LocalDate.parse(line));
+                }
+            }
+            return holidays(holidays);
+        }
+        catch (IOException | DateTimeParseException e) {
+            System.out.println("Holiday calendar could not be read: " + e.getMessage());
+            return weekdays();
+        }
+    }
+
+    /**
+     * @return The calendar used to schedule updates, configured by system properties unless replaced
+     */
+    static BusinessCalendar getDefault() {
+        return DefaultCalendar.calendar;
+    }
+
+    /**
+     * Replaces the calendar used to schedule updates of rates retrieved from now on.
+     * @param calendar The calendar
+     */
+    static void setDefault(BusinessCalendar calendar) {
+        DefaultCalendar.calendar = calendar;
+    }
+}
@@ -0,0 +1,103 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * The CrossRateMatrix class holds the rate between every pair of currencies in a RateTable.
+ * The rates of the table are all relative to the same base currency, so the rate from one currency to another is the
+ * rate of the second divided by the rate of the first. These divisions are done once when the matrix is built so that
+ * looking up a pair is a single array read.
+ *
+ * Each cross rate is also kept as an unscaled long and a scale, so conversions in minor units can use a rate without
+ * allocating anything.
+ */
+public final class CrossRateMatrix {
+
+    /**
+     * The precision and rounding used for every cross rate.
+     */
+    public static final MathContext MATH_CONTEXT = MathContext.DECIMAL64;
+
+    private final int size;
+    private final BigDecimal[] crossRates;
+    private final long[] unscaledRates;
+    private final int[] scales;
+
+    /**
+     * Constructor for a CrossRateMatrix object.
+     * @param table The rates relative to a common base currency
+     */
+    public CrossRateMatrix(RateTable table) {
+        this.size = table.size();
+        this.crossRates = new BigDecimal[this.size * this.size];
+        this.unscaledRates = new long[this.size * this.size];
+        this.scales = new int[this.size * this.size];
+        Arrays.fill(this.scales, -1);
+        for (int from = 0; from < this.size; from++) {
+            BigDecimal fromRate = table.getRate(from);
+            if (fromRate == null || fromRate.signum() == 0) {
+                continue;
+            }
+            for (int to = 0; to < this.size; to++) {
+                BigDecimal toRate = table.getRate(to);
+                if (toRate == null) {
+                    continue;
+                }
+                int index = from * this.size + to;
+                this.crossRates[index] = from == to ? BigDecimal.ONE : toRate.divide(fromRate, MATH_CONTEXT);
+
+                BigDecimal integral = this.crossRates[index].scale() < 0 ?
+                        this.crossRates[index].setScale(0) : this.crossRates[index];
+                if (integral.unscaledValue().bitLength() <= 63) {
+                    this.unscaledRates[index] = integral.unscaledValue().longValue();
+                    this.scales[index] = integral.scale();
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the rate of conversion between two currencies.
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @return The rate required to convert from the first currency to the second, or null if either is unknown
+     */
+    public BigDecimal getCrossRate(int fromId, int toId) {
+        if (fromId < 0 || toId < 0 || fromId >= this.size || toId >= this.size) {
+            return null;
+        }
+        return this.crossRates[fromId * this.size + toId];
+    }
+
+    /**
+     * Finds the unscaled value of the rate of conversion between two currencies.
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @return The unscaled value of the rate, which is only meaningful if getCrossRateScale is not negative
+     */
+    public long getUnscaledCrossRate(int fromId, int toId) {
+        if (fromId < 0 || toId < 0 || fromId >= this.size || toId >= this.size) {
+            return 0;
+        }
+        return this.unscaledRates[fromId * this.size + toId];
+    }
+
+    /**
+     * Finds the scale of the rate of conversion between two currencies.
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @return The scale of the rate, or -1 if either currency is unknown or the rate does not fit in a long
+     */
+    public int getCrossRateScale(int fromId, int toId) {
+        if (fromId < 0 || toId < 0 || fromId >= this.size || toId >= this.size) {
+            return -1;
+        }
+        return this.scales[fromId * this.size + toId];
+    }
+
+    public int size() {
+        return this.size;
+    }
+}
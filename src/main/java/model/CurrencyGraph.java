@@ -0,0 +1,369 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The CurrencyGraph class holds a quoted rate for any pair of currencies and finds the best way to convert between
+ * every pair, possibly through other currencies.
+ *
+ * Each quote is an edge weighted by the negative logarithm of its rate, so the path with the highest product of
+ * rates is the shortest path, and a cycle whose product of rates exceeds 1 is a negative cycle, which is an
+ * arbitrage. The shortest distances between all pairs are kept along with the predecessor of every currency in the
+ * shortest path tree of every source.
+ *
+ * A quote that improves only needs the distances through its edge to be relaxed, which takes O(n^2). A quote that
+ * worsens or is removed only invalidates the sources whose shortest path tree uses its edge, so only those are
+ * recomputed, falling back to recomputing the whole graph when too many of them are affected.
+ *
+ * Relaxations must improve a distance by more than EPSILON, so rounding errors of the logarithms never create
+ * cycles out of rates that are consistent with each other. Best rates through an arbitrage are not meaningful, as
+ * the cycle could be repeated indefinitely; they use the cycle at most once.
+ */
+public final class CurrencyGraph {
+
+    private static final double EPSILON = 1e-12;
+    private static final double DEFAULT_ARBITRAGE_THRESHOLD = 1e-9;
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
+    private static final int NONE = -1;
+
+    private final int size;
+    private final double arbitrageThreshold;
+    private final double[] weights;
+    private final double[] distances;
+    private final int[] predecessors;
+
+    /**
+     * Constructor for a CurrencyGraph object holding no quotes.
+     * @param size The number of currencies, whose ids must be below it
+     * @param arbitrageThreshold The smallest gain of a cycle, such as 0.0001 for 0.01%, reported as an arbitrage
+     */
+    public CurrencyGraph(int size, double arbitrageThreshold) {
+        this.size = size;
+        this.arbitrageThreshold = arbitrageThreshold;
+        this.weights = new double[size * size];
+        this.distances = new double[size * size];
+        this.predecessors = new int[size * size];
+        Arrays.fill(this.weights, INFINITY);
+        recomputeAll();
+    }
+
+    /**
+     * Constructor for a CurrencyGraph object holding no quotes, sized for every registered currency.
+     */
+    public CurrencyGraph() {
+        this(CurrencyRegistry.size(), DEFAULT_ARBITRAGE_THRESHOLD);
+    }
+
+    /**
+     * Creates a graph holding the rates of a RateTable as quotes between its base currency and every other currency,
+     * in both directions.
+     * @param table The rates relative to a common base currency
+     * @param baseId The id of the base currency of the rates
+     * @return The graph
+     */
+    public static CurrencyGraph of(RateTable table, int baseId) {
+        CurrencyGraph graph = new CurrencyGraph(Math.max(table.size(), baseId + 1), DEFAULT_ARBITRAGE_THRESHOLD);
+        for (int id = 0; id < table.size(); id++) {
+            double rate = table.getRateAsDouble(id);
+            if (id != baseId && table.hasRate(id) && rate > 0) {
+                graph.weights[baseId * graph.size + id] = -Math.log(rate);
+                graph.weights[id * graph.size + baseId] = Math.log(rate);
+            }
+        }
+        graph.recomputeAll();
+        return graph;
+    }
+
+    /**
+     * Sets the rate quoted for converting one currency to another, replacing any earlier quote of the pair.
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @param rate The quoted rate, which must be positive
+     * @throws IllegalArgumentException If either currency is out of range, they are the same or the rate is not
+     * positive
+     */
+    public synchronized void setQuote(int fromId, int toId, double rate) {
+        if (!(rate > 0) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("Quoted rates must be positive");
+        }
+        updateEdge(fromId, toId, -Math.log(rate));
+    }
+
+    /**
+     * Removes the quote for converting one currency to another.
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @throws IllegalArgumentException If either currency is out of range or they are the same
+     */
+    public synchronized void removeQuote(int fromId, int toId) {
+        updateEdge(fromId, toId, INFINITY);
+    }
+
+    /**
+     * Finds the rate quoted for converting one currency to another.
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @return The quoted rate, or 0 if the pair has no quote
+     */
+    public synchronized double getQuote(int fromId, int toId) {
+        if (!inRange(fromId) || !inRange(toId)) {
+            return 0;
+        }
+        return Math.exp(-this.weights[fromId * this.size + toId]);
+    }
+
+    /**
+     * Finds the best rate for converting one currency to another through any sequence of quotes.
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @return The product of the rates along the best path, or 0 if there is no path
+     */
+    public synchronized double getBestRate(int fromId, int toId) {
+        if (!inRange(fromId) || !inRange(toId)) {
+            return 0;
+        }
+        return Math.exp(-this.distances[fromId * this.size + toId]);
+    }
+
+    /**
+     * Finds the currencies to convert through to get the best rate from one currency to another.
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @return The ids of the currencies along the path, starting with fromId and ending with toId, or null if there
+     * is no path
+     */
+    public synchronized int[] getBestPath(int fromId, int toId) {
+        if (!inRange(fromId) || !inRange(toId) || this.distances[fromId * this.size + toId] == INFINITY) {
+            return null;
+        }
+        if (fromId == toId && this.predecessors[fromId * this.size + toId] == NONE) {
+            return new int[] {fromId};
+        }
+        return walkBack(fromId, toId);
+    }
+
+    /**
+     * Looks for a cycle of quotes whose product of rates exceeds 1 by more than the arbitrage threshold.
+     * @return The most profitable cycle found from any currency back to itself, or null if there is none
+     */
+    public synchronized Arbitrage findArbitrage() {
+        int best = NONE;
+        for (int id = 0; id < this.size; id++) {
+            if (best == NONE || this.distances[id * this.size + id] < this.distances[best * this.size + best]) {
+                best = id;
+            }
+        }
+        if (best == NONE || Math.exp(-this.distances[best * this.size + best]) - 1 <= this.arbitrageThreshold) {
+            return null;
+        }
+        return new Arbitrage(walkBack(best, best), Math.exp(-this.distances[best * this.size + best]) - 1);
+    }
+
+    /**
+     * Follows the predecessors of a source's shortest path tree back from a currency to the source.
+     * @param source The id of the source
+     * @param target The id of the currency to start from
+     * @return The ids of the currencies along the path from the source to the target
+     */
+    private int[] walkBack(int source, int target) {
+        List<Integer> reversed = new ArrayList<>();
+        reversed.add(target);
+        int current = this.predecessors[source * this.size + target];
+        while (current != NONE && current != source && reversed.size() <= this.size) {
+            reversed.add(current);
+            current = this.predecessors[source * this.size + current];
+        }
+        reversed.add(source);
+
+        int[] path = new int[reversed.size()];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = reversed.get(path.length - 1 - i);
+        }
+        return path;
+    }
+
+    /**
+     * Changes the weight of an edge and updates the distances it affects.
+     * @param from The id of the currency the edge starts at
+     * @param to The id of the currency the edge ends at
+     * @param weight The new weight of the edge
+     * @throws IllegalArgumentException If either currency is out of range or they are the same
+     */
+    private void updateEdge(int from, int to, double weight) {
+        if (!inRange(from) || !inRange(to) || from == to) {
+            throw new IllegalArgumentException("Quotes must be between two different known currencies");
+        }
+        int edge = from * this.size + to;
+        double previous = this.weights[edge];
+        if (weight == previous) {
+            return;
+        }
+        if (weight < previous) {
+            this.weights[edge] = weight;
+            relaxThrough(from, to, weight);
+            return;
+        }
+
+        List<Integer> affected = new ArrayList<>();
+        for (int source = 0; source < this.size; source++) {
+            if (this.predecessors[source * this.size + to] == from) {
+                affected.add(source);
+            }
+        }
+        this.weights[edge] = weight;
+        if (affected.size() * 4 > this.size) {
+            recomputeAll();
+        }
+        else {
+            for (int source : affected) {
+                recomputeSource(source);
+            }
+        }
+    }
+
+    /**
+     * Updates every distance that becomes shorter by going through an edge whose weight has decreased.
+     * @param from The id of the currency the edge starts at
+     * @param to The id of the currency the edge ends at
+     * @param weight The new weight of the edge
+     */
+    private void relaxThrough(int from, int to, double weight) {
+        double[] toFrom = new double[this.size];
+        double[] fromTo = Arrays.copyOfRange(this.distances, to * this.size, (to + 1) * this.size);
+        int[] fromToPredecessors = Arrays.copyOfRange(this.predecessors, to * this.size, (to + 1) * this.size);
+        for (int source = 0; source < this.size; source++) {
+            toFrom[source] = this.distances[source * this.size + from];
+        }
+
+        for (int source = 0; source < this.size; source++) {
+            if (toFrom[source] == INFINITY) {
+                continue;
+            }
+            double base = toFrom[source] + weight;
+            int row = source * this.size;
+            for (int target = 0; target < this.size; target++) {
+                double candidate = base + fromTo[target];
+                if (candidate < this.distances[row + target] - EPSILON) {
+                    this.distances[row + target] = candidate;
+                    this.predecessors[row + target] = target == to ? from : fromToPredecessors[target];
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes the shortest path tree of a single source with a queue-based Bellman-Ford search.
+     * The search stops after every currency has been relaxed as many times as there are currencies, which only
+     * happens when the source reaches an arbitrage.
+     * @param source The id of the source
+     */
+    private void recomputeSource(int source) {
+        int row = source * this.size;
+        Arrays.fill(this.distances, row, row + this.size, INFINITY);
+        Arrays.fill(this.predecessors, row, row + this.size, NONE);
+        this.distances[row + source] = 0;
+
+        int[] relaxations = new int[this.size];
+        boolean[] queued = new boolean[this.size];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(source);
+        queued[source] = true;
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            queued[current] = false;
+            if (++relaxations[current] > this.size) {
+                break;
+            }
+            double distance = this.distances[row + current];
+            for (int next = 0; next < this.size; next++) {
+                double candidate = distance + this.weights[current * this.size + next];
+                if (next != source && candidate < this.distances[row + next] - EPSILON) {
+                    this.distances[row + next] = candidate;
+                    this.predecessors[row + next] = current;
+                    if (!queued[next]) {
+                        queue.add(next);
+                        queued[next] = true;
+                    }
+                }
+            }
+        }
+
+        for (int last = 0; last < this.size; last++) {
+            double cycle = this.distances[row + last] + this.weights[last * this.size + source];
+            if (cycle < this.distances[row + source] - EPSILON) {
+                this.distances[row + source] = cycle;
+                this.predecessors[row + source] = last;
+            }
+        }
+    }
+
+    /**
+     * Recomputes the distances between all pairs with the Floyd-Warshall algorithm.
+     */
+    private void recomputeAll() {
+        for (int from = 0; from < this.size; from++) {
+            for (int to = 0; to < this.size; to++) {
+                int index = from * this.size + to;
+                boolean quoted = from != to && this.weights[index] != INFINITY;
+                this.distances[index] = from == to ? 0 : this.weights[index];
+                this.predecessors[index] = quoted ? from : NONE;
+            }
+        }
+        for (int via = 0; via < this.size; via++) {
+            int viaRow = via * this.size;
+            for (int from = 0; from < this.size; from++) {
+                double toVia = this.distances[from * this.size + via];
+                if (toVia == INFINITY) {
+                    continue;
+                }
+                int row = from * this.size;
+                for (int to = 0; to < this.size; to++) {
+                    double candidate = toVia + this.distances[viaRow + to];
+                    if (candidate < this.distances[row + to] - EPSILON) {
+                        this.distances[row + to] = candidate;
+                        this.predecessors[row + to] = this.predecessors[viaRow + to];
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean inRange(int id) {
+        return id >= 0 && id < this.size;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Arbitrage is a cycle of quotes whose product of rates exceeds 1.
+     */
+    public static final class Arbitrage {
+
+        private final int[] cycle;
+        private final double gain;
+
+        Arbitrage(int[] cycle, double gain) {
+            this.cycle = cycle;
+            this.gain = gain;
+        }
+
+        /**
+         * @return The ids of the currencies along the cycle, starting and ending with the same currency
+         */
+        public int[] getCycle() {
+            return this.cycle.clone();
+        }
+
+        /**
+         * @return The product of the rates along the cycle minus 1, such as 0.002 for a 0.2% gain
+         */
+        public double getGain() {
+            return this.gain;
+        }
+    }
+}
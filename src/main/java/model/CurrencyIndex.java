@@ -0,0 +1,387 @@
+package model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The CurrencyIndex class finds currencies by what a user types: their code, their name or a part of either.
+ * It is built once from the registered currencies and never changes, so lookups take no locks.
+ *
+ * Names and codes are held in a trie of lower case characters. Every word of a name starts a path of its own, so
+ * "dollar" completes to every dollar, and names with accents are also held without them. Every node keeps the ids of
+ * all currencies below it in completion order, so completing a prefix is a walk down the trie and one array copy.
+ *
+ * Misspelled names are found through an index of the character pairs of every name and code, with a pair for the start
+ * and the end of the name. The currency whose pairs overlap most with those of the query, measured by their Dice
+ * coefficient, is the closest match if more than half of their pairs are shared. Only the rarest pairs of the query can
+ * make a name a candidate, since a name met first in the common pairs cannot share enough of them. Scores are counted
+ * in arrays kept per thread, so lookups allocate nothing.
+ */
+final class CurrencyIndex {
+
+    private static final int NONE = -1;
+    private static final int SYMBOLS = 37;
+    private static final int MIN_SIMILARITY_NUMERATOR = 1;
+    private static final int MIN_SIMILARITY_DENOMINATOR = 2;
+
+    private final Node root = new Node();
+    private final int[] rankedIds;
+    private final int[] ranks;
+    private final int[][] postings = new int[SYMBOLS * SYMBOLS][];
+    private final int[] keyIds;
+    private final int[] keyPairs;
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * Constructor for a CurrencyIndex object.
+     * @param codes The codes of the currencies in id order
+     * @param names The names of every currency in id order, its usual name first
+     * @param supported The number of currencies, from id 0, that are listed before the others in completions
+     */
+    CurrencyIndex(final String[] codes, final String[][] names, final int supported) {
+        Integer[] order = new Integer[codes.length];
+        for (int id = 0; id < codes.length; id++) {
+            order[id] = id;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                if ((first < supported) != (second < supported)) {
+                    return first < supported ? -1 : 1;
+                }
+                return primaryName(codes, names, first).compareToIgnoreCase(primaryName(codes, names, second));
+            }
+        });
+        this.rankedIds = new int[codes.length];
+        this.ranks = new int[codes.length];
+        for (int rank = 0; rank < order.length; rank++) {
+            this.rankedIds[rank] = order[rank];
+            this.ranks[order[rank]] = rank;
+        }
+
+        List<String> keys = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < codes.length; id++) {
+            keys.add(codes[id].toLowerCase(Locale.ROOT));
+            ids.add(id);
+            for (String name : names[id]) {
+                String lower = name.toLowerCase(Locale.ROOT);
+                String folded = stripAccents(lower);
+                keys.add(folded);
+                ids.add(id);
+                if (!folded.equals(lower)) {
+                    keys.add(lower);
+                    ids.add(id);
+                }
+            }
+        }
+
+        for (int key = 0; key < keys.size(); key++) {
+            insert(keys.get(key), ids.get(key));
+        }
+        this.root.seal(this.rankedIds);
+
+        this.keyIds = new int[keys.size()];
+        this.keyPairs = new int[keys.size()];
+        int[] counts = new int[this.postings.length];
+        List<int[]> keyPairLists = new ArrayList<>();
+        for (int key = 0; key < keys.size(); key++) {
+            this.keyIds[key] = ids.get(key);
+            int[] pairs = distinctPairs(keys.get(key));
+            keyPairLists.add(pairs);
+            this.keyPairs[key] = pairs.length;
+            for (int pair : pairs) {
+                counts[pair]++;
+            }
+        }
+        for (int pair = 0; pair < this.postings.length; pair++) {
+            this.postings[pair] = new int[counts[pair]];
+            counts[pair] = 0;
+        }
+        for (int key = 0; key < keyPairLists.size(); key++) {
+            for (int pair : keyPairLists.get(key)) {
+                this.postings[pair][counts[pair]++] = key;
+            }
+        }
+
+        final int keyCount = keys.size();
+        this.scratch = new ThreadLocal<Scratch>() {
+            @Override
+            protected Scratch initialValue() {
+                return new Scratch(keyCount);
+            }
+        };
+    }
+
+    private static String primaryName(String[] codes, String[][] names, int id) {
+        return names[id].length > 0 ? names[id][0] : codes[id];
+    }
+
+    private static String stripAccents(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+    }
+
+    /**
+     * Adds a name to the trie from the start of each of its words.
+     * @param key The name in lower case
+     * @param id The id of its currency
+     */
+    private void insert(String key, int id) {
+        for (int start = 0; start < key.length(); start++) {
+            if (!Character.isLetterOrDigit(key.charAt(start))
+                    || (start > 0 && Character.isLetterOrDigit(key.charAt(start - 1)))) {
+                continue;
+            }
+            Node node = this.root;
+            node.add(this.ranks[id]);
+            for (int i = start; i < key.length(); i++) {
+                node = node.childOrCreate(key.charAt(i));
+                node.add(this.ranks[id]);
+            }
+            if (start == 0 && node.id == NONE) {
+                node.id = id;
+            }
+        }
+    }
+
+    /**
+     * Finds the currency whose whole name or code is the given text, ignoring case.
+     * @param text The name or code
+     * @return The id of the currency, or -1 if none matches
+     */
+    int find(CharSequence text) {
+        Node node = walk(text);
+        return node == null ? NONE : node.id;
+    }
+
+    /**
+     * Finds the currencies with a code, a name or a word of a name starting with a prefix, ignoring case.
+     * Supported currencies come first, and currencies are in alphabetical order of their usual name otherwise.
+     * @param prefix The prefix
+     * @param ids The array the ids of the currencies are written to, whose length bounds how many are found
+     * @return The number of ids written
+     */
+    int complete(CharSequence prefix, int[] ids) {
+        Node node = walk(prefix);
+        if (node == null) {
+            return 0;
+        }
+        int count = Math.min(ids.length, node.ids.length);
+        System.arraycopy(node.ids, 0, ids, 0, count);
+        return count;
+    }
+
+    private Node walk(CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        Node node = this.root;
+        for (int i = start; i < end && node != null; i++) {
+            node = node.child(Character.toLowerCase(text.charAt(i)));
+        }
+        return node;
+    }
+
+    /**
+     * Finds the currency whose name or code is closest to a possibly misspelled query.
+     * @param query The query
+     * @return The id of the closest currency, or -1 if no currency is similar enough
+     */
+    int closest(CharSequence query) {
+        Scratch scratch = this.scratch.get();
+        scratch.stamp++;
+        int queryPairs = 0;
+        int previous = 0;
+        for (int i = 0; i <= query.length(); i++) {
+            int current = i < query.length() ? symbol(query.charAt(i)) : 0;
+            if (previous == 0 && current == 0) {
+                continue;
+            }
+            int pair = previous * SYMBOLS + current;
+            previous = current;
+            if (scratch.seen[pair] != scratch.stamp) {
+                scratch.seen[pair] = scratch.stamp;
+                insertByPostings(scratch.pairs, queryPairs++, pair);
+            }
+        }
+
+        // A key shares at most one pair per remaining pair, so one first met past the rarest pairs cannot be similar
+        int minCommon = MIN_SIMILARITY_NUMERATOR * queryPairs
+                / (2 * MIN_SIMILARITY_DENOMINATOR - MIN_SIMILARITY_NUMERATOR) + 1;
+        int candidatePairs = queryPairs - minCommon + 1;
+        int touched = 0;
+        for (int i = 0; i < queryPairs; i++) {
+            int[] keys = this.postings[scratch.pairs[i]];
+            if (i < candidatePairs) {
+                for (int key : keys) {
+                    if (scratch.scores[key]++ == 0) {
+                        scratch.touched[touched++] = key;
+                    }
+                }
+            }
+            else {
+                for (int key : keys) {
+                    if (scratch.scores[key] > 0) {
+                        scratch.scores[key]++;
+                    }
+                }
+            }
+        }
+
+        int best = NONE;
+        int bestCommon = 0;
+        int bestTotal = 1;
+        for (int i = 0; i < touched; i++) {
+            int key = scratch.touched[i];
+            int common = scratch.scores[key];
+            int total = queryPairs + this.keyPairs[key];
+            scratch.scores[key] = 0;
+            if (MIN_SIMILARITY_DENOMINATOR * 2 * common <= MIN_SIMILARITY_NUMERATOR * total) {
+                continue;
+            }
+            int id = this.keyIds[key];
+            long order = (long) common * bestTotal - (long) bestCommon * total;
+            if (order > 0 || (order == 0 && this.ranks[id] < this.ranks[best])) {
+                best = id;
+                bestCommon = common;
+                bestTotal = total;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Inserts a pair into a list of pairs kept in ascending order of the length of their postings.
+     * @param pairs The list
+     * @param count The number of pairs in the list
+     * @param pair The pair to insert
+     */
+    private void insertByPostings(int[] pairs, int count, int pair) {
+        int length = this.postings[pair].length;
+        int i = count;
+        while (i > 0 && this.postings[pairs[i - 1]].length > length) {
+            pairs[i] = pairs[i - 1];
+            i--;
+        }
+        pairs[i] = pair;
+    }
+
+    /**
+     * Lists the distinct character pairs of a key.
+     * @param key The key in lower case without accents
+     * @return The pairs, each as an index into the postings
+     */
+    private static int[] distinctPairs(String key) {
+        BitSet pairs = new BitSet(SYMBOLS * SYMBOLS);
+        int previous = 0;
+        for (int i = 0; i <= key.length(); i++) {
+            int current = i < key.length() ? symbol(key.charAt(i)) : 0;
+            if (previous != 0 || current != 0) {
+                pairs.set(previous * SYMBOLS + current);
+            }
+            previous = current;
+        }
+        int[] distinct = new int[pairs.cardinality()];
+        int count = 0;
+        for (int pair = pairs.nextSetBit(0); pair >= 0; pair = pairs.nextSetBit(pair + 1)) {
+            distinct[count++] = pair;
+        }
+        return distinct;
+    }
+
+    /**
+     * Maps a character to the symbol it counts as in character pairs.
+     * @param c The character
+     * @return 1 to 26 for letters, 27 to 36 for digits and 0 for anything else
+     */
+    private static int symbol(char c) {
+        char lower = Character.toLowerCase(c);
+        if (lower >= 'a' && lower <= 'z') {
+            return lower - 'a' + 1;
+        }
+        if (lower >= '0' && lower <= '9') {
+            return lower - '0' + 27;
+        }
+        return 0;
+    }
+
+    /**
+     * Node is a node of the trie.
+     */
+    private static final class Node {
+
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private int id = NONE;
+        private BitSet ranks = new BitSet();
+        private int[] ids;
+
+        Node child(char label) {
+            for (int i = 0; i < this.labels.length; i++) {
+                if (this.labels[i] == label) {
+                    return this.children[i];
+                }
+            }
+            return null;
+        }
+
+        Node childOrCreate(char label) {
+            Node child = child(label);
+            if (child == null) {
+                child = new Node();
+                this.labels = Arrays.copyOf(this.labels, this.labels.length + 1);
+                this.children = Arrays.copyOf(this.children, this.children.length + 1);
+                this.labels[this.labels.length - 1] = label;
+                this.children[this.children.length - 1] = child;
+            }
+            return child;
+        }
+
+        void add(int rank) {
+            this.ranks.set(rank);
+        }
+
+        /**
+         * Turns the ranks of the currencies below this node and its children into ids in completion order.
+         * @param rankedIds The ids of the currencies in completion order
+         */
+        void seal(int[] rankedIds) {
+            this.ids = new int[this.ranks.cardinality()];
+            int count = 0;
+            for (int rank = this.ranks.nextSetBit(0); rank >= 0; rank = this.ranks.nextSetBit(rank + 1)) {
+                this.ids[count++] = rankedIds[rank];
+            }
+            this.ranks = null;
+            for (Node child : this.children) {
+                child.seal(rankedIds);
+            }
+        }
+    }
+
+    /**
+     * Scratch holds the arrays a thread counts the scores of a query in.
+     */
+    private static final class Scratch {
+
+        private final int[] scores;
+        private final int[] touched;
+        private final int[] seen = new int[SYMBOLS * SYMBOLS];
+        private final int[] pairs = new int[SYMBOLS * SYMBOLS];
+        private int stamp;
+
+        Scratch(int keys) {
+            this.scores = new int[keys];
+            this.touched = new int[keys];
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CurrencyRegistry class assigns every ISO currency code a small int id once per JVM.
+ * Ids index the primitive arrays of a RateTable, so callers that resolve their currencies up front can look up rates
+ * without hashing any strings. Every currency of ISO 4217 is registered when the class is loaded, from the iso4217.csv
+ * resource. The currencies supported by the API come first in a fixed order and the others follow in the order of
+ * their codes, so their ids are the same in every run; other codes seen for the first time in API data are appended
+ * after them.
+ *
+ * Every currency also has the number of digits of its minor unit from ISO 4217, such as 2 for the cents of USD and 0
+ * for JPY, which is the number of decimal places its amounts are rounded to, and an English name.
+ *
+ * Names are looked up exactly through a HashMap. Lookups ignoring case, completions of a prefix and the closest match
+ * of a misspelled name go through a CurrencyIndex, which is only built the first time it is needed. Codes registered
+ * after that are only found by their code.
+ */
+public final class CurrencyRegistry {
+
+    private static final String[] SUPPORTED_CODES = {
+            "AUD", "BGN", "BRL", "CAD", "CHF", "CNY", "CZK", "DKK", "EUR", "GBP", "HKD", "HRK", "HUF", "IDR", "ILS",
+            "INR", "ISK", "JPY", "KRW", "MXN", "MYR", "NOK", "NZD", "PHP", "PLN", "RON", "RUB", "SEK", "SGD", "THB",
+            "TRY", "USD", "ZAR"
+    };
+
+    private static final String CATALOGUE_RESOURCE = "/iso4217.csv";
+    private static final int DEFAULT_MINOR_DIGITS = 2;
+    private static final String[] NO_NAMES = new String[0];
+
+    private static volatile int[] minorDigits;
+    private static volatile String[] codes;
+    private static volatile String[][] names;
+    private static volatile HashMap<String, Integer> ids;
+    private static final HashMap<String, Integer> nameIds;
+    private static final List<String> supportedNames;
+
+    static {
+        Map<String, String[]> catalogue = readCatalogue();
+        List<String> ordered = new ArrayList<>(Arrays.asList(SUPPORTED_CODES));
+        for (String code : catalogue.keySet()) {
+            if (!ordered.contains(code)) {
+                ordered.add(code);
+            }
+        }
+
+        codes = ordered.toArray(new String[0]);
+        minorDigits = new int[codes.length];
+        names = new String[codes.length][];
+        for (int id = 0; id < codes.length; id++) {
+            String[] entry = catalogue.get(codes[id]);
+            if (entry == null) {
+                minorDigits[id] = findMinorDigits(codes[id]);
+                names[id] = NO_NAMES;
+            }
+            else {
+                minorDigits[id] = entry[1].equals("-") ? DEFAULT_MINOR_DIGITS : Integer.parseInt(entry[1]);
+                names[id] = Arrays.copyOfRange(entry, 2, entry.length);
+            }
+        }
+        ids = createIds(codes);
+        nameIds = createNameIds(names);
+
+        List<String> supported = new ArrayList<>();
+        for (int id = 0; id < SUPPORTED_CODES.length; id++) {
+            supported.add(nameOf(id));
+        }
+        Collections.sort(supported);
+        supportedNames = Collections.unmodifiableList(supported);
+    }
+
+    private CurrencyRegistry() {
+    }
+
+    /**
+     * Reads the ISO 4217 currencies listed in the catalogue resource.
+     * Each line holds a code, the number of minor unit digits or - if it has none, and one or more names.
+     * @return The fields of every line keyed by code, in the order of the resource, or only the supported codes
+     * without names if the resource cannot be read
+     */
+    private static Map<String, String[]> readCatalogue() {
+        Map<String, String[]> catalogue = new LinkedHashMap<>();
+        try (InputStream in = CurrencyRegistry.class.getResourceAsStream(CATALOGUE_RESOURCE)) {
+            if (in == null) {
+                throw new IOException(CATALOGUE_RESOURCE + " is missing");
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length >= 3) {
+                    catalogue.put(fields[0], fields);
+                }
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Currency catalogue could not be read: " + e.getMessage());
+        }
+        return catalogue;
+    }
+
+    /**
+     * Establishes a HashMap of the given codes with their positions as their values
+     * @param codes The registered currency codes in id order
+     * @return HashMap of currency ids
+     */
+    private static HashMap<String, Integer> createIds(String[] codes) {
+        HashMap<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < codes.length; i++) {
+            ids.put(codes[i], i);
+        }
+        return ids;
+    }
+
+    /**
+     * Establishes a HashMap of the names of every currency with the ids of their currencies as their values
+     * @param names The names of every currency in id order
+     * @return HashMap of currency ids
+     */
+    private static HashMap<String, Integer> createNameIds(String[][] names) {
+        HashMap<String, Integer> nameIds = new HashMap<>();
+        for (int id = 0; id < names.length; id++) {
+            for (String name : names[id]) {
+                nameIds.putIfAbsent(name, id);
+            }
+        }
+        return nameIds;
+    }
+
+    /**
+     * Looks up the number of minor unit digits of a currency in ISO 4217.
+     * @param code The ISO code of the currency
+     * @return The number of minor unit digits, or DEFAULT_MINOR_DIGITS for codes that are not ISO 4217 currencies or
+     * have no minor unit
+     */
+    private static int findMinorDigits(String code) {
+        try {
+            int digits = java.util.Currency.getInstance(code).getDefaultFractionDigits();
+            return digits < 0 ? DEFAULT_MINOR_DIGITS : digits;
+        }
+        catch (IllegalArgumentException e) {
+            return DEFAULT_MINOR_DIGITS;
+        }
+    }
+
+    /**
+     * Finds the id of a currency code.
+     * @param code The ISO code of the currency
+     * @return The id of the currency, or -1 if the code has not been registered
+     */
+    public static int idOf(String code) {
+        Integer id = ids.get(code);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Finds the id of a currency code, registering the code if it has not been seen before.
+     * @param code The ISO code of the currency
+     * @return The id of the currency
+     */
+    public static int register(String code) {
+        int id = idOf(code);
+        if (id >= 0) {
+            return id;
+        }
+        synchronized (CurrencyRegistry.class) {
+            id = idOf(code);
+            if (id < 0) {
+                String[] newCodes = Arrays.copyOf(codes, codes.length + 1);
+                id = codes.length;
+                newCodes[id] = code;
+                HashMap<String, Integer> newIds = new HashMap<>(ids);
+                newIds.put(code, id);
+                int[] newMinorDigits = Arrays.copyOf(minorDigits, id + 1);
+                newMinorDigits[id] = findMinorDigits(code);
+                String[][] newNames = Arrays.copyOf(names, id + 1);
+                newNames[id] = NO_NAMES;
+                minorDigits = newMinorDigits;
+                names = newNames;
+                codes = newCodes;
+                ids = newIds;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Finds the currency code of an id.
+     * @param id The id of the currency
+     * @return The ISO code of the currency
+     */
+    public static String codeOf(int id) {
+        return codes[id];
+    }
+
+    /**
+     * Finds the number of digits of the minor unit of a currency, which is the number of decimal places its amounts
+     * are rounded to.
+     * @param id The id of the currency
+     * @return The number of minor unit digits
+     */
+    public static int minorDigitsOf(int id) {
+        return minorDigits[id];
+    }
+
+    /**
+     * Finds the English name of a currency.
+     * @param id The id of the currency
+     * @return The name of the currency, or its code if it is not an ISO 4217 currency
+     */
+    public static String nameOf(int id) {
+        String[] currencyNames = names[id];
+        return currencyNames.length > 0 ? currencyNames[0] : codes[id];
+    }
+
+    /**
+     * Finds the id of a currency from its name or code.
+     * Names and codes written exactly as registered are found in a HashMap, and others through the index ignoring
+     * case and accents.
+     * @param name The name or ISO code of the currency
+     * @return The id of the currency, or -1 if no currency has the name or code
+     */
+    public static int idOfName(String name) {
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            id = ids.get(name);
+        }
+        return id != null ? id : Index.index.find(name);
+    }
+
+    /**
+     * Finds the currencies with a code, a name or a word of a name starting with a prefix, ignoring case, for
+     * autocompletion. The currencies supported by the API come first, each group in the alphabetical order of names.
+     * @param prefix The prefix typed so far
+     * @param ids The array the ids of the currencies are written to, whose length bounds how many are found
+     * @return The number of ids written
+     */
+    public static int complete(CharSequence prefix, int[] ids) {
+        return Index.index.complete(prefix, ids);
+    }
+
+    /**
+     * Finds the currency whose name or code is closest to a possibly misspelled query, such as "Japanse Yen".
+     * @param query The query
+     * @return The id of the closest currency, or -1 if no currency is similar enough
+     */
+    public static int closestMatch(CharSequence query) {
+        return Index.index.closest(query);
+    }
+
+    /**
+     * Finds the currency a user most likely means: the currency with the name or code, otherwise the only currency
+     * completing it, otherwise the closest match.
+     * @param input What the user typed
+     * @return The id of the currency, or -1 if none is likely
+     */
+    public static int findCurrency(String input) {
+        int id = idOfName(input);
+        if (id >= 0) {
+            return id;
+        }
+        int[] completions = new int[2];
+        if (complete(input, completions) == 1) {
+            return completions[0];
+        }
+        return closestMatch(input);
+    }
+
+    /**
+     * @return The names of the currencies supported by the API in alphabetical order
+     */
+    public static List<String> supportedNames() {
+        return supportedNames;
+    }
+
+    /**
+     * @return The number of registered currencies, which is one more than the largest id
+     */
+    public static int size() {
+        return codes.length;
+    }
+
+    /**
+     * Index holds the CurrencyIndex of the currencies registered when it is first used.
+     */
+    private static final class Index {
+
+        private static final CurrencyIndex index = new CurrencyIndex(codes, names, SUPPORTED_CODES.length);
+
+        private Index() {
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package model;
+
+/**
+ * The DefaultCalendar class holds the default BusinessCalendar, which is only configured when it is first used.
+ */
+final class DefaultCalendar {
+
+    static volatile BusinessCalendar calendar = BusinessCalendar.fromSystemProperties();
+
+    private DefaultCalendar() {
+    }
+}
@@ -1,43 +1,465 @@
 package model;
 
-import java.io.BufferedReader;
+import metrics.FetchEvent;
+import metrics.Metrics;
+
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
 
 /**
  * GetJSON connects to an exchange rate API to obtain currency rate data.
  * It is currently defaulted to retrieve rates relative to the U.S. dollar.
+ *
+ * One HttpClient is kept per GetJSON object so connections to the API are reused. Responses are requested gzipped,
+ * and the ETag and Last-Modified headers of the last response are sent back so that an unchanged response costs a
+ * 304 with no body. Failed requests are retried with exponential backoff and jitter, or after the delay of a
+ * Retry-After header when the API sends one, capped at MAX_BACKOFF. The body is parsed as it is received, and the
+ * request timeout bounds the whole exchange, including receiving the body, so a server that stalls partway through a
+ * response cannot hold up a refresh.
+ *
+ * The rates of a past date are requested from the same URL with its last path segment replaced by the ISO date, as
+ * in https://api.exchangeratesapi.io/2020-01-31?base=USD. Those requests are never conditional.
+ *
+ * GetJSON objects created by fromSystemProperties are configured by the following system properties:
+ *  currency.api.url               The URL of the latest rates (default DEFAULT_URL)
+ *  currency.api.connectTimeoutMs  The connect timeout in milliseconds (default 5000)
+ *  currency.api.requestTimeoutMs  The timeout for receiving a whole response in milliseconds (default 10000)
+ *  currency.api.maxAttempts       The number of attempts before giving up (default 4)
  */
-class GetJSON {
+public class GetJSON implements RateSource {
+
+    public static final String DEFAULT_URL = "https://api.exchangeratesapi.io/latest?base=USD";
+
+    private static final Duration INITIAL_BACKOFF = Duration.ofMillis(500);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+
+    private final URI uri;
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final int maxAttempts;
+    private volatile Validators validators;
+
+    /**
+     * Constructor for a GetJSON object.
+     * @param uri The URL of the latest rates
+     * @param connectTimeout The longest time to wait for a connection
+     * @param requestTimeout The longest time to wait for the whole response once connected
+     * @param maxAttempts The number of attempts before giving up
+     */
+    public GetJSON(URI uri, Duration connectTimeout, Duration requestTimeout, int maxAttempts) {
+        this.uri = uri;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.requestTimeout = requestTimeout;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.validators = new Validators(null, null);
+    }
+
+    /**
+     * Creates a GetJSON object configured by the currency.api system properties.
+     * @return The configured GetJSON object
+     */
+    public static GetJSON fromSystemProperties() {
+        return fromSystemProperties(URI.create(System.getProperty("currency.api.url", DEFAULT_URL)));
+    }
+
+    /**
+     * Creates a GetJSON object for the given URL with timeouts and retries configured by the currency.api system
+     * properties.
+     * @param uri The URL of the latest rates
+     * @return The configured GetJSON object
+     */
+    public static GetJSON fromSystemProperties(URI uri) {
+        return fromSystemProperties(uri, Integer.getInteger("currency.api.maxAttempts", 4));
+    }
+
+    /**
+     * Creates a GetJSON object for the given URL with timeouts configured by the currency.api system properties.
+     * @param uri The URL of the latest rates
+     * @param maxAttempts The number of attempts before giving up, which is 1 for callers that retry by themselves
+     * @return The configured GetJSON object
+     */
+    public static GetJSON fromSystemProperties(URI uri, int maxAttempts) {
+        return new GetJSON(uri,
+                Duration.ofMillis(Long.getLong("currency.api.connectTimeoutMs", 5000)),
+                Duration.ofMillis(Long.getLong("currency.api.requestTimeoutMs", 10000)),
+                maxAttempts);
+    }
+
+    @Override
+    public String getName() {
+        return this.uri.getHost();
+    }
+
+    /**
+     * Sends a GET request to the exchange rate API and parses the response as it is received.
+     * @return A StoredCurrency object containing the retrieved data, or null if the API reported that its data has
+     * not changed since the last response
+     * @throws IOException If the API could not be reached or its response could not be parsed
+     */
+    @Override
+    public StoredCurrency fetchRates() throws IOException {
+        return fetch(this.uri, true);
+    }
+
+    /**
+     * Sends a GET request for the rates of a past date to the exchange rate API.
+     * The API answers with the rates of the last business day on or before the date.
+     * @param date The date of the rates
+     * @return A StoredCurrency object containing the retrieved data
+     * @throws IOException If the API could not be reached or its response could not be parsed
+     */
+    public StoredCurrency fetchRates(LocalDate date) throws IOException {
+        return fetch(datedUri(date), false);
+    }
+
+    /**
+     * Finds the URL of the rates of a past date.
+     * @param date The date of the rates
+     * @return The URL of the latest rates with its last path segment replaced by the date
+     */
+    private URI datedUri(LocalDate date) {
+        String path = this.uri.getRawPath() == null ? "" : this.uri.getRawPath();
+        String datedPath = path.substring(0, path.lastIndexOf('/') + 1) + date;
+        if (!datedPath.startsWith("/")) {
+            datedPath = "/" + datedPath;
+        }
+        String query = this.uri.getRawQuery() == null ? "" : "?" + this.uri.getRawQuery();
+        return this.uri.resolve(datedPath + query);
+    }
+
+    /**
+     * Sends a GET request to the exchange rate API, retrying failed attempts.
+     * @param uri The URL to request
+     * @param conditional Whether to send and keep the validators of the latest rates
+     * @return A StoredCurrency object containing the retrieved data, or null if the data has not changed
+     * @throws IOException If the API could not be reached or its response could not be parsed
+     */
+    private StoredCurrency fetch(URI uri, boolean conditional) throws IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt < this.maxAttempts; attempt++) {
+            if (attempt > 0) {
+                sleepBeforeRetry(attempt, failure);
+            }
+            try {
+                return send(uri, conditional);
+            }
+            catch (IOException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Sends a single request to the API.
+     * @param uri The URL to request
+     * @param conditional Whether to send and keep the validators of the latest rates
+     * @return A StoredCurrency object containing the retrieved data, or null if the data has not changed
+     * @throws IOException If the request failed or the response could not be parsed
+     */
+    private StoredCurrency send(URI uri, boolean conditional) throws IOException {
+        Validators current = conditional ? this.validators : new Validators(null, null);
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(this.requestTimeout)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        if (current.etag != null) {
+            request.header("If-None-Match", current.etag);
+        }
+        if (current.lastModified != null) {
+            request.header("If-Modified-Since", current.lastModified);
+        }
+
+        FetchEvent event = new FetchEvent();
+        event.begin();
+        long start = System.nanoTime();
+        CountingInputStream body = null;
+        boolean completed = false;
+        try {
+            HttpResponse<InputStream> response = receive(request.build());
+            event.status = response.statusCode();
+            body = new CountingInputStream(response.body());
+            StoredCurrency currency = readResponse(response, body, conditional,
+                    start + this.requestTimeout.toNanos());
+            completed = true;
+            return currency;
+        }
+        finally {
+            long bytes = body == null ? 0 : body.count;
+            if (completed) {
+                Metrics.recordFetch(System.nanoTime() - start, bytes, event.status == 304);
+            }
+            else {
+                Metrics.recordFetchError();
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.source = getName();
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Sends a request and receives the headers of the response within the request timeout.
+     * @param request The request
+     * @return The response, with its body to be read as it is received
+     * @throws IOException If the request failed or the headers were not received in time
+     * @throws InterruptedIOException If the thread was interrupted while waiting, in which case the request is
+     * cancelled
+     */
+    private HttpResponse<InputStream> receive(HttpRequest request) throws IOException {
+        CompletableFuture<HttpResponse<InputStream>> response = this.client
+                .sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .orTimeout(this.requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        try {
+            return response.get();
+        }
+        catch (InterruptedException e) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request to the API was interrupted");
+        }
+        catch (ExecutionException e) {
+            response.cancel(true);
+            if (e.getCause() instanceof TimeoutException) {
+                throw new HttpTimeoutException("Response of the API was not received within "
+                        + this.requestTimeout.toMillis() + " ms");
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
 
     /**
-     * Sends a GET request to the exchange rate API to obtain currency rate data and store it in a String.
+     * Reads the response to a request and closes its body.
+     * The body is closed when the deadline passes, which ends a read the server has stalled.
+     * @param response The response
+     * @param body The body of the response
+     * @param conditional Whether to keep the validators of the response
+     * @param deadline The System.nanoTime by which the whole body must have been received
+     * @return A StoredCurrency object containing the retrieved data, or null if the data has not changed
+     * @throws IOException If the response reports a failure or could not be parsed
+     * @throws HttpTimeoutException If the body was not received by the deadline
      */
-    static String getJSON() {
-        String json = "";
+    private StoredCurrency readResponse(HttpResponse<InputStream> response, final InputStream body,
+            boolean conditional, long deadline) throws IOException {
+        try (InputStream closing = body) {
+            int status = response.statusCode();
+            if (status == 304) {
+                return null;
+            }
+            if (status == 429 || status >= 500) {
+                throw new RetryableException("API responded with status " + status, retryAfter(response.headers()));
+            }
+            if (status != 200) {
+                throw new UnexpectedResponseException("API responded with status " + status);
+            }
+
+            final AtomicBoolean expired = new AtomicBoolean();
+            CompletableFuture<Void> watchdog = CompletableFuture.runAsync(new Runnable() {
+                @Override
+                public void run() {
+                    expired.set(true);
+                    try {
+                        body.close();
+                    }
+                    catch (IOException e) {
+                        return;
+                    }
+                }
+            }, CompletableFuture.delayedExecutor(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            StoredCurrency currency;
+            try {
+                InputStream in = closing;
+                if (response.headers().firstValue("Content-Encoding").orElse("").equalsIgnoreCase("gzip")) {
+                    in = new GZIPInputStream(closing);
+                }
+                try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                    currency = RatesParser.parse(reader);
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                if (expired.get()) {
+                    throw new HttpTimeoutException("Response of the API was not received within "
+                            + this.requestTimeout.toMillis() + " ms");
+                }
+                throw e;
+            }
+            finally {
+                watchdog.cancel(false);
+            }
+            if (conditional) {
+                this.validators = new Validators(response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null));
+            }
+            return currency;
+        }
+    }
+
+    /**
+     * Checks whether a failed request may succeed if it is sent again.
+     * Callers that retry requests themselves, with a GetJSON object making a single attempt, use it to tell which
+     * failures to retry.
+     * @param failure The failure of the request
+     * @return Whether the request should be retried, which is false if it was interrupted or the API rejected it
+     */
+    public static boolean isRetryable(IOException failure) {
+        return !(failure instanceof InterruptedIOException || failure instanceof UnexpectedResponseException);
+    }
+
+    /**
+     * Waits before a retry for the delay the API asked for in a Retry-After header, or else for a random time of up
+     * to the exponential backoff of the attempt, and never for longer than MAX_BACKOFF.
+     * @param attempt The number of the attempt about to be made, starting at 1 for the first retry
+     * @param failure The failure of the last attempt
+     * @throws InterruptedIOException If the thread was interrupted while waiting
+     */
+    public static void sleepBeforeRetry(int attempt, IOException failure) throws InterruptedIOException {
+        long delay;
+        if (failure instanceof RetryableException && ((RetryableException) failure).retryAfter != null) {
+            delay = Math.min(MAX_BACKOFF.toMillis(), ((RetryableException) failure).retryAfter.toMillis());
+        }
+        else {
+            long backoff = Math.min(MAX_BACKOFF.toMillis(), INITIAL_BACKOFF.toMillis() << Math.min(attempt - 1, 16));
+            delay = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+        }
+        try {
+            Thread.sleep(delay);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Retry of the request to the API was interrupted");
+        }
+    }
+
+    /**
+     * Reads the Retry-After header of a response, given either as a number of seconds or as an HTTP date.
+     * @param headers The headers of the response
+     * @return The delay the API asked for, or null if it sent no valid Retry-After header
+     */
+    private static Duration retryAfter(HttpHeaders headers) {
+        String value = headers.firstValue("Retry-After").orElse(null);
+        if (value == null) {
+            return null;
+        }
         try {
-            URL url = new URL("https://api.exchangeratesapi.io/latest?base=USD");
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-
-            BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            String inputRead;
-            StringBuilder content = new StringBuilder();
-            while ((inputRead = in.readLine()) != null) {
-                content.append(inputRead);
-            }
-            in.close();
-
-            json = content.toString();
-            System.out.println(json);
-        } catch (MalformedURLException e) {
-            System.out.println("Invalid URL");
-        } catch (IOException e) {
-            System.out.println("Connection to API could not be established");
-        }
-        return json;
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        }
+        catch (NumberFormatException e) {
+            try {
+                Duration delay = Duration.between(Instant.now(),
+                        ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                return delay.isNegative() ? Duration.ZERO : delay;
+            }
+            catch (DateTimeParseException unparsable) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * CountingInputStream counts the bytes read from the body of a response as they were received.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) {
+                this.count += read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Validators holds the headers of the last response used to make the next request conditional.
+     */
+    private static final class Validators {
+
+        private final String etag;
+        private final String lastModified;
+
+        Validators(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * RetryableException is thrown for responses that may succeed if the request is sent again.
+     */
+    private static final class RetryableException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Duration retryAfter;
+
+        RetryableException(String message, Duration retryAfter) {
+            super(message);
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    /**
+     * UnexpectedResponseException is thrown for responses that will not succeed if the request is sent again.
+     */
+    private static final class UnexpectedResponseException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        UnexpectedResponseException(String message) {
+            super(message);
+        }
     }
 }
@@ -0,0 +1,149 @@
+package model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+
+/**
+ * The Money class is an amount of a currency held as a whole number of its minor units, such as cents.
+ * The number of minor units of a currency comes from ISO 4217 through CurrencyRegistry, so 12.34 USD is held as 1234
+ * and 1234 JPY as 1234.
+ *
+ * Converting an amount multiplies its minor units by the unscaled cross rate in 128 bits and rounds HALF_UP to the
+ * minor units of the target currency with long arithmetic, so it is exact and allocates nothing but the result.
+ * BigDecimal is only used for rates that do not fit in a long. Amounts whose result does not fit in a long are
+ * rejected with an ArithmeticException.
+ */
+public final class Money {
+
+    private final long minorUnits;
+    private final int currencyId;
+
+    /**
+     * Constructor for a Money object.
+     * @param minorUnits The amount in minor units of the currency
+     * @param currencyId The id of the currency
+     */
+    private Money(long minorUnits, int currencyId) {
+        this.minorUnits = minorUnits;
+        this.currencyId = currencyId;
+    }
+
+    /**
+     * Creates an amount from a count of minor units.
+     * @param minorUnits The amount in minor units of the currency
+     * @param currencyId The id of the currency
+     * @return The amount
+     * @throws IllegalArgumentException If the currency is unknown
+     */
+    public static Money ofMinorUnits(long minorUnits, int currencyId) {
+        checkCurrency(currencyId);
+        return new Money(minorUnits, currencyId);
+    }
+
+    /**
+     * Creates an amount from a decimal, rounding it HALF_UP to the minor units of the currency.
+     * @param amount The amount
+     * @param currencyId The id of the currency
+     * @return The amount
+     * @throws IllegalArgumentException If the currency is unknown
+     * @throws ArithmeticException If the amount does not fit in a long count of minor units
+     */
+    public static Money of(BigDecimal amount, int currencyId) {
+        checkCurrency(currencyId);
+        return new Money(amount.setScale(CurrencyRegistry.minorDigitsOf(currencyId), RoundingMode.HALF_UP)
+                .unscaledValue().longValueExact(), currencyId);
+    }
+
+    /**
+     * Creates an amount from a decimal, rounding it HALF_UP to the minor units of the currency.
+     * @param amount The amount
+     * @param code The ISO code of the currency
+     * @return The amount
+     * @throws IllegalArgumentException If the currency is unknown
+     * @throws ArithmeticException If the amount does not fit in a long count of minor units
+     */
+    public static Money of(BigDecimal amount, String code) {
+        return of(amount, CurrencyRegistry.idOf(code.toUpperCase(Locale.ROOT)));
+    }
+
+    private static void checkCurrency(int currencyId) {
+        if (currencyId < 0 || currencyId >= CurrencyRegistry.size()) {
+            throw new IllegalArgumentException("Unknown currency id " + currencyId);
+        }
+    }
+
+    /**
+     * Converts the amount to another currency.
+     * @param toId The id of the currency to convert to
+     * @param rates The cross rates to convert with
+     * @return The converted amount, rounded HALF_UP to the minor units of the target currency
+     * @throws IllegalArgumentException If the rates have no rate between the currencies
+     * @throws ArithmeticException If the converted amount does not fit in a long count of minor units
+     */
+    public Money convertTo(int toId, CrossRateMatrix rates) {
+        return new Money(convertMinorUnits(this.minorUnits, this.currencyId, toId, rates), toId);
+    }
+
+    /**
+     * Converts a count of minor units of one currency to minor units of another without allocating anything.
+     * @param minorUnits The amount in minor units of the currency converted from
+     * @param fromId The id of the currency to convert from
+     * @param toId The id of the currency to convert to
+     * @param rates The cross rates to convert with
+     * @return The converted amount in minor units of the currency converted to, rounded HALF_UP
+     * @throws IllegalArgumentException If the rates have no rate between the currencies
+     * @throws ArithmeticException If the converted amount does not fit in a long
+     */
+    public static long convertMinorUnits(long minorUnits, int fromId, int toId, CrossRateMatrix rates) {
+        int scale = rates.getCrossRateScale(fromId, toId);
+        if (scale < 0) {
+            BigDecimal rate = rates.getCrossRate(fromId, toId);
+            if (rate == null) {
+                throw new IllegalArgumentException("The selected currencies are not supported");
+            }
+            return BulkConverter.convertExactly(minorUnits, CurrencyRegistry.minorDigitsOf(fromId), rate,
+                    CurrencyRegistry.minorDigitsOf(toId));
+        }
+        return BulkConverter.convertMinorUnits(minorUnits, rates.getUnscaledCrossRate(fromId, toId), scale,
+                CurrencyRegistry.minorDigitsOf(fromId), CurrencyRegistry.minorDigitsOf(toId));
+    }
+
+    public long getMinorUnits() {
+        return this.minorUnits;
+    }
+
+    public int getCurrencyId() {
+        return this.currencyId;
+    }
+
+    public String getCurrencyCode() {
+        return CurrencyRegistry.codeOf(this.currencyId);
+    }
+
+    /**
+     * @return The amount as a decimal with as many decimal places as the currency has minor unit digits
+     */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(this.minorUnits, CurrencyRegistry.minorDigitsOf(this.currencyId));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Money)) {
+            return false;
+        }
+        Money money = (Money) other;
+        return this.minorUnits == money.minorUnits && this.currencyId == money.currencyId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.minorUnits) * 31 + this.currencyId;
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString() + " " + getCurrencyCode();
+    }
+}
@@ -0,0 +1,353 @@
+package model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The MultiRateSource class retrieves rates from several providers concurrently.
+ *
+ * A fetch first queries as many providers as the quorum requires, best ranked first. Whenever no response has
+ * arrived within the hedge delay, a hedged request is sent to the next provider. The hedge delay is the configured
+ * latency percentile of the providers already queried. The fetch succeeds as soon as quorum providers agree on the
+ * date of their data, and the requests still running are then cancelled.
+ *
+ * The latency and errors of every provider are recorded, and providers are ranked by their median latency weighted
+ * by their recent error rate, so slow or failing providers are demoted and queried last.
+ */
+public class MultiRateSource implements RateSource {
+
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 1000;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 20;
+    private static final int MIN_SAMPLES_FOR_HEDGE_DELAY = 8;
+
+    private final List<RateSource> sources;
+    private final Map<RateSource, SourceStats> stats;
+    private final Map<RateSource, StoredCurrency> lastSnapshots;
+    private final int quorum;
+    private final double hedgePercentile;
+    private final ExecutorService executor;
+    private volatile StoredCurrency lastReturned;
+
+    /**
+     * Constructor for a MultiRateSource object.
+     * @param sources The providers to query
+     * @param quorum The number of providers that must agree on the date of their data
+     * @param hedgePercentile The latency percentile, between 0 and 1, after which a hedged request is sent
+     */
+    public MultiRateSource(List<RateSource> sources, int quorum, double hedgePercentile) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one rate source is required");
+        }
+        this.sources = new ArrayList<>(sources);
+        this.stats = new HashMap<>();
+        this.lastSnapshots = new ConcurrentHashMap<>();
+        for (RateSource source : sources) {
+            this.stats.put(source, new SourceStats(source.getName()));
+        }
+        this.quorum = Math.max(1, Math.min(quorum, sources.size()));
+        this.hedgePercentile = hedgePercentile;
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rate-source");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public String getName() {
+        return "multi";
+    }
+
+    /**
+     * Retrieves the latest data from the providers.
+     * A provider reporting that its data has not changed is taken to answer with the data it last returned, as its
+     * validators come from that response even when it lost a hedge or was not part of the quorum. Providers agree
+     * when their data has the same date.
+     * @return The data of the first response agreed on by a quorum of providers, or null if the agreeing providers
+     * include one answering with the data this source returned last time
+     * @throws IOException If too many providers failed for a quorum to agree
+     */
+    @Override
+    public StoredCurrency fetchRates() throws IOException {
+        List<RateSource> ranked = rankSources();
+        CompletionService<Response> completion = new ExecutorCompletionService<>(this.executor);
+        List<Future<Response>> pending = new ArrayList<>();
+        Map<LocalDateTime, List<StoredCurrency>> agreements = new HashMap<>();
+        IOException failure = null;
+        int next = 0;
+        int running = 0;
+
+        try {
+            for (; next < this.quorum; next++) {
+                pending.add(completion.submit(request(ranked.get(next))));
+                running++;
+            }
+
+            while (running > 0) {
+                Future<Response> done;
+                if (next < ranked.size()) {
+                    done = completion.poll(hedgeDelayMillis(ranked.subList(0, next)), TimeUnit.MILLISECONDS);
+                    if (done == null) {
+                        pending.add(completion.submit(request(ranked.get(next++))));
+                        running++;
+                        continue;
+                    }
+                }
+                else {
+                    done = completion.take();
+                }
+                running--;
+
+                Response response = done.get();
+                if (response.failure != null) {
+                    failure = response.failure;
+                    if (next < ranked.size()) {
+                        pending.add(completion.submit(request(ranked.get(next++))));
+                        running++;
+                    }
+                    continue;
+                }
+
+                List<StoredCurrency> agreeing = agreements.computeIfAbsent(response.currency.getDate(),
+                        k -> new ArrayList<>());
+                agreeing.add(response.currency);
+                if (agreeing.size() >= this.quorum) {
+                    for (StoredCurrency currency : agreeing) {
+                        if (currency == this.lastReturned) {
+                            return null;
+                        }
+                    }
+                    this.lastReturned = agreeing.get(0);
+                    return this.lastReturned;
+                }
+                if (running == 0 && next < ranked.size()) {
+                    pending.add(completion.submit(request(ranked.get(next++))));
+                    running++;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Fetching rates was interrupted");
+        }
+        catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        finally {
+            for (Future<Response> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        if (failure != null) {
+            throw new IOException("No quorum of rate sources could be reached", failure);
+        }
+        throw new IOException("Rate sources did not agree on the date of their rates");
+    }
+
+    /**
+     * Creates a task that queries a provider and records its latency and outcome.
+     * @param source The provider to query
+     * @return The task, which never throws and reports a failure in its response instead. A provider reporting that
+     * its data has not changed answers with the data it last returned.
+     */
+    private Callable<Response> request(final RateSource source) {
+        return new Callable<Response>() {
+            @Override
+            public Response call() {
+                SourceStats sourceStats = MultiRateSource.this.stats.get(source);
+                long start = System.nanoTime();
+                try {
+                    StoredCurrency currency = source.fetchRates();
+                    if (currency == null) {
+                        currency = MultiRateSource.this.lastSnapshots.get(source);
+                        if (currency == null) {
+                            throw new IOException(source.getName() + " reported unchanged data it never returned");
+                        }
+                    }
+                    else {
+                        MultiRateSource.this.lastSnapshots.put(source, currency);
+                    }
+                    sourceStats.recordSuccess(System.nanoTime() - start);
+                    return new Response(currency, null);
+                }
+                catch (InterruptedIOException e) {
+                    sourceStats.recordCancellation(System.nanoTime() - start);
+                    return new Response(null, e);
+                }
+                catch (IOException | RuntimeException e) {
+                    sourceStats.recordFailure(System.nanoTime() - start);
+                    return new Response(null, e instanceof IOException ? (IOException) e : new IOException(e));
+                }
+            }
+        };
+    }
+
+    /**
+     * Orders the providers from best to worst ranked.
+     * @return The providers in the order they should be queried
+     */
+    private List<RateSource> rankSources() {
+        final Map<RateSource, Double> scores = new HashMap<>();
+        for (RateSource source : this.sources) {
+            scores.put(source, this.stats.get(source).score());
+        }
+        List<RateSource> ranked = new ArrayList<>(this.sources);
+        ranked.sort(Comparator.comparing(scores::get));
+        return ranked;
+    }
+
+    /**
+     * Finds how long to wait for a response before sending a hedged request.
+     * @param queried The providers queried so far
+     * @return The hedge delay in milliseconds
+     */
+    private long hedgeDelayMillis(List<RateSource> queried) {
+        long delay = 0;
+        for (RateSource source : queried) {
+            long percentile = this.stats.get(source).latencyPercentileMillis(this.hedgePercentile);
+            delay = Math.max(delay, percentile < 0 ? DEFAULT_HEDGE_DELAY_MILLIS : percentile);
+        }
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, delay);
+    }
+
+    /**
+     * @return The latency and error statistics of every provider, in the order the providers were configured
+     */
+    public List<SourceStats> getStats() {
+        List<SourceStats> list = new ArrayList<>();
+        for (RateSource source : this.sources) {
+            list.add(this.stats.get(source));
+        }
+        return list;
+    }
+
+    /**
+     * Response holds the outcome of querying a single provider.
+     */
+    private static final class Response {
+
+        private final StoredCurrency currency;
+        private final IOException failure;
+
+        Response(StoredCurrency currency, IOException failure) {
+            this.currency = currency;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * The SourceStats class records the recent latencies and outcomes of the requests sent to a provider.
+     */
+    public static final class SourceStats {
+
+        private static final int WINDOW = 128;
+
+        private final String name;
+        private final long[] latencies = new long[WINDOW];
+        private final boolean[] failures = new boolean[WINDOW];
+        private int count;
+        private long successes;
+        private long errors;
+
+        SourceStats(String name) {
+            this.name = name;
+        }
+
+        synchronized void recordSuccess(long latencyNanos) {
+            record(latencyNanos, false);
+            this.successes++;
+        }
+
+        synchronized void recordFailure(long latencyNanos) {
+            record(latencyNanos, true);
+            this.errors++;
+        }
+
+        /**
+         * Records a request cancelled because another provider answered first.
+         * The time it ran for is recorded as its latency, which is a lower bound of the real one.
+         * @param latencyNanos The time the request ran for
+         */
+        synchronized void recordCancellation(long latencyNanos) {
+            record(latencyNanos, false);
+        }
+
+        private void record(long latencyNanos, boolean failed) {
+            int slot = this.count % WINDOW;
+            this.latencies[slot] = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+            this.failures[slot] = failed;
+            this.count++;
+        }
+
+        /**
+         * Finds a percentile of the latencies of the recent requests that did not fail.
+         * @param percentile The percentile, between 0 and 1
+         * @return The latency in milliseconds, or -1 if too few requests have succeeded recently
+         */
+        public synchronized long latencyPercentileMillis(double percentile) {
+            return latencyPercentileMillis(percentile, MIN_SAMPLES_FOR_HEDGE_DELAY);
+        }
+
+        private long latencyPercentileMillis(double percentile, int minSamples) {
+            int size = Math.min(this.count, WINDOW);
+            long[] sorted = new long[size];
+            int samples = 0;
+            for (int i = 0; i < size; i++) {
+                if (!this.failures[i]) {
+                    sorted[samples++] = this.latencies[i];
+                }
+            }
+            if (samples < minSamples || samples == 0) {
+                return -1;
+            }
+            Arrays.sort(sorted, 0, samples);
+            int index = (int) Math.ceil(percentile * samples) - 1;
+            return sorted[Math.max(0, Math.min(samples - 1, index))];
+        }
+
+        /**
+         * @return The share of the recent requests that failed
+         */
+        public synchronized double errorRate() {
+            int size = Math.min(this.count, WINDOW);
+            if (size == 0) {
+                return 0;
+            }
+            int failed = 0;
+            for (int i = 0; i < size; i++) {
+                if (this.failures[i]) {
+                    failed++;
+                }
+            }
+            return (double) failed / size;
+        }
+
+        /**
+         * Ranks the provider, with lower scores queried first.
+         * @return The median latency weighted by the recent error rate
+         */
+        synchronized double score() {
+            long median = latencyPercentileMillis(0.5, 1);
+            return (median < 0 ? DEFAULT_HEDGE_DELAY_MILLIS : median) * (1 + 10 * errorRate());
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public synchronized long getSuccesses() {
+            return this.successes;
+        }
+
+        public synchronized long getErrors() {
+            return this.errors;
+        }
+    }
+}
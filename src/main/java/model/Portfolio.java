@@ -0,0 +1,242 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The Portfolio class values positions held in many currencies in a single reporting currency.
+ *
+ * Positions are summed per currency in minor units as they are added and removed, and each sum is converted to the
+ * reporting currency on its own. Revaluing at new rates therefore only converts one sum per currency, whatever the
+ * number of positions, and adding or removing a position only converts the sum of its currency again.
+ *
+ * Each currency's sum is converted with Money and rounded HALF_UP once, so the total may differ from the sum of
+ * positions converted one by one by the rounding of each of them. Currencies the rates have no rate for are left out
+ * of the total until rates for them arrive.
+ */
+public final class Portfolio {
+
+    private final int reportingCurrencyId;
+    private final HashMap<String, Money> positions = new HashMap<>();
+    private long[] holdings = new long[0];
+    private long[] values = new long[0];
+    private int[] counts = new int[0];
+    private boolean[] valued = new boolean[0];
+    private CrossRateMatrix rates;
+    private long total;
+
+    /**
+     * Constructor for a Portfolio object holding no positions.
+     * @param reportingCurrencyId The id of the currency the portfolio is valued in
+     * @throws IllegalArgumentException If the currency is unknown
+     */
+    public Portfolio(int reportingCurrencyId) {
+        Money.ofMinorUnits(0, reportingCurrencyId);
+        this.reportingCurrencyId = reportingCurrencyId;
+    }
+
+    /**
+     * Adds a position, replacing any position with the same id.
+     * The portfolio is left unchanged if the position cannot be added.
+     * @param positionId The id of the position
+     * @param amount The amount held
+     * @throws ArithmeticException If the sum of its currency or its value no longer fits in a long
+     */
+    public synchronized void put(String positionId, Money amount) {
+        int currencyId = amount.getCurrencyId();
+        ensureCapacity(currencyId + 1);
+        Money previous = this.positions.get(positionId);
+        if (previous == null) {
+            update(currencyId, Math.addExact(this.holdings[currencyId], amount.getMinorUnits()),
+                    this.counts[currencyId] + 1, -1, 0, 0);
+        }
+        else if (previous.getCurrencyId() == currencyId) {
+            long holding = Math.subtractExact(this.holdings[currencyId], previous.getMinorUnits());
+            update(currencyId, Math.addExact(holding, amount.getMinorUnits()), this.counts[currencyId], -1, 0, 0);
+        }
+        else {
+            int previousId = previous.getCurrencyId();
+            update(previousId, Math.subtractExact(this.holdings[previousId], previous.getMinorUnits()),
+                    this.counts[previousId] - 1,
+                    currencyId, Math.addExact(this.holdings[currencyId], amount.getMinorUnits()),
+                    this.counts[currencyId] + 1);
+        }
+        this.positions.put(positionId, amount);
+    }
+
+    /**
+     * Removes a position.
+     * The portfolio is left unchanged if the position cannot be removed.
+     * @param positionId The id of the position
+     * @return The amount of the removed position, or null if there was none
+     * @throws ArithmeticException If the sum of its currency or its value no longer fits in a long
+     */
+    public synchronized Money remove(String positionId) {
+        Money previous = this.positions.get(positionId);
+        if (previous != null) {
+            int previousId = previous.getCurrencyId();
+            update(previousId, Math.subtractExact(this.holdings[previousId], previous.getMinorUnits()),
+                    this.counts[previousId] - 1, -1, 0, 0);
+            this.positions.remove(positionId);
+        }
+        return previous;
+    }
+
+    /**
+     * Sets the sums of one or two currencies, converts them at the current rates and updates the total.
+     * Every value and the total are computed before any of them is stored, so nothing is changed if one of them does
+     * not fit in a long.
+     * @param firstId The id of the first currency
+     * @param firstHolding The new sum of the first currency in minor units
+     * @param firstCount The new number of positions in the first currency
+     * @param secondId The id of the second currency, or -1 if only one currency changes
+     * @param secondHolding The new sum of the second currency in minor units
+     * @param secondCount The new number of positions in the second currency
+     * @throws ArithmeticException If a value or the total no longer fits in a long
+     */
+    private void update(int firstId, long firstHolding, int firstCount,
+                        int secondId, long secondHolding, int secondCount) {
+        long total = Math.subtractExact(this.total, this.values[firstId]);
+        boolean firstValued = isValued(this.rates, firstId, firstCount);
+        long firstValue = firstValued ? valueOf(this.rates, firstId, firstHolding) : 0;
+        total = Math.addExact(total, firstValue);
+        boolean secondValued = false;
+        long secondValue = 0;
+        if (secondId >= 0) {
+            total = Math.subtractExact(total, this.values[secondId]);
+            secondValued = isValued(this.rates, secondId, secondCount);
+            secondValue = secondValued ? valueOf(this.rates, secondId, secondHolding) : 0;
+            total = Math.addExact(total, secondValue);
+        }
+
+        this.holdings[firstId] = firstHolding;
+        this.counts[firstId] = firstCount;
+        this.values[firstId] = firstValue;
+        this.valued[firstId] = firstValued;
+        if (secondId >= 0) {
+            this.holdings[secondId] = secondHolding;
+            this.counts[secondId] = secondCount;
+            this.values[secondId] = secondValue;
+            this.valued[secondId] = secondValued;
+        }
+        this.total = total;
+    }
+
+    /**
+     * Values every currency at new rates.
+     * The portfolio keeps its previous rates and values if it cannot be valued at the new ones.
+     * @param rates The cross rates to value with
+     * @throws ArithmeticException If a value or the total no longer fits in a long
+     */
+    public synchronized void revalue(CrossRateMatrix rates) {
+        ensureCapacity(CurrencyRegistry.size());
+        long[] newValues = new long[this.holdings.length];
+        boolean[] newValued = new boolean[this.holdings.length];
+        long newTotal = 0;
+        for (int id = 0; id < this.holdings.length; id++) {
+            if (isValued(rates, id, this.counts[id])) {
+                newValues[id] = valueOf(rates, id, this.holdings[id]);
+                newValued[id] = true;
+                newTotal = Math.addExact(newTotal, newValues[id]);
+            }
+        }
+        this.rates = rates;
+        this.values = newValues;
+        this.valued = newValued;
+        this.total = newTotal;
+    }
+
+    /**
+     * Checks whether the positions of a currency can be valued.
+     * @param rates The cross rates to value with, or null if the portfolio has not been valued
+     * @param currencyId The id of the currency
+     * @param count The number of positions in the currency
+     * @return Whether there are positions in the currency and a rate to convert them with
+     */
+    private boolean isValued(CrossRateMatrix rates, int currencyId, int count) {
+        return rates != null && count > 0 && (currencyId == this.reportingCurrencyId
+                || rates.getCrossRate(currencyId, this.reportingCurrencyId) != null);
+    }
+
+    /**
+     * Converts the sum of one currency to the reporting currency.
+     * @param rates The cross rates to value with
+     * @param currencyId The id of the currency
+     * @param holding The sum in minor units
+     * @return The value in minor units of the reporting currency
+     * @throws ArithmeticException If the value does not fit in a long
+     */
+    private long valueOf(CrossRateMatrix rates, int currencyId, long holding) {
+        return currencyId == this.reportingCurrencyId ? holding
+                : Money.convertMinorUnits(holding, currencyId, this.reportingCurrencyId, rates);
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > this.holdings.length) {
+            this.holdings = Arrays.copyOf(this.holdings, size);
+            this.values = Arrays.copyOf(this.values, size);
+            this.counts = Arrays.copyOf(this.counts, size);
+            this.valued = Arrays.copyOf(this.valued, size);
+        }
+    }
+
+    /**
+     * @return The value of every position whose currency has a rate, in the reporting currency
+     * @throws IllegalStateException If the portfolio has never been valued
+     */
+    public synchronized Money getTotal() {
+        if (this.rates == null) {
+            throw new IllegalStateException("The portfolio has not been valued yet");
+        }
+        return Money.ofMinorUnits(this.total, this.reportingCurrencyId);
+    }
+
+    /**
+     * Finds the value of the positions held in a currency.
+     * @param currencyId The id of the currency
+     * @return The value in the reporting currency, or null if the portfolio has not been valued or the rates have no
+     * rate for the currency
+     */
+    public synchronized Money getValue(int currencyId) {
+        if (this.rates == null || currencyId < 0 || currencyId >= this.valued.length || !this.valued[currencyId]) {
+            return null;
+        }
+        return Money.ofMinorUnits(this.values[currencyId], this.reportingCurrencyId);
+    }
+
+    /**
+     * Finds the sum of the positions held in a currency.
+     * @param currencyId The id of the currency
+     * @return The sum in the currency itself
+     */
+    public synchronized Money getHoldings(int currencyId) {
+        return Money.ofMinorUnits(currencyId < this.holdings.length ? this.holdings[currencyId] : 0, currencyId);
+    }
+
+    /**
+     * @return Whether every currency held has a rate, so the total covers every position
+     */
+    public synchronized boolean isFullyValued() {
+        if (this.rates == null) {
+            return false;
+        }
+        for (int id = 0; id < this.counts.length; id++) {
+            if (this.counts[id] > 0 && !this.valued[id]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized Money getPosition(String positionId) {
+        return this.positions.get(positionId);
+    }
+
+    public synchronized int size() {
+        return this.positions.size();
+    }
+
+    public int getReportingCurrencyId() {
+        return this.reportingCurrencyId;
+    }
+}
@@ -0,0 +1,779 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The RateHistory class is an append-only store of every daily rate snapshot retrieved from the API.
+ * The store is a directory holding a date index and one column file per currency. Each row of the index is the
+ * date of a snapshot, and the n-th entry of every column is the rate of that currency in the n-th snapshot.
+ *
+ * Dates are written as the difference in days from the previous row. Rates are kept as longs at a fixed scale of
+ * RATE_SCALE decimal places and written as the difference from the previous rate of the same currency, so the
+ * small day-to-day moves of a rate take only a few bytes. All numbers are written as variable-length integers, and
+ * a rate entry of 0 marks a currency that had no rate in that snapshot.
+ *
+ * The whole store is decoded into memory when opened, so point-in-time lookups are a binary search over the dates.
+ * The columns are written and synced before the index, so rows left partly written by an interrupted append are
+ * discarded the next time the store is opened.
+ *
+ * Snapshots older than the latest row, such as those of a backfill, are merged by writing the whole store into a
+ * sibling directory and swapping it in. A swap left unfinished by an interruption is completed or discarded the next
+ * time the store is opened.
+ *
+ * Several processes may use the same store. Opening, repairing, appending and merging hold an exclusive lock on a
+ * lock file next to the directory, which the swap of a merge leaves in place, and a store changed by another process
+ * is read again before it is written. A store opened read-only takes a shared lock, never repairs or writes
+ * anything, and reads the store again whenever another process has changed it.
+ */
+public final class RateHistory {
+
+    /**
+     * The number of decimal places rates are stored with.
+     */
+    public static final int RATE_SCALE = 10;
+
+    private static final String INDEX_FILE_NAME = "dates.idx";
+    private static final String COLUMN_FILE_SUFFIX = ".col";
+    private static final String STAGED_SUFFIX = ".new";
+    private static final String REPLACED_SUFFIX = ".old";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final HashMap<Path, ReentrantLock> PROCESS_LOCKS = new HashMap<>();
+    private static final long MISSING = Long.MIN_VALUE;
+
+    private final Path directory;
+    private final boolean readOnly;
+    private int[] days;
+    private int rows;
+    private final HashMap<String, long[]> columns;
+    private List<Object> indexStamp;
+
+    /**
+     * Constructor for a RateHistory object holding no rows until it is loaded.
+     * @param directory The directory holding the store
+     * @param readOnly Whether the store is only read
+     */
+    private RateHistory(Path directory, boolean readOnly) {
+        this.directory = directory;
+        this.readOnly = readOnly;
+        this.days = new int[16];
+        this.columns = new HashMap<>();
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if it does not exist.
+     * @param directory The directory holding the store
+     * @return The opened store
+     * @throws IOException If the store could not be read
+     */
+    public static RateHistory open(Path directory) throws IOException {
+        RateHistory history = new RateHistory(directory, false);
+        StoreLock lock = StoreLock.acquire(directory, false);
+        try {
+            history.load();
+        }
+        finally {
+            lock.close();
+        }
+        return history;
+    }
+
+    /**
+     * Opens the store in the given directory for reading only, for a process that leaves writing it to another.
+     * Nothing is created, repaired or written, and rows appended by other processes are read as they appear.
+     * @param directory The directory holding the store
+     * @return The opened store, which is empty if the directory does not exist
+     * @throws IOException If the store could not be read
+     */
+    public static RateHistory openReadOnly(Path directory) throws IOException {
+        RateHistory history = new RateHistory(directory, true);
+        StoreLock lock = StoreLock.acquire(directory, true);
+        try {
+            history.load();
+        }
+        finally {
+            lock.close();
+        }
+        return history;
+    }
+
+    /**
+     * Decodes the store into memory, replacing what was held, and repairs it unless it is read-only.
+     * The caller must hold the lock of the store.
+     * @throws IOException If the store could not be read or repaired
+     */
+    private void load() throws IOException {
+        if (!this.readOnly) {
+            recoverSwap(this.directory);
+            Files.createDirectories(this.directory);
+        }
+
+        Path indexFile = this.directory.resolve(INDEX_FILE_NAME);
+        List<Object> stamp = stamp(indexFile);
+        int[] days = new int[16];
+        int rows = 0;
+        if (Files.exists(indexFile)) {
+            VarIntReader in = new VarIntReader(Files.readAllBytes(indexFile));
+            int day = 0;
+            while (in.hasNext()) {
+                day += (int) in.next();
+                if (rows == days.length) {
+                    days = Arrays.copyOf(days, rows * 2);
+                }
+                days[rows++] = day;
+            }
+            if (!this.readOnly && in.truncate(indexFile)) {
+                stamp = stamp(indexFile);
+            }
+        }
+
+        HashMap<String, long[]> columns = new HashMap<>();
+        if (Files.isDirectory(this.directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, "*" + COLUMN_FILE_SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    String code = name.substring(0, name.length() - COLUMN_FILE_SUFFIX.length());
+                    columns.put(code, readColumn(file, rows, days.length, !this.readOnly));
+                }
+            }
+        }
+        this.days = days;
+        this.rows = rows;
+        this.columns.clear();
+        this.columns.putAll(columns);
+        this.indexStamp = stamp;
+    }
+
+    /**
+     * Reloads the store after a write failed part-way, which truncates every column back to the rows of the index, so
+     * entries written to some columns before the failure cannot shift the rows written after them.
+     * If the store cannot be reloaded now, it is reloaded before the next write. The caller must hold the lock of the
+     * store.
+     * @param failure The failure of the write, to which a failure to reload is added
+     */
+    private void repairAfterFailedWrite(Exception failure) {
+        this.indexStamp = null;
+        try {
+            load();
+        }
+        catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Decodes the store again if another process has changed its index since it was last loaded or written here, or
+     * a write failed since.
+     * The caller must hold the lock of the store.
+     * @throws IOException If the store could not be read
+     */
+    private void reloadIfChanged() throws IOException {
+        if (this.indexStamp == null || !stamp(this.directory.resolve(INDEX_FILE_NAME)).equals(this.indexStamp)) {
+            load();
+        }
+    }
+
+    /**
+     * Picks up the rows other processes have added to a read-only store, keeping the rows already read if the store
+     * cannot be read.
+     */
+    private void followWriter() {
+        if (!this.readOnly) {
+            return;
+        }
+        try {
+            StoreLock lock = StoreLock.acquire(this.directory, true);
+            try {
+                reloadIfChanged();
+            }
+            finally {
+                lock.close();
+            }
+        }
+        catch (IOException e) {
+            return;
+        }
+    }
+
+    /**
+     * Identifies the state of the index file, which changes with every append, repair and swap.
+     * @param indexFile The index file
+     * @return The file key, size and modification time of the file, or an empty list if it does not exist
+     * @throws IOException If the attributes of the file could not be read
+     */
+    private static List<Object> stamp(Path indexFile) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(indexFile, BasicFileAttributes.class);
+        }
+        catch (NoSuchFileException e) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(attributes.fileKey(), attributes.size(), attributes.lastModifiedTime());
+    }
+
+    /**
+     * @return Whether the store was opened with openReadOnly, so appending or merging into it fails
+     */
+    public boolean isReadOnly() {
+        return this.readOnly;
+    }
+
+    private void checkWritable() {
+        if (this.readOnly) {
+            throw new IllegalStateException("The rate history in " + this.directory + " is open read-only");
+        }
+    }
+
+    /**
+     * Finishes or discards a swap of the store left unfinished by an interruption.
+     * A staged store only exists without the store itself once it has been completely written, so it is moved in;
+     * otherwise it may be incomplete and is deleted, like a replaced store left behind.
+     * @param directory The directory holding the store
+     * @throws IOException If the directories could not be moved or deleted
+     */
+    private static void recoverSwap(Path directory) throws IOException {
+        Path staged = sibling(directory, STAGED_SUFFIX);
+        if (Files.isDirectory(staged) && !Files.exists(directory)) {
+            Files.move(staged, directory, StandardCopyOption.ATOMIC_MOVE);
+        }
+        deleteDirectory(staged);
+        deleteDirectory(sibling(directory, REPLACED_SUFFIX));
+    }
+
+    private static Path sibling(Path directory, String suffix) {
+        return directory.resolveSibling(directory.getFileName() + suffix);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Decodes the first rows of a column file, discarding anything written after them.
+     * A column left shorter than the index by an interrupted append is padded with missing entries.
+     * @param file The column file
+     * @param rows The number of rows in the index
+     * @param capacity The length of the array to decode into
+     * @param repair Whether to truncate and pad the file to the rows of the index
+     * @return The rates of the column, with MISSING for rows without a rate
+     * @throws IOException If the file could not be read or repaired
+     */
+    private static long[] readColumn(Path file, int rows, int capacity, boolean repair) throws IOException {
+        long[] values = new long[capacity];
+        Arrays.fill(values, MISSING);
+
+        VarIntReader in = new VarIntReader(Files.readAllBytes(file));
+        long value = 0;
+        int row = 0;
+        for (; row < rows && in.hasNext(); row++) {
+            long entry = in.next();
+            if (entry != 0) {
+                value += zigZagDecode(entry - 1);
+                values[row] = value;
+            }
+        }
+        if (!repair) {
+            return values;
+        }
+        in.truncate(file);
+
+        if (row < rows) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (; row < rows; row++) {
+                writeVarInt(out, 0);
+            }
+            appendAndSync(file, out);
+        }
+        return values;
+    }
+
+    /**
+     * Appends a snapshot to the store.
+     * Snapshots dated on or before the latest row are ignored, so the same snapshot may be appended repeatedly.
+     * @param currency The snapshot to append
+     * @return Whether the snapshot was appended
+     * @throws IOException If the store could not be written
+     * @throws IllegalStateException If the store is open read-only
+     */
+    public synchronized boolean append(StoredCurrency currency) throws IOException {
+        checkWritable();
+        StoreLock lock = StoreLock.acquire(this.directory, false);
+        try {
+            reloadIfChanged();
+            try {
+                return appendLocked(currency);
+            }
+            catch (IOException | RuntimeException e) {
+                repairAfterFailedWrite(e);
+                throw e;
+            }
+        }
+        finally {
+            lock.close();
+        }
+    }
+
+    private boolean appendLocked(StoredCurrency currency) throws IOException {
+        int day = (int) currency.getDate().toLocalDate().toEpochDay();
+        if (this.rows > 0 && day <= this.days[this.rows - 1]) {
+            return false;
+        }
+        ensureCapacity(this.rows + 1);
+
+        RateTable rates = currency.getRateTable();
+        for (int id = 0; id < rates.size(); id++) {
+            String code = CurrencyRegistry.codeOf(id);
+            if (rates.hasRate(id) && !this.columns.containsKey(code)) {
+                long[] values = new long[this.days.length];
+                Arrays.fill(values, MISSING);
+                this.columns.put(code, values);
+                writeColumnEntries(this.directory, code, values, 0, this.rows);
+            }
+        }
+        for (Map.Entry<String, long[]> column : this.columns.entrySet()) {
+            BigDecimal rate = rates.getRate(column.getKey());
+            column.getValue()[this.rows] = rate == null ? MISSING : toScaledLong(rate);
+            writeColumnEntries(this.directory, column.getKey(), column.getValue(), this.rows, this.rows + 1);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarInt(out, this.rows == 0 ? day : day - this.days[this.rows - 1]);
+        appendAndSync(this.directory.resolve(INDEX_FILE_NAME), out);
+        this.indexStamp = stamp(this.directory.resolve(INDEX_FILE_NAME));
+        this.days[this.rows++] = day;
+        return true;
+    }
+
+    /**
+     * Adds many snapshots to the store at once, in any order and of any dates.
+     * Snapshots dated after the latest row are appended with one write per file. Older snapshots make the whole store
+     * be rewritten once, however many of them there are. Snapshots of dates the store already holds are ignored.
+     * @param snapshots The snapshots to add
+     * @return The number of snapshots added
+     * @throws IOException If the store could not be written
+     * @throws IllegalStateException If the store is open read-only
+     */
+    public synchronized int merge(Collection<StoredCurrency> snapshots) throws IOException {
+        checkWritable();
+        StoreLock lock = StoreLock.acquire(this.directory, false);
+        try {
+            reloadIfChanged();
+            try {
+                return mergeLocked(snapshots);
+            }
+            catch (IOException | RuntimeException e) {
+                repairAfterFailedWrite(e);
+                throw e;
+            }
+        }
+        finally {
+            lock.close();
+        }
+    }
+
+    private int mergeLocked(Collection<StoredCurrency> snapshots) throws IOException {
+        TreeMap<Integer, RateTable> added = new TreeMap<>();
+        for (StoredCurrency snapshot : snapshots) {
+            int day = (int) snapshot.getDate().toLocalDate().toEpochDay();
+            if (snapshot.hasRates() && !contains(day)) {
+                added.put(day, snapshot.getRateTable());
+            }
+        }
+        if (added.isEmpty()) {
+            return 0;
+        }
+        boolean appending = this.rows == 0 || added.firstKey() > this.days[this.rows - 1];
+        int previousRows = this.rows;
+        Set<String> previousCodes = new HashSet<>(this.columns.keySet());
+
+        int total = this.rows + added.size();
+        int[] days = new int[Math.max(total, this.days.length)];
+        HashMap<String, long[]> columns = new HashMap<>();
+        for (String code : this.columns.keySet()) {
+            columns.put(code, newColumn(days.length));
+        }
+        for (RateTable rates : added.values()) {
+            for (int id = 0; id < rates.size(); id++) {
+                if (rates.hasRate(id) && !columns.containsKey(CurrencyRegistry.codeOf(id))) {
+                    columns.put(CurrencyRegistry.codeOf(id), newColumn(days.length));
+                }
+            }
+        }
+
+        Iterator<Map.Entry<Integer, RateTable>> pending = added.entrySet().iterator();
+        Map.Entry<Integer, RateTable> next = pending.next();
+        int existing = 0;
+        for (int row = 0; row < total; row++) {
+            if (next == null || (existing < this.rows && this.days[existing] < next.getKey())) {
+                days[row] = this.days[existing];
+                for (Map.Entry<String, long[]> column : this.columns.entrySet()) {
+                    columns.get(column.getKey())[row] = column.getValue()[existing];
+                }
+                existing++;
+            }
+            else {
+                days[row] = next.getKey();
+                for (Map.Entry<String, long[]> column : columns.entrySet()) {
+                    BigDecimal rate = next.getValue().getRate(column.getKey());
+                    column.getValue()[row] = rate == null ? MISSING : toScaledLong(rate);
+                }
+                next = pending.hasNext() ? pending.next() : null;
+            }
+        }
+
+        if (appending) {
+            for (Map.Entry<String, long[]> column : columns.entrySet()) {
+                int from = previousCodes.contains(column.getKey()) ? previousRows : 0;
+                writeColumnEntries(this.directory, column.getKey(), column.getValue(), from, total);
+            }
+            writeIndexEntries(this.directory, days, previousRows, total);
+        }
+        else {
+            Path staged = sibling(this.directory, STAGED_SUFFIX);
+            deleteDirectory(staged);
+            Files.createDirectories(staged);
+            for (Map.Entry<String, long[]> column : columns.entrySet()) {
+                writeColumnEntries(staged, column.getKey(), column.getValue(), 0, total);
+            }
+            writeIndexEntries(staged, days, 0, total);
+
+            Path replaced = sibling(this.directory, REPLACED_SUFFIX);
+            deleteDirectory(replaced);
+            Files.move(this.directory, replaced, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(staged, this.directory, StandardCopyOption.ATOMIC_MOVE);
+            deleteDirectory(replaced);
+        }
+
+        this.indexStamp = stamp(this.directory.resolve(INDEX_FILE_NAME));
+        this.days = days;
+        this.rows = total;
+        this.columns.clear();
+        this.columns.putAll(columns);
+        return added.size();
+    }
+
+    /**
+     * Checks whether the store holds a snapshot of a date.
+     * @param date The date
+     * @return Whether a row is dated on the date
+     */
+    public synchronized boolean contains(LocalDate date) {
+        followWriter();
+        return contains((int) date.toEpochDay());
+    }
+
+    private boolean contains(int day) {
+        return Arrays.binarySearch(this.days, 0, this.rows, day) >= 0;
+    }
+
+    private static long[] newColumn(int length) {
+        long[] values = new long[length];
+        Arrays.fill(values, MISSING);
+        return values;
+    }
+
+    /**
+     * Finds the rate of a currency in effect on a date, which is its rate in the latest snapshot on or before it.
+     * @param currencyId The id of the currency
+     * @param date The date of the rate
+     * @return The rate of the currency, or null if the store has no rate for it on or before the date
+     */
+    public synchronized BigDecimal getRate(int currencyId, LocalDate date) {
+        followWriter();
+        long[] values = getColumn(currencyId);
+        if (values == null) {
+            return null;
+        }
+        for (int row = floorRow(date); row >= 0; row--) {
+            if (values[row] != MISSING) {
+                return BigDecimal.valueOf(values[row], RATE_SCALE);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds every stored rate of a currency between two dates.
+     * @param currencyId The id of the currency
+     * @param from The first date of the series
+     * @param to The last date of the series
+     * @return The rates of the currency keyed by the date of their snapshot, in date order
+     */
+    public synchronized SortedMap<LocalDate, BigDecimal> getSeries(int currencyId, LocalDate from, LocalDate to) {
+        followWriter();
+        TreeMap<LocalDate, BigDecimal> series = new TreeMap<>();
+        long[] values = getColumn(currencyId);
+        if (values == null) {
+            return series;
+        }
+        int first = floorRow(from.minusDays(1)) + 1;
+        int last = floorRow(to);
+        for (int row = first; row <= last; row++) {
+            if (values[row] != MISSING) {
+                series.put(LocalDate.ofEpochDay(this.days[row]), BigDecimal.valueOf(values[row], RATE_SCALE));
+            }
+        }
+        return series;
+    }
+
+    /**
+     * @return The date of the latest snapshot in the store, or null if it is empty
+     */
+    public synchronized LocalDate getLatestDate() {
+        followWriter();
+        return this.rows == 0 ? null : LocalDate.ofEpochDay(this.days[this.rows - 1]);
+    }
+
+    private long[] getColumn(int currencyId) {
+        if (currencyId < 0 || currencyId >= CurrencyRegistry.size()) {
+            return null;
+        }
+        return this.columns.get(CurrencyRegistry.codeOf(currencyId));
+    }
+
+    /**
+     * Finds the last row dated on or before a date.
+     * @param date The date to search for
+     * @return The index of the row, or -1 if every row is dated after the date
+     */
+    private int floorRow(LocalDate date) {
+        int index = Arrays.binarySearch(this.days, 0, this.rows, (int) date.toEpochDay());
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.days.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, this.days.length * 2);
+        this.days = Arrays.copyOf(this.days, newLength);
+        for (Map.Entry<String, long[]> column : this.columns.entrySet()) {
+            long[] values = Arrays.copyOf(column.getValue(), newLength);
+            Arrays.fill(values, column.getValue().length, newLength, MISSING);
+            column.setValue(values);
+        }
+    }
+
+    /**
+     * Appends the encoded entries of a range of rows to a column file.
+     * @param directory The directory holding the column file
+     * @param code The code of the currency of the column
+     * @param values The rates of the column
+     * @param from The first row to write
+     * @param to The row after the last row to write
+     * @throws IOException If the column file could not be written
+     */
+    private static void writeColumnEntries(Path directory, String code, long[] values, int from, int to)
+            throws IOException {
+        long previous = 0;
+        for (int row = from - 1; row >= 0; row--) {
+            if (values[row] != MISSING) {
+                previous = values[row];
+                break;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int row = from; row < to; row++) {
+            if (values[row] == MISSING) {
+                writeVarInt(out, 0);
+            }
+            else {
+                writeVarInt(out, zigZagEncode(values[row] - previous) + 1);
+                previous = values[row];
+            }
+        }
+        appendAndSync(directory.resolve(code + COLUMN_FILE_SUFFIX), out);
+    }
+
+    /**
+     * Appends the encoded dates of a range of rows to the index file.
+     * @param directory The directory holding the index file
+     * @param days The dates of the rows as epoch days
+     * @param from The first row to write
+     * @param to The row after the last row to write
+     * @throws IOException If the index file could not be written
+     */
+    private static void writeIndexEntries(Path directory, int[] days, int from, int to) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int row = from; row < to; row++) {
+            writeVarInt(out, row == 0 ? days[row] : days[row] - days[row - 1]);
+        }
+        appendAndSync(directory.resolve(INDEX_FILE_NAME), out);
+    }
+
+    /**
+     * Appends bytes to a file and syncs them to the disk, so entries written before the index are durable before it.
+     * @param file The file
+     * @param bytes The bytes to append
+     * @throws IOException If the file could not be written
+     */
+    private static void appendAndSync(Path file, ByteArrayOutputStream bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    private static long toScaledLong(BigDecimal rate) {
+        return rate.setScale(RATE_SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    private static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * VarIntReader decodes the variable-length integers of a file, ignoring a partly written last integer.
+     */
+    private static final class VarIntReader {
+
+        private final byte[] bytes;
+        private int position;
+
+        VarIntReader(byte[] bytes) {
+            this.bytes = bytes;
+            this.position = 0;
+        }
+
+        /**
+         * @return Whether a complete integer follows the current position
+         */
+        boolean hasNext() {
+            for (int i = this.position; i < this.bytes.length; i++) {
+                if ((this.bytes[i] & 0x80) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long next() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = this.bytes[this.position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        /**
+         * Truncates the file the integers were read from to the current position.
+         * @param file The file the integers were read from
+         * @return Whether anything was truncated
+         * @throws IOException If the file could not be truncated
+         */
+        boolean truncate(Path file) throws IOException {
+            if (this.position == this.bytes.length) {
+                return false;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(this.position);
+                channel.force(false);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * StoreLock holds the lock of a store for one operation.
+     * File locks are held by the whole process and cannot be taken twice through different channels, so the threads
+     * of a process first take a lock of their own for the lock file.
+     */
+    private static final class StoreLock implements Closeable {
+
+        private final ReentrantLock processLock;
+        private final FileChannel channel;
+
+        private StoreLock(ReentrantLock processLock, FileChannel channel) {
+            this.processLock = processLock;
+            this.channel = channel;
+        }
+
+        /**
+         * Waits for the lock of a store.
+         * @param directory The directory holding the store
+         * @param shared Whether other processes may hold a shared lock at the same time, for reading
+         * @return The held lock
+         * @throws IOException If the lock file could not be opened or locked
+         */
+        static StoreLock acquire(Path directory, boolean shared) throws IOException {
+            Path lockFile = sibling(directory.toAbsolutePath().normalize(), LOCK_SUFFIX);
+            ReentrantLock processLock;
+            synchronized (PROCESS_LOCKS) {
+                processLock = PROCESS_LOCKS.get(lockFile);
+                if (processLock == null) {
+                    processLock = new ReentrantLock();
+                    PROCESS_LOCKS.put(lockFile, processLock);
+                }
+            }
+            processLock.lock();
+            FileChannel channel = null;
+            try {
+                channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                channel.lock(0, Long.MAX_VALUE, shared);
+                return new StoreLock(processLock, channel);
+            }
+            catch (IOException | RuntimeException e) {
+                if (channel != null) {
+                    channel.close();
+                }
+                processLock.unlock();
+                throw e;
+            }
+        }
+
+        /**
+         * Releases the lock, which closing the channel of the lock file does.
+         * @throws IOException If the lock file could not be closed
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                this.channel.close();
+            }
+            finally {
+                this.processLock.unlock();
+            }
+        }
+    }
+}
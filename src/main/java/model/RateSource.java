@@ -0,0 +1,51 @@
+package model;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A RateSource provides the latest currency rate data from a provider.
+ */
+public interface RateSource {
+
+    /**
+     * @return A name identifying the provider in logs and statistics
+     */
+    String getName();
+
+    /**
+     * Retrieves the latest data from the provider.
+     * @return A StoredCurrency object containing the retrieved data, or null if the provider reported that its data
+     * has not changed since the last time it was retrieved from this source
+     * @throws IOException If the provider could not be reached or its response could not be parsed
+     */
+    StoredCurrency fetchRates() throws IOException;
+
+    /**
+     * Creates the RateSource configured by system properties.
+     * currency.api.urls may list several comma separated URLs, in which case all of them are queried through a
+     * MultiRateSource configured by the currency.api.quorum and currency.api.hedgePercentile properties. Otherwise
+     * the single URL of currency.api.url is used. The other currency.api properties of GetJSON apply to every URL.
+     * @return The configured RateSource
+     */
+    static RateSource fromSystemProperties() {
+        String urls = System.getProperty("currency.api.urls");
+        if (urls == null || urls.trim().isEmpty()) {
+            return GetJSON.fromSystemProperties();
+        }
+
+        List<RateSource> sources = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            if (!url.trim().isEmpty()) {
+                sources.add(GetJSON.fromSystemProperties(URI.create(url.trim())));
+            }
+        }
+        if (sources.size() == 1) {
+            return sources.get(0);
+        }
+        return new MultiRateSource(sources, Integer.getInteger("currency.api.quorum", 1),
+                Double.parseDouble(System.getProperty("currency.api.hedgePercentile", "0.95")));
+    }
+}
@@ -0,0 +1,152 @@
+package model;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The RateTable class is an immutable table of conversion rates indexed by the ids of the CurrencyRegistry.
+ * Every rate is kept both as a BigDecimal for exact conversions and as a double for fast approximate ones.
+ * Looking up a rate by id is a plain array read with no hashing or boxing.
+ */
+public final class RateTable {
+
+    private final BigDecimal[] decimalRates;
+    private final double[] doubleRates;
+
+    /**
+     * Constructor for a RateTable object.
+     * @param decimalRates The rates indexed by currency id, with null for currencies without a rate
+     */
+    private RateTable(BigDecimal[] decimalRates) {
+        this.decimalRates = decimalRates;
+        this.doubleRates = new double[decimalRates.length];
+        for (int i = 0; i < decimalRates.length; i++) {
+            this.doubleRates[i] = decimalRates[i] == null ? Double.NaN : decimalRates[i].doubleValue();
+        }
+    }
+
+    /**
+     * Creates a RateTable from rates keyed by currency code, registering any codes not seen before.
+     * @param rates The rates keyed by ISO currency code
+     * @return The RateTable holding the given rates
+     */
+    public static RateTable of(Map<String, BigDecimal> rates) {
+        Builder builder = new Builder();
+        for (Map.Entry<String, BigDecimal> entry : rates.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Finds the rate of a currency.
+     * @param id The id of the currency
+     * @return The rate of the currency, or null if the table has no rate for it
+     */
+    public BigDecimal getRate(int id) {
+        return id >= 0 && id < this.decimalRates.length ? this.decimalRates[id] : null;
+    }
+
+    /**
+     * Finds the rate of a currency as a double.
+     * @param id The id of the currency
+     * @return The rate of the currency, or NaN if the table has no rate for it
+     */
+    public double getRateAsDouble(int id) {
+        return id >= 0 && id < this.doubleRates.length ? this.doubleRates[id] : Double.NaN;
+    }
+
+    /**
+     * Finds the rate of a currency by its code.
+     * @param code The ISO code of the currency
+     * @return The rate of the currency, or null if the table has no rate for it
+     */
+    public BigDecimal getRate(String code) {
+        return getRate(CurrencyRegistry.idOf(code));
+    }
+
+    public boolean hasRate(int id) {
+        return getRate(id) != null;
+    }
+
+    /**
+     * @return The number of currencies the table has a rate for
+     */
+    public int rateCount() {
+        int count = 0;
+        for (BigDecimal rate : this.decimalRates) {
+            if (rate != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copies the rates of the table into a HashMap.
+     * @return HashMap of ISO currency codes to rates
+     */
+    public HashMap<String, BigDecimal> toMap() {
+        HashMap<String, BigDecimal> rates = new HashMap<>();
+        for (int id = 0; id < this.decimalRates.length; id++) {
+            if (this.decimalRates[id] != null) {
+                rates.put(CurrencyRegistry.codeOf(id), this.decimalRates[id]);
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * @return The number of slots in the table, which is one more than the largest id the table has a rate for
+     */
+    public int size() {
+        return this.decimalRates.length;
+    }
+
+    /**
+     * The Builder class collects rates one currency at a time, registering codes not seen before.
+     */
+    public static final class Builder {
+
+        private BigDecimal[] decimalRates = new BigDecimal[CurrencyRegistry.size()];
+
+        /**
+         * Sets the rate of a currency.
+         * @param code The ISO code of the currency
+         * @param rate The rate of the currency
+         * @return This builder
+         */
+        public Builder put(String code, BigDecimal rate) {
+            int id = CurrencyRegistry.register(code);
+            if (id >= this.decimalRates.length) {
+                this.decimalRates = Arrays.copyOf(this.decimalRates, CurrencyRegistry.size());
+            }
+            this.decimalRates[id] = rate;
+            return this;
+        }
+
+        /**
+         * @param code The ISO code of a currency
+         * @return Whether a rate has been set for the currency
+         */
+        public boolean contains(String code) {
+            int id = CurrencyRegistry.idOf(code);
+            return id >= 0 && id < this.decimalRates.length && this.decimalRates[id] != null;
+        }
+
+        /**
+         * Creates the table, with no slots after the largest id it has a rate for, so tables of the currencies
+         * supported by the API stay as small as those currencies whatever else is registered.
+         * @return The RateTable holding the rates set so far
+         */
+        public RateTable build() {
+            int length = this.decimalRates.length;
+            while (length > 0 && this.decimalRates[length - 1] == null) {
+                length--;
+            }
+            return new RateTable(Arrays.copyOf(this.decimalRates, length));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package model;
+
+import com.google.gson.stream.JsonReader;
+import metrics.Metrics;
+import metrics.ParseEvent;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * The RatesParser class reads the JSON returned by the exchange rate API into a StoredCurrency object.
+ * The response is read as a stream of tokens, and every rate goes straight into a RateTable, so neither the whole
+ * response string nor any intermediate objects are built.
+ */
+final class RatesParser {
+
+    private RatesParser() {
+    }
+
+    /**
+     * Parses a response of the API.
+     * @param in The reader of the response
+     * @return A StoredCurrency object containing the data of the response
+     * @throws IOException If the response could not be read or is not a valid response of the API
+     */
+    static StoredCurrency parse(Reader in) throws IOException {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        long start = System.nanoTime();
+        StoredCurrency currency = read(in);
+        Metrics.recordParse(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.rates = currency.getRateTable().rateCount();
+            event.commit();
+        }
+        return currency;
+    }
+
+    /**
+     * Reads the tokens of a response.
+     * @param in The reader of the response
+     * @return A StoredCurrency object containing the data of the response
+     * @throws IOException If the response could not be read or is not a valid response of the API
+     */
+    private static StoredCurrency read(Reader in) throws IOException {
+        String base = null;
+        LocalDate date = null;
+        RateTable.Builder rates = null;
+
+        JsonReader reader = new JsonReader(in);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("base")) {
+                    base = reader.nextString();
+                }
+                else if (name.equals("date")) {
+                    date = LocalDate.parse(reader.nextString());
+                }
+                else if (name.equals("rates")) {
+                    rates = new RateTable.Builder();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String code = reader.nextName();
+                        rates.put(code, new BigDecimal(reader.nextString()));
+                    }
+                    reader.endObject();
+                }
+                else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        catch (IllegalStateException | NumberFormatException | DateTimeParseException e) {
+            throw new IOException("Unexpected rates JSON: " + e.getMessage(), e);
+        }
+
+        if (base == null || date == null || rates == null) {
+            throw new IOException("Rates JSON is missing its base, date or rates");
+        }
+        if (!rates.contains(base)) {
+            rates.put(base, BigDecimal.ONE);
+        }
+        return new StoredCurrency(base, date, rates.build());
+    }
+}
@@ -0,0 +1,301 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The SharedRateRegion class shares the latest StoredCurrency between the JVMs of a host through a memory-mapped file.
+ * One process holds the write lock of the file and writes every new snapshot into it, and any number of processes map
+ * the same file and see each new snapshot as soon as it is written, without reading the file again. A reader takes
+ * over as the writer with tryPromote once the lock is released, for example because the writer exited.
+ *
+ * The region is guarded by a sequence lock. The writer makes the sequence odd, writes the snapshot in the SnapshotFile
+ * format and makes the sequence even again. Readers never lock: they copy the snapshot between two reads of the
+ * sequence and retry if it was odd or changed in between, so they never decode a half-written snapshot. The decoded
+ * snapshot is kept until the sequence changes, so reading an unchanged region costs a single volatile read.
+ *
+ * Layout, in native byte order:
+ *  magic (int), version (int), sequence (long), snapshot length (int), padding up to PAYLOAD_OFFSET, then the snapshot.
+ */
+public final class SharedRateRegion implements Closeable {
+
+    public static final int DEFAULT_SIZE = 1 << 16;
+
+    private static final int MAGIC = 0x43435252;
+    private static final int VERSION = 1;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int LENGTH_OFFSET = 16;
+    private static final int PAYLOAD_OFFSET = 64;
+    private static final int MAX_READ_ATTEMPTS = 1 << 20;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int size;
+    private volatile FileLock writeLock;
+    private volatile MappedByteBuffer buffer;
+    private volatile Decoded decoded;
+
+    /**
+     * Constructor for a SharedRateRegion object.
+     * @param file The mapped file
+     * @param channel The open channel of the file
+     * @param size The size of the region in bytes
+     * @param writeLock The write lock of the file, or null for a reader
+     * @param buffer The mapped region, or null for a reader whose writer has not sized the file yet
+     */
+    private SharedRateRegion(Path file, FileChannel channel, int size, FileLock writeLock, MappedByteBuffer buffer) {
+        this.file = file;
+        this.channel = channel;
+        this.size = size;
+        this.writeLock = writeLock;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Opens the region of a file as its writer if no other process writes it, and as a reader otherwise.
+     * @param file The file to map, which is created if it does not exist
+     * @param size The size of the region in bytes, which bounds the size of a snapshot
+     * @return The opened region
+     * @throws IOException If the file could not be opened or mapped
+     */
+    public static SharedRateRegion open(Path file, int size) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            FileLock lock = tryLock(channel);
+            if (lock == null) {
+                return new SharedRateRegion(file, channel, size, null, mapIfSized(channel));
+            }
+            try {
+                return new SharedRateRegion(file, channel, size, lock, mapForWriting(channel, size));
+            }
+            catch (IOException | RuntimeException e) {
+                lock.release();
+                throw e;
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the write lock of a file if no other process holds it.
+     * @param channel The open channel of the file
+     * @return The write lock, or null if it is held elsewhere
+     * @throws IOException If the file could not be locked
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        }
+        catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sizes and maps the region of the writer, initializing it if it was never written and completing a write left
+     * half done by a writer that exited in the middle of it.
+     * @param channel The open channel of the file, whose write lock must be held
+     * @param size The size of the region in bytes
+     * @return The mapped region
+     * @throws IOException If the file could not be sized or mapped
+     */
+    private static MappedByteBuffer mapForWriting(FileChannel channel, int size) throws IOException {
+        if (channel.size() < size) {
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if ((int) INTS.getVolatile(buffer, MAGIC_OFFSET) != MAGIC
+                || (int) INTS.getVolatile(buffer, VERSION_OFFSET) != VERSION) {
+            LONGS.setVolatile(buffer, SEQUENCE_OFFSET, 0L);
+            INTS.setVolatile(buffer, LENGTH_OFFSET, 0);
+            INTS.setVolatile(buffer, VERSION_OFFSET, VERSION);
+            INTS.setVolatile(buffer, MAGIC_OFFSET, MAGIC);
+        }
+        else if (((long) LONGS.getVolatile(buffer, SEQUENCE_OFFSET) & 1) != 0) {
+            LONGS.setVolatile(buffer, SEQUENCE_OFFSET, (long) LONGS.getVolatile(buffer, SEQUENCE_OFFSET) + 1);
+        }
+        return buffer;
+    }
+
+    /**
+     * Makes this process the writer of the region if no other process holds the write lock any more.
+     * The region is mapped again for writing, and the snapshot last written stays readable until it is replaced.
+     * @return Whether this process is now the writer
+     * @throws IOException If the file could not be locked or mapped
+     */
+    public synchronized boolean tryPromote() throws IOException {
+        if (this.writeLock != null) {
+            return true;
+        }
+        FileLock lock = tryLock(this.channel);
+        if (lock == null) {
+            return false;
+        }
+        try {
+            this.buffer = mapForWriting(this.channel, this.size);
+        }
+        catch (IOException | RuntimeException e) {
+            lock.release();
+            throw e;
+        }
+        this.writeLock = lock;
+        return true;
+    }
+
+    /**
+     * Maps the region of a reader once the writer has sized and initialized the file.
+     * @param channel The open channel of the file
+     * @return The mapped region, or null if the file is not initialized yet
+     * @throws IOException If the file could not be mapped
+     */
+    private static MappedByteBuffer mapIfSized(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < PAYLOAD_OFFSET) {
+            return null;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if ((int) INTS.getVolatile(buffer, MAGIC_OFFSET) != MAGIC) {
+            return null;
+        }
+        return buffer;
+    }
+
+    /**
+     * @return Whether this process holds the write lock of the region
+     */
+    public boolean isWriter() {
+        return this.writeLock != null;
+    }
+
+    /**
+     * Writes a snapshot into the region, making it visible to every process that maps it.
+     * @param currency The currency data to write, which must hold rates
+     * @throws IOException If the snapshot does not fit in the region
+     * @throws IllegalStateException If this process is not the writer of the region
+     */
+    public synchronized void write(StoredCurrency currency) throws IOException {
+        if (this.writeLock == null) {
+            throw new IllegalStateException("The rate region of " + this.file + " is written by another process");
+        }
+        ByteBuffer snapshot = SnapshotFile.encode(currency);
+        MappedByteBuffer region = this.buffer;
+        if (snapshot.remaining() > region.capacity() - PAYLOAD_OFFSET) {
+            throw new IOException("Snapshot of " + snapshot.remaining() + " bytes does not fit in the rate region");
+        }
+
+        long sequence = (long) LONGS.getVolatile(region, SEQUENCE_OFFSET);
+        LONGS.setOpaque(region, SEQUENCE_OFFSET, sequence + 1);
+        VarHandle.storeStoreFence();
+        INTS.set(region, LENGTH_OFFSET, snapshot.remaining());
+        ByteBuffer payload = region.duplicate();
+        payload.position(PAYLOAD_OFFSET);
+        payload.put(snapshot);
+        LONGS.setRelease(region, SEQUENCE_OFFSET, sequence + 2);
+    }
+
+    /**
+     * Reads the latest snapshot written into the region.
+     * @return The latest snapshot, the same object for as long as the region is unchanged, or null if no snapshot
+     * has been written yet
+     * @throws IOException If the region holds a corrupted snapshot or keeps changing while it is read
+     */
+    public StoredCurrency read() throws IOException {
+        MappedByteBuffer region = this.buffer;
+        if (region == null) {
+            region = mapIfSized(this.channel);
+            if (region == null) {
+                return null;
+            }
+            this.buffer = region;
+        }
+
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            long sequence = (long) LONGS.getAcquire(region, SEQUENCE_OFFSET);
+            Decoded current = this.decoded;
+            if (current != null && current.sequence == sequence) {
+                return current.snapshot;
+            }
+            if (sequence == 0) {
+                return null;
+            }
+            if ((sequence & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            int length = (int) INTS.get(region, LENGTH_OFFSET);
+            byte[] copy = null;
+            if (length > 0 && length <= region.capacity() - PAYLOAD_OFFSET) {
+                copy = new byte[length];
+                ByteBuffer payload = region.duplicate();
+                payload.position(PAYLOAD_OFFSET);
+                payload.get(copy);
+            }
+            VarHandle.loadLoadFence();
+            if ((long) LONGS.getAcquire(region, SEQUENCE_OFFSET) != sequence || copy == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            StoredCurrency snapshot = SnapshotFile.decode(ByteBuffer.wrap(copy));
+            this.decoded = new Decoded(sequence, snapshot);
+            return snapshot;
+        }
+        throw new IOException("The rate region of " + this.file + " kept changing while it was read");
+    }
+
+    /**
+     * @return The number of snapshots written into the region since it was created, which changes whenever a new
+     * snapshot becomes visible
+     */
+    public long getVersion() {
+        MappedByteBuffer region = this.buffer;
+        return region == null ? 0 : (long) LONGS.getAcquire(region, SEQUENCE_OFFSET) / 2;
+    }
+
+    /**
+     * Releases the write lock, if held, and closes the file. Mapped memory is released once it is garbage collected.
+     * @throws IOException If the file could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        FileLock lock = this.writeLock;
+        if (lock != null && lock.isValid()) {
+            lock.release();
+        }
+        this.channel.close();
+    }
+
+    /**
+     * Decoded is a snapshot read from the region together with the sequence it was read at.
+     */
+    private static final class Decoded {
+
+        private final long sequence;
+        private final StoredCurrency snapshot;
+
+        Decoded(long sequence, StoredCurrency snapshot) {
+            this.sequence = sequence;
+            this.snapshot = snapshot;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package model;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.CRC32;
+
+/**
+ * The SnapshotFile class reads and writes StoredCurrency objects in a compact, versioned binary format.
+ * The file is memory-mapped when read and decoded field by field, so no object deserialization takes place.
+ * Every file ends with a CRC32 of its contents so that a truncated or corrupted file is rejected rather than loaded.
+ *
+ * Layout, big-endian:
+ *  magic (int), version (short), stored date (long, epoch seconds), update date (long, epoch seconds), base (code),
+ *  rate count (int), then per rate: code, scale (int), unscaled value length (byte), unscaled value (bytes),
+ *  and finally the CRC32 of everything before it (int).
+ *  Codes are written as a length byte followed by ASCII characters.
+ */
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x43435253;
+    private static final short VERSION = 1;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Encodes the currency data in the snapshot format.
+     * @param currency The currency data to encode, which must hold rates
+     * @return A buffer positioned at the start of the encoded snapshot
+     */
+    public static ByteBuffer encode(StoredCurrency currency) {
+        RateTable rates = currency.getRateTable();
+
+        int size = 4 + 2 + 8 + 8 + 1 + currency.getBase().length() + 4 + 4;
+        for (int id = 0; id < rates.size(); id++) {
+            BigDecimal rate = rates.getRate(id);
+            if (rate != null) {
+                size += 1 + CurrencyRegistry.codeOf(id).length() + 4 + 1 + rate.unscaledValue().bitLength() / 8 + 1;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putLong(currency.getDate().toEpochSecond(ZoneOffset.UTC));
+        buffer.putLong(currency.getUpdateDateTime().toEpochSecond(ZoneOffset.UTC));
+        putCode(buffer, currency.getBase());
+        buffer.putInt(rates.rateCount());
+        for (int id = 0; id < rates.size(); id++) {
+            BigDecimal rate = rates.getRate(id);
+            if (rate != null) {
+                putCode(buffer, CurrencyRegistry.codeOf(id));
+                byte[] unscaled = rate.unscaledValue().toByteArray();
+                buffer.putInt(rate.scale());
+                buffer.put((byte) unscaled.length);
+                buffer.put(unscaled);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decodes currency data from the snapshot format.
+     * @param buffer The buffer holding the encoded snapshot between its position and limit
+     * @return The decoded currency data
+     * @throws IOException If the data is not a snapshot, is of an unsupported version or fails its checksum
+     */
+    public static StoredCurrency decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 4 + 2 + 4) {
+            throw new IOException("Snapshot is truncated");
+        }
+        ByteBuffer data = buffer.slice();
+        int contentLength = data.remaining() - 4;
+
+        ByteBuffer content = data.duplicate();
+        content.limit(contentLength);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if ((int) crc.getValue() != data.getInt(contentLength)) {
+            throw new IOException("Snapshot checksum does not match");
+        }
+
+        data.limit(contentLength);
+        try {
+            if (data.getInt() != MAGIC) {
+                throw new IOException("File is not a currency snapshot");
+            }
+            short version = data.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            LocalDateTime storedDate = LocalDateTime.ofEpochSecond(data.getLong(), 0, ZoneOffset.UTC);
+            LocalDateTime updateDateTime = LocalDateTime.ofEpochSecond(data.getLong(), 0, ZoneOffset.UTC);
+            String base = getCode(data);
+
+            int count = data.getInt();
+            RateTable.Builder rates = new RateTable.Builder();
+            for (int i = 0; i < count; i++) {
+                String code = getCode(data);
+                int scale = data.getInt();
+                byte[] unscaled = new byte[data.get()];
+                data.get(unscaled);
+                rates.put(code, new BigDecimal(new BigInteger(unscaled), scale));
+            }
+            return new StoredCurrency(base, storedDate, rates.build(), updateDateTime);
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Snapshot is truncated", e);
+        }
+    }
+
+    /**
+     * Reads currency data from a snapshot file by memory-mapping it.
+     * @param file The snapshot file
+     * @return The currency data stored in the file
+     * @throws IOException If the file could not be read or is not a valid snapshot
+     */
+    public static StoredCurrency read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(buffer);
+        }
+    }
+
+    /**
+     * Writes currency data to a snapshot file.
+     * The data is written to a temporary file next to the target which is then renamed over it, so readers see
+     * either the old or the new snapshot and never a partially written one.
+     * @param currency The currency data to write, which must hold rates
+     * @param file The snapshot file
+     * @throws IOException If the file could not be written
+     */
+    public static void write(StoredCurrency currency, Path file) throws IOException {
+        ByteBuffer buffer = encode(currency);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void putCode(ByteBuffer buffer, String code) {
+        byte[] bytes = code.getBytes(StandardCharsets.US_ASCII);
+        buffer.put((byte) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getCode(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.get()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
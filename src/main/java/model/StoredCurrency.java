@@ -1,32 +1,40 @@
 package model;
 
-import com.google.gson.Gson;
-
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoField;
+import java.time.LocalTime;
 import java.util.HashMap;
 
 /**
  * The StoredCurrency class contains the data taken from the API.
- * More specifically, this class copies the data from the Currency object created by GSON.
  * StoredCurrency stores the date of data retrieval as a LocalDateTime rather than a String so the next time to request
  * data from the API is calculated more easily.
+ * Rates are held in a RateTable, and the rates between every pair of currencies are derived from it once into a
+ * CrossRateMatrix. The storedRates map is only used as the Java serialization form of earlier versions.
+ * StoredCurrency objects are immutable: new rates from the API produce a new object, so one object can be shared by
+ * any number of threads.
  */
 public class StoredCurrency implements Serializable {
 
-    private String storedBase;
-    private LocalDateTime storedDate;
+    private static final long serialVersionUID = -6067599532773830100L;
+    private static final LocalTime UPDATE_TIME = LocalTime.of(10, 0);
+
+    private final String storedBase;
+    private final LocalDateTime storedDate;
     private HashMap<String, BigDecimal> storedRates;
+    private transient RateTable rateTable;
+    private transient CrossRateMatrix crossRates;
 
-    private LocalDateTime updateDateTime;
-    private boolean justUpdated;
+    private final LocalDateTime updateDateTime;
 
     /**
-     * Constructor for a StoredCurrency object.
+     * Constructor for a StoredCurrency object holding no data, used before the API has been contacted.
      */
     public StoredCurrency() {
         this.storedBase = null;
@@ -34,68 +42,135 @@ public class StoredCurrency implements Serializable {
         this.storedRates = null;
 
         this.updateDateTime = null;
-        this.justUpdated = false;
     }
 
     /**
-     * Updates the currency used by the converter.
-     * It currently updates in 2 situations:
+     * Constructor for a StoredCurrency object holding previously retrieved data.
+     * @param storedBase The currency the rates are relative to
+     * @param storedDate The date of currency data retrieval
+     * @param rateTable The rates required to convert to other currencies
+     * @param updateDateTime The time at which the API is next expected to have new rates
+     */
+    StoredCurrency(String storedBase, LocalDateTime storedDate, RateTable rateTable, LocalDateTime updateDateTime) {
+        this.storedBase = storedBase;
+        this.storedDate = storedDate;
+        this.rateTable = rateTable;
+        this.crossRates = new CrossRateMatrix(rateTable);
+
+        this.updateDateTime = updateDateTime;
+    }
+
+    /**
+     * Constructor for a StoredCurrency object holding the data of a single day of the API.
+     * The next time to request data is 10:00 on the following business day of the default BusinessCalendar.
+     * @param storedBase The currency the rates are relative to
+     * @param date The date of the rates
+     * @param rateTable The rates required to convert to other currencies
+     */
+    StoredCurrency(String storedBase, LocalDate date, RateTable rateTable) {
+        this(storedBase, date.atStartOfDay(), rateTable, nextUpdateDateTime(date, BusinessCalendar.getDefault()));
+    }
+
+    /**
+     * Calculates when the API is next expected to have new rates.
+     * @param storedDate The date of the current rates
+     * @param calendar The days on which the API publishes rates
+     * @return 10:00 on the business day after the date
+     */
+    private static LocalDateTime nextUpdateDateTime(LocalDate storedDate, BusinessCalendar calendar) {
+        return calendar.nextBusinessDay(storedDate).atTime(UPDATE_TIME);
+    }
+
+    /**
+     * Checks whether newer data is expected from the API.
+     * That is the case in 2 situations:
      *  1. When the API has updated the currency exchange rates (10:00 EST every working day)
-     *  2. When there is no serialized file due to either running the program for the first time or the serialized file
+     *  2. When there is no stored data due to either running the program for the first time or the snapshot file
      *  being deleted.
+     * @param now The current time
+     * @return Whether the data should be retrieved again
      */
-    public void update() {
-        if (this.storedBase == null || this.storedDate == null || this.storedRates == null ||
-                LocalDateTime.now().isAfter(this.updateDateTime)) {
-            String json = GetJSON.getJSON();
-            this.storeCurrency(json);
-            this.justUpdated = true;
-        }
+    public boolean isStale(LocalDateTime now) {
+        return !hasRates() || now.isAfter(this.updateDateTime);
     }
 
     /**
-     * Stores the data from the API.
-     * Converts the date field of the Currency object from a String to a LocalDateTime object.
-     * @param json JSON string returned from the GET request sent to retrieve currency exchange rates
+     * Creates a StoredCurrency object from a JSON string in the format returned by the API, without connecting to it.
+     * @param json JSON string in the format returned from the GET request sent to retrieve currency exchange rates
+     * @return A StoredCurrency object containing the data stored in the JSON string
+     * @throws IllegalArgumentException If the string is not a valid response of the API
      */
-    private void storeCurrency(String json) {
-        Currency currency = createCurrency(json);
-        this.storedBase = currency.getBase();
-
-        DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        this.storedDate = LocalDate.parse(currency.getDate(), dateTimeFormatter).atStartOfDay();
-        if (this.storedDate.get(ChronoField.DAY_OF_WEEK) == 5) {
-            this.updateDateTime = this.storedDate.plusDays(3).plusHours(10);
+    public static StoredCurrency fromJSON(String json) {
+        try {
+            return RatesParser.parse(new StringReader(json));
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Invalid rates JSON: " + e.getMessage(), e);
         }
-        else if (this.storedDate.get(ChronoField.DAY_OF_WEEK) == 6) {
-            this.updateDateTime = this.storedDate.plusDays(2).plusHours(10);
+    }
+
+    /**
+     * Rebuilds the RateTable after the object is read from a serialized file of an earlier version.
+     * @param in The stream the object is read from
+     * @throws IOException If the object could not be read
+     * @throws ClassNotFoundException If a class of the serialized fields could not be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (this.storedRates != null) {
+            this.rateTable = RateTable.of(this.storedRates);
+            this.crossRates = new CrossRateMatrix(this.rateTable);
         }
-        else {
-            this.updateDateTime = this.storedDate.plusDays(1).plusHours(10);
+    }
+
+    /**
+     * Fills in the serialization form of the rates before the object is serialized.
+     * @param out The stream the object is written to
+     * @throws IOException If the object could not be written
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (this.storedRates == null && this.rateTable != null) {
+            this.storedRates = this.rateTable.toMap();
         }
+        out.defaultWriteObject();
+    }
 
-        this.storedRates = currency.getRates();
+    public String getBase() {
+        return this.storedBase;
+    }
+
+    public LocalDateTime getDate() {
+        return this.storedDate;
+    }
+
+    public LocalDateTime getUpdateDateTime() {
+        return this.updateDateTime;
     }
 
     /**
-     * Converts JSON returned from the API to a Currency POJO
-     * @param json The JSON string retrieved from the currency exchange rate API
-     * @return A currency object containing the data stored in the JSON string
+     * @return Whether the object holds rates, which is false until the API has been contacted for the first time
      */
-    private static Currency createCurrency(String json) {
-        Gson gson = new Gson();
-        return gson.fromJson(json, Currency.class);
+    public boolean hasRates() {
+        return this.rateTable != null;
     }
 
     public BigDecimal getRate(String selectedCurrency) {
-        return this.storedRates.get(selectedCurrency);
+        return this.rateTable.getRate(selectedCurrency);
+    }
+
+    public BigDecimal getRate(int currencyId) {
+        return this.rateTable.getRate(currencyId);
+    }
+
+    public BigDecimal getCrossRate(int fromId, int toId) {
+        return this.crossRates.getCrossRate(fromId, toId);
     }
 
-    public boolean getJustUpdated() {
-        return this.justUpdated;
+    public CrossRateMatrix getCrossRateMatrix() {
+        return this.crossRates;
     }
 
-    public void setJustUpdated(boolean justUpdated) {
-        this.justUpdated = justUpdated;
+    public RateTable getRateTable() {
+        return this.rateTable;
     }
 }
@@ -1,6 +1,7 @@
 package view;
 
 import controller.ConverterController;
+import model.CurrencyRegistry;
 
 import java.util.List;
 import java.util.Scanner;
@@ -29,25 +30,43 @@ public class ConverterCLI {
     }
 
     /**
-     * Prints the directions to enter the number corresponding to the currency to convert to
+     * Reads the currency to convert to, given as its number in the list, its name or code, the start of its name or a
+     * misspelling of it, until the input corresponds to a listed currency
      * @param names Sorted list of currency names
      * @return The index of the currency to convert to
      */
     public int getNewCurrencyIndex(List<String> names) {
-        String input;
-        int i;
-        do {
-            input = this.scanner.nextLine().trim();
-            i = Integer.parseInt(input);
-
-            if (i > names.size()) {
-                System.out.println("The number inputted does not correspond to a currency.");
-                System.out.println();
-                System.out.println("Select a currency to convert to: ");
-                ConverterController.printCurrencyNames(names);
-                System.out.print("> ");
+        while (true) {
+            String input = this.scanner.nextLine().trim();
+            int index = findCurrencyIndex(input, names);
+            if (index >= 0) {
+                if (!input.equals(Integer.toString(index + 1)) && !input.equals(names.get(index))) {
+                    System.out.println(names.get(index));
+                }
+                return index;
             }
-        } while(i > names.size());
-        return i - 1;
+            System.out.println("The input does not correspond to a currency.");
+            System.out.println();
+            System.out.println("Select a currency to convert to: ");
+            ConverterController.printCurrencyNames(names);
+            System.out.print("> ");
+        }
+    }
+
+    /**
+     * Finds the currency a line of input refers to
+     * @param input The input
+     * @param names Sorted list of currency names
+     * @return The index of the currency in the list, or -1 if the input does not correspond to a listed currency
+     */
+    private static int findCurrencyIndex(String input, List<String> names) {
+        try {
+            int number = Integer.parseInt(input);
+            return number >= 1 && number <= names.size() ? number - 1 : -1;
+        }
+        catch (NumberFormatException e) {
+            int id = CurrencyRegistry.findCurrency(input);
+            return id < 0 ? -1 : names.indexOf(CurrencyRegistry.nameOf(id));
+        }
     }
 }
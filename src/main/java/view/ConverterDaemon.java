@@ -0,0 +1,196 @@
+package view;
+
+import controller.ConverterController;
+import model.CurrencyRegistry;
+import model.StoredCurrency;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The ConverterDaemon class keeps a controller and its rate snapshot loaded and converts amounts for clients
+ * connecting over a Unix domain socket, so scripts calling the converter repeatedly do not pay for starting a JVM and
+ * loading rates on every call.
+ *
+ * The protocol is line based. A client sends lines of the form CONVERT from to amount, where the currencies are
+ * given by their ISO codes, and gets back a line of the form OK result date FRESH|STALE, or ERR message if the
+ * amount could not be converted. A connection may carry any number of requests.
+ *
+ * The socket is created at the path given by the currency.daemon.socket system property, or by default at
+ * currency-converter.sock in $XDG_RUNTIME_DIR, or at daemon.sock in the .currency-converter directory of the home
+ * directory when it is not set. A missing parent directory is created so that only the user can enter it.
+ */
+public class ConverterDaemon {
+
+    private final ConverterController controller;
+    private final Path socketPath;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor for a ConverterDaemon object.
+     * A socket file left behind by a daemon that is no longer running is replaced, and a missing parent directory is
+     * created with 0700 permissions.
+     * @param controller The controller whose rate snapshot is shared by every client
+     * @param socketPath The path of the socket to listen on
+     * @throws IOException If the socket could not be bound, for example because another daemon is listening on it
+     */
+    public ConverterDaemon(ConverterController controller, Path socketPath) throws IOException {
+        this.controller = controller;
+        this.socketPath = socketPath;
+        if (Files.exists(socketPath)) {
+            if (DaemonClient.isListening(socketPath)) {
+                throw new IOException("A daemon is already listening on " + socketPath);
+            }
+            Files.delete(socketPath);
+        }
+        createPrivateDirectory(socketPath.toAbsolutePath().getParent());
+        this.serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        this.serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+        this.executor = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Creates a directory that only the user may enter, unless it already exists.
+     * @param directory The directory
+     * @throws IOException If the directory could not be created
+     */
+    private static void createPrivateDirectory(Path directory) throws IOException {
+        if (directory == null || Files.isDirectory(directory)) {
+            return;
+        }
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        }
+        else {
+            Files.createDirectories(directory);
+        }
+    }
+
+    /**
+     * Accepts clients until the daemon is stopped.
+     */
+    public void serve() {
+        try {
+            while (true) {
+                final SocketChannel client = this.serverChannel.accept();
+                this.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(client);
+                    }
+                });
+            }
+        }
+        catch (ClosedChannelException e) {
+            // The daemon was stopped
+        }
+        catch (IOException e) {
+            System.out.println("Daemon stopped accepting clients: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops accepting clients and removes the socket file.
+     */
+    public void stop() {
+        try {
+            this.serverChannel.close();
+            Files.deleteIfExists(this.socketPath);
+        }
+        catch (IOException e) {
+            System.out.println("Daemon socket could not be removed: " + e.getMessage());
+        }
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Answers the requests of a client until it disconnects.
+     * @param client The channel of the client
+     */
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                     StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                     StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                out.write(answer(line));
+                out.write('\n');
+                out.flush();
+            }
+        }
+        catch (IOException e) {
+            // The client disconnected
+        }
+    }
+
+    /**
+     * Answers a single request.
+     * @param request The line sent by the client
+     * @return The line to send back
+     */
+    private String answer(String request) {
+        String[] parts = request.trim().split("\\s+");
+        if (parts.length != 4 || !parts[0].equalsIgnoreCase("CONVERT")) {
+            return "ERR usage: CONVERT from to amount";
+        }
+        try {
+            StoredCurrency snapshot = this.controller.getSnapshot();
+            int toId = CurrencyRegistry.idOf(parts[2].toUpperCase(Locale.ROOT));
+            BigDecimal rate = snapshot.getCrossRate(CurrencyRegistry.idOf(parts[1].toUpperCase(Locale.ROOT)), toId);
+            if (rate == null) {
+                return "ERR Conversion from " + parts[1] + " to " + parts[2] + " is not supported";
+            }
+            BigDecimal result = this.controller.convert(new BigDecimal(parts[3]), rate,
+                    CurrencyRegistry.minorDigitsOf(toId));
+            return "OK " + result.toPlainString() + " " + snapshot.getDate().toLocalDate() +
+                    (snapshot.isStale(LocalDateTime.now()) ? " STALE" : " FRESH");
+        }
+        catch (NumberFormatException e) {
+            return "ERR " + parts[3] + " is not a valid amount";
+        }
+        catch (IllegalArgumentException | IllegalStateException e) {
+            return "ERR " + e.getMessage();
+        }
+    }
+
+    /**
+     * Starts a daemon on the default socket path and serves clients until the JVM exits.
+     * @param controller The controller to convert with
+     */
+    public static void run(ConverterController controller) {
+        Path socketPath = DaemonClient.getDefaultSocketPath();
+        try {
+            final ConverterDaemon daemon = new ConverterDaemon(controller, socketPath);
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    daemon.stop();
+                }
+            }));
+            System.out.println("Listening on " + socketPath);
+            daemon.serve();
+        }
+        catch (IOException e) {
+            System.out.println("Daemon could not be started: " + e.getMessage());
+        }
+    }
+}
@@ -1,155 +1,416 @@
 package view;
 
 import controller.ConverterController;
+import controller.RateEvent;
+import controller.RateEventPublisher;
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
-import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
+import javafx.util.Callback;
+import javafx.util.Duration;
+import model.CurrencyRegistry;
+import model.StoredCurrency;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
 
+/**
+ * The ConverterGUI class shows the amount entered by the user converted into every supported currency.
+ *
+ * The controller is created by a background task while the window shows a loading state, so a slow first fetch of
+ * the rates never keeps the window from appearing. Every edit of the amount restarts a short pause, and the amount
+ * is only converted once the user stops typing. Conversions run on a background thread and only the results of the
+ * latest one are shown. The table is converted again whenever the controller publishes new rates.
+ *
+ * Typing the name or code of a currency, or the start of either, selects it as the currency to convert from. Typing
+ * after a pause starts a new name.
+ */
 public class ConverterGUI extends Application {
 
-    private ConverterController controller = new ConverterController();
-
-    private TextField amount = new TextField();
-    private ObservableList<String> currencies =
-            FXCollections.observableArrayList(
-                    "Australian Dollar",
-                    "Bulgarian Lev",
-                    "Brazilian Real",
-                    "British Pound",
-                    "Canadian Dollar",
-                    "Chinese Yuan",
-                    "Croatian Kuna",
-                    "Czech Koruna",
-                    "Danish Krone",
-                    "Euro",
-                    "Hong Kong Dollar",
-                    "Hungarian Forint",
-                    "Icelandic Krona",
-                    "Indian Rupee",
-                    "Indonesian Rupiah",
-                    "Isreali New Shekel",
-                    "Japanese Yen",
-                    "Malaysian Ringgit",
-                    "Mexican Peso",
-                    "Norwegian Kroner",
-                    "New Zealand Dollar",
-                    "Philippine Peso",
-                    "Polish Zloty",
-                    "Romanian New Lei",
-                    "Russian Rouble",
-                    "Singapore Dollar",
-                    "South African Rand",
-                    "South Korean Won",
-                    "Swedish Krona",
-                    "Swiss Franc",
-                    "Thai Baht",
-                    "Turkish New Lira",
-                    "United States Dollar"
-            );
-    private final ComboBox<String> currencyOptions = new ComboBox<>(currencies);
-    private Text newAmount = new Text("New amount: ");
-    private Text errorMessage = new Text();
+    private static final Duration DEBOUNCE_DELAY = Duration.millis(150);
+    private static final String DEFAULT_BASE_CURRENCY = "United States Dollar";
+    private static final long TYPE_AHEAD_RESET_NANOS = 1_000_000_000L;
+    private static final int MAX_COMPLETIONS = 16;
+
+    private ConverterController controller;
+
+    private final TextField amount = new TextField();
+    private final ComboBox<String> baseCurrencyOptions = new ComboBox<>();
+    private final TableView<ConversionRow> conversions = new TableView<>();
+    private final ProgressIndicator loadingIndicator = new ProgressIndicator();
+    private final Text status = new Text("Loading currency rates...");
+    private final Text errorMessage = new Text();
+    private final PauseTransition debounce = new PauseTransition(DEBOUNCE_DELAY);
+    private final ExecutorService conversionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "gui-conversion");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private long latestConversion;
+    private final StringBuilder typedCurrency = new StringBuilder();
+    private final int[] completions = new int[MAX_COMPLETIONS];
+    private long lastTyped;
 
     /**
-     * Sets up the components of the GUI
+     * Sets up the components of the GUI and starts loading the controller in the background
      * @param primaryStage The GUI to display to the user.
      */
     @Override
     public void start(Stage primaryStage) {
         GridPane root = new GridPane();
-        root.setAlignment(Pos.CENTER);
+        root.setAlignment(Pos.TOP_CENTER);
         root.setHgap(10);
         root.setVgap(10);
         root.setPadding(new Insets(25, 25, 25, 25));
 
-        Label baseCurrencyLabel = new Label("Converting from: United States Dollar");
+        Label baseCurrencyLabel = new Label("Converting from: ");
         root.add(baseCurrencyLabel, 0, 0);
+        root.add(this.baseCurrencyOptions, 1, 0);
 
         Label convertLabel = new Label("Amount to convert: ");
         root.add(convertLabel, 0, 1);
+        root.add(this.amount, 1, 1);
 
+        this.loadingIndicator.setPrefSize(16, 16);
+        HBox statusBox = new HBox(8, this.loadingIndicator, this.status);
+        statusBox.setAlignment(Pos.CENTER_LEFT);
+        root.add(statusBox, 0, 2, 2, 1);
+
+        this.errorMessage.setFill(Color.RED);
+        this.errorMessage.setWrappingWidth(400);
+        root.add(this.errorMessage, 0, 3, 2, 1);
+
+        this.conversions.getColumns().add(createColumn("Currency", 220, new Callback<ConversionRow, String>() {
+            @Override
+            public String call(ConversionRow row) {
+                return row.getName();
+            }
+        }));
+        this.conversions.getColumns().add(createColumn("Code", 60, new Callback<ConversionRow, String>() {
+            @Override
+            public String call(ConversionRow row) {
+                return row.getCode();
+            }
+        }));
+        TableColumn<ConversionRow, String> amountColumn = new TableColumn<>("Amount");
+        amountColumn.setPrefWidth(160);
+        amountColumn.setCellValueFactory(
+                new Callback<TableColumn.CellDataFeatures<ConversionRow, String>, ObservableValue<String>>() {
+                    @Override
+                    public ObservableValue<String> call(TableColumn.CellDataFeatures<ConversionRow, String> cell) {
+                        return cell.getValue().amountProperty();
+                    }
+                });
+        this.conversions.getColumns().add(amountColumn);
+        this.conversions.setPlaceholder(new Label("No rates loaded"));
+        GridPane.setVgrow(this.conversions, Priority.ALWAYS);
+        root.add(this.conversions, 0, 4, 2, 1);
+
+        this.debounce.setOnFinished(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                convertAll();
+            }
+        });
+        this.amount.textProperty().addListener(new ChangeListener<String>() {
+            @Override
+            public void changed(ObservableValue<? extends String> value, String oldText, String newText) {
+                ConverterGUI.this.debounce.playFromStart();
+            }
+        });
         this.amount.setOnKeyPressed(new EventHandler<KeyEvent>() {
             @Override
             public void handle(KeyEvent event) {
                 if (event.getCode() == KeyCode.ENTER) {
-                    attemptConversion();
+                    ConverterGUI.this.debounce.stop();
+                    convertAll();
                 }
             }
         });
-        root.add(this.amount, 1, 1);
-
-        Label currencyLabel = new Label("Currency to convert to: ");
-        root.add(currencyLabel, 0, 2);
-
-        this.currencyOptions.setValue(this.currencies.get(0));
-        root.add(this.currencyOptions, 1, 2);
-
-        Button convertButton = new Button();
-        convertButton.setText("Convert");
-        convertButton.setOnAction(new EventHandler<ActionEvent>() {
+        this.baseCurrencyOptions.setOnAction(new EventHandler<ActionEvent>() {
             @Override
             public void handle(ActionEvent event) {
-                attemptConversion();
+                convertAll();
             }
         });
-        root.add(convertButton, 0, 3);
-
-        root.add(this.newAmount, 1, 3);
-
-        this.errorMessage.setFill(Color.RED);
-        this.errorMessage.setWrappingWidth(200);
-        root.add(this.errorMessage, 1, 4);
+        this.baseCurrencyOptions.addEventHandler(KeyEvent.KEY_TYPED, new EventHandler<KeyEvent>() {
+            @Override
+            public void handle(KeyEvent event) {
+                if (selectTypedCurrency(event.getCharacter())) {
+                    event.consume();
+                }
+            }
+        });
+        this.amount.setDisable(true);
+        this.baseCurrencyOptions.setDisable(true);
 
         primaryStage.setTitle("Currency Converter");
-        primaryStage.setScene(new Scene(root, 550, 500));
+        primaryStage.setScene(new Scene(root, 550, 600));
         primaryStage.show();
-    }
 
-    private void attemptConversion() {
-        try {
-            BigDecimal amountToConvert = getAmount();
+        loadController();
+    }
 
-            String selectedCurrency = getSelectedCurrency();
-            BigDecimal rate = controller.getCurrencyRate(selectedCurrency);
+    /**
+     * Selects the base currency whose name or code starts with what the user has typed, or failing that the currency
+     * closest to it.
+     * @param typed The character just typed
+     * @return Whether the character was taken as part of a currency name
+     */
+    private boolean selectTypedCurrency(String typed) {
+        if (typed.isEmpty() || Character.isISOControl(typed.charAt(0))) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (now - this.lastTyped > TYPE_AHEAD_RESET_NANOS) {
+            this.typedCurrency.setLength(0);
+        }
+        this.lastTyped = now;
+        this.typedCurrency.append(typed);
 
-            BigDecimal newAmount = controller.convert(amountToConvert, rate);
-            setNewAmount(newAmount);
-            setErrorMessage("");
+        List<String> items = this.baseCurrencyOptions.getItems();
+        int count = CurrencyRegistry.complete(this.typedCurrency, this.completions);
+        for (int i = 0; i < count; i++) {
+            String name = CurrencyRegistry.nameOf(this.completions[i]);
+            if (items.contains(name)) {
+                this.baseCurrencyOptions.setValue(name);
+                return true;
+            }
         }
-        catch (NumberFormatException e) {
-            setErrorMessage("The inputted value is not able to be converted");
+        int closest = CurrencyRegistry.closestMatch(this.typedCurrency);
+        if (closest >= 0 && items.contains(CurrencyRegistry.nameOf(closest))) {
+            this.baseCurrencyOptions.setValue(CurrencyRegistry.nameOf(closest));
         }
+        return true;
     }
 
-    private BigDecimal getAmount() {
-        String amountInput = this.amount.getText();
-        return new BigDecimal(amountInput);
+    /**
+     * Stops the background threads when the window is closed.
+     */
+    @Override
+    public void stop() {
+        this.conversionExecutor.shutdownNow();
+        if (this.controller != null) {
+            this.controller.close();
+        }
     }
 
-    private String getSelectedCurrency() {
-        return currencyOptions.getValue();
+    private static TableColumn<ConversionRow, String> createColumn(String title, double width,
+                                                                   final Callback<ConversionRow, String> value) {
+        TableColumn<ConversionRow, String> column = new TableColumn<>(title);
+        column.setPrefWidth(width);
+        column.setCellValueFactory(
+                new Callback<TableColumn.CellDataFeatures<ConversionRow, String>, ObservableValue<String>>() {
+                    @Override
+                    public ObservableValue<String> call(TableColumn.CellDataFeatures<ConversionRow, String> cell) {
+                        return new ReadOnlyStringWrapper(value.call(cell.getValue()));
+                    }
+                });
+        return column;
     }
 
-    private void setNewAmount(BigDecimal newAmount) {
-        String newText = "New amount: " + newAmount.toString();
-        this.newAmount.setText(newText);
+    /**
+     * Creates the controller on a background thread, waiting for the first rates if none are stored, and fills in
+     * the GUI once it is ready.
+     */
+    private void loadController() {
+        final Task<ConverterController> load = new Task<ConverterController>() {
+            @Override
+            protected ConverterController call() {
+                ConverterController controller = new ConverterController();
+                try {
+                    controller.getSnapshot();
+                }
+                catch (IllegalStateException e) {
+                    // The table is filled in once the refresher publishes the first rates
+                }
+                return controller;
+            }
+        };
+        load.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
+            @Override
+            public void handle(WorkerStateEvent event) {
+                controllerLoaded(load.getValue());
+            }
+        });
+        load.setOnFailed(new EventHandler<WorkerStateEvent>() {
+            @Override
+            public void handle(WorkerStateEvent event) {
+                ConverterGUI.this.loadingIndicator.setVisible(false);
+                ConverterGUI.this.status.setText("");
+                setErrorMessage("The converter could not be started: " + load.getException().getMessage());
+            }
+        });
+
+        Thread thread = new Thread(load, "gui-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Fills in the GUI once the controller has been created.
+     * @param loaded The controller
+     */
+    private void controllerLoaded(ConverterController loaded) {
+        this.controller = loaded;
+        this.loadingIndicator.setVisible(false);
+
+        ObservableList<ConversionRow> rows = FXCollections.observableArrayList();
+        List<String> names = this.controller.getCurrencyNames();
+        for (String name : names) {
+            rows.add(new ConversionRow(name, CurrencyRegistry.codeOf(this.controller.getCurrencyId(name))));
+        }
+        this.conversions.setItems(rows);
+        this.baseCurrencyOptions.setItems(FXCollections.observableArrayList(names));
+        this.baseCurrencyOptions.setValue(names.contains(DEFAULT_BASE_CURRENCY) ? DEFAULT_BASE_CURRENCY : names.get(0));
+        this.amount.setDisable(false);
+        this.baseCurrencyOptions.setDisable(false);
+        this.amount.requestFocus();
+
+        this.controller.getRateEvents().subscribe(new Flow.Subscriber<RateEvent>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(RateEvent event) {
+                if (event.getType() == RateEvent.Type.SNAPSHOT) {
+                    Platform.runLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            convertAll();
+                        }
+                    });
+                }
+                this.subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                System.out.println("Rate events failed: " + error.getMessage());
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        }, 2, RateEventPublisher.OverflowPolicy.CONFLATE, RateEventPublisher.DEFAULT_BATCH_SIZE);
+        convertAll();
+    }
+
+    /**
+     * Converts the amount into every currency on a background thread and shows the results if no newer conversion
+     * has been started in the meantime.
+     */
+    private void convertAll() {
+        if (this.controller == null) {
+            return;
+        }
+        StoredCurrency snapshot = this.controller.getLatestSnapshot();
+        if (!snapshot.hasRates()) {
+            this.status.setText("Waiting for currency rates...");
+            return;
+        }
+        this.status.setText("Rates from " + snapshot.getDate().toLocalDate() +
+                (this.controller.isStale() ? " (newer rates could not be retrieved yet)" : ""));
+
+        final String amountInput = this.amount.getText().trim();
+        final String baseCurrency = this.baseCurrencyOptions.getValue();
+        final List<ConversionRow> rows = new ArrayList<>(this.conversions.getItems());
+        final long conversion = ++this.latestConversion;
+        if (amountInput.isEmpty()) {
+            showResults(null);
+            setErrorMessage("");
+            return;
+        }
+
+        final Task<List<String>> task = new Task<List<String>>() {
+            @Override
+            protected List<String> call() {
+                BigDecimal amountToConvert = new BigDecimal(amountInput);
+                List<String> results = new ArrayList<>(rows.size());
+                for (ConversionRow row : rows) {
+                    try {
+                        results.add(ConverterGUI.this.controller.convert(baseCurrency, row.getName(), amountToConvert)
+                                .toPlainString());
+                    }
+                    catch (IllegalArgumentException e) {
+                        results.add("");
+                    }
+                }
+                return results;
+            }
+        };
+        task.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
+            @Override
+            public void handle(WorkerStateEvent event) {
+                if (conversion == ConverterGUI.this.latestConversion) {
+                    showResults(task.getValue());
+                    setErrorMessage("");
+                }
+            }
+        });
+        task.setOnFailed(new EventHandler<WorkerStateEvent>() {
+            @Override
+            public void handle(WorkerStateEvent event) {
+                if (conversion == ConverterGUI.this.latestConversion) {
+                    showResults(null);
+                    setErrorMessage(task.getException() instanceof NumberFormatException ?
+                            "The inputted value is not able to be converted" : task.getException().getMessage());
+                }
+            }
+        });
+        this.conversionExecutor.execute(task);
+    }
+
+    /**
+     * Shows the converted amounts in the table.
+     * @param results The converted amounts in the order of the rows, or null to clear them
+     */
+    private void showResults(List<String> results) {
+        List<ConversionRow> rows = this.conversions.getItems();
+        for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).amountProperty().set(results == null ? "" : results.get(i));
+        }
     }
 
     private void setErrorMessage(String message) {
@@ -159,4 +420,31 @@ public class ConverterGUI extends Application {
     public static void openGUI() {
         launch();
     }
+
+    /**
+     * ConversionRow is a row of the table, holding a currency and the amount converted into it.
+     */
+    public static final class ConversionRow {
+
+        private final String name;
+        private final String code;
+        private final StringProperty amount = new SimpleStringProperty("");
+
+        ConversionRow(String name, String code) {
+            this.name = name;
+            this.code = code;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getCode() {
+            return this.code;
+        }
+
+        public StringProperty amountProperty() {
+            return this.amount;
+        }
+    }
 }
@@ -0,0 +1,348 @@
+package view;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import controller.ConverterController;
+import metrics.Metrics;
+import model.CurrencyRegistry;
+import model.StoredCurrency;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The ConverterServer class exposes conversions over an HTTP endpoint on the loopback interface that speaks JSON.
+ *
+ * GET /convert?from=USD&amp;to=EUR&amp;amount=10 converts a single amount. POST /convert converts the amount of a
+ * JSON object of the form {"from": "USD", "to": "EUR", "amount": "10"}, or of every object in a JSON array of them.
+ * Currencies are given by their ISO codes. Every amount of a request is converted with the same rate snapshot.
+ * Malformed requests are answered with 400, and requests made while no rates are available with 503.
+ * GET /metrics returns the text dump of the converter's metrics.
+ *
+ * Each connection is handled on a virtual thread when the JVM supports them and on a pooled thread otherwise.
+ * Response buffers are returned to a pool after use so steady traffic does not allocate new ones.
+ */
+public class ConverterServer {
+
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final int MAX_POOLED_BUFFER_SIZE = 1 << 20;
+
+    private final ConverterController controller;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentLinkedQueue<ResponseBuffer> buffers;
+
+    /**
+     * Constructor for a ConverterServer object.
+     * @param controller The controller whose rate snapshot is shared by every request
+     * @param port The port to listen on, on the loopback interface only
+     * @throws IOException If the port could not be bound
+     */
+    public ConverterServer(ConverterController controller, int port) throws IOException {
+        this.controller = controller;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = createExecutor();
+        this.buffers = new ConcurrentLinkedQueue<>();
+
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/convert", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleConvert(exchange);
+            }
+        });
+        this.server.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleMetrics(exchange);
+            }
+        });
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread, falling back to a cached thread pool on JVMs
+     * without virtual threads.
+     * @return The executor for handling connections
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdown();
+    }
+
+    /**
+     * Handles a request to the conversion endpoint.
+     * @param exchange The request and its response
+     * @throws IOException If the response could not be sent
+     */
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        ResponseBuffer buffer = acquireBuffer();
+        try {
+            int status;
+            StoredCurrency snapshot = null;
+            try {
+                snapshot = this.controller.getSnapshot();
+                JsonWriter out = buffer.newJsonWriter();
+                if (exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                    HashMap<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                    writeConversion(out, snapshot, query.get("from"), query.get("to"), query.get("amount"));
+                    status = 200;
+                }
+                else if (exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+                    try (JsonReader in = new JsonReader(new InputStreamReader(exchange.getRequestBody(),
+                            StandardCharsets.UTF_8))) {
+                        convertBody(in, out, snapshot);
+                    }
+                    status = 200;
+                }
+                else {
+                    buffer.clear();
+                    writeError(buffer.newJsonWriter(), "Only GET and POST are supported");
+                    status = 405;
+                }
+                out.flush();
+            }
+            catch (IllegalArgumentException | IllegalStateException | JsonParseException | IOException e) {
+                buffer.clear();
+                JsonWriter out = buffer.newJsonWriter();
+                writeError(out, e.getMessage());
+                out.flush();
+                // Without a snapshot the rates are unavailable, and anything else, such as a wrong JSON token, is bad
+                status = snapshot == null ? 503 : 400;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, buffer.size());
+            try (OutputStream body = exchange.getResponseBody()) {
+                buffer.writeTo(body);
+            }
+        }
+        finally {
+            releaseBuffer(buffer);
+            exchange.close();
+        }
+    }
+
+    /**
+     * Handles a request to the metrics endpoint.
+     * @param exchange The request and its response
+     * @throws IOException If the response could not be sent
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = Metrics.dump().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Converts the conversion request or array of conversion requests in a request body.
+     * @param in The reader of the request body
+     * @param out The writer of the response body
+     * @param snapshot The currency data every conversion is made with
+     * @throws IOException If the request body is not valid JSON
+     */
+    private void convertBody(JsonReader in, JsonWriter out, StoredCurrency snapshot) throws IOException {
+        if (in.peek() == JsonToken.BEGIN_ARRAY) {
+            in.beginArray();
+            out.beginArray();
+            while (in.hasNext()) {
+                convertObject(in, out, snapshot);
+            }
+            out.endArray();
+            in.endArray();
+        }
+        else {
+            convertObject(in, out, snapshot);
+        }
+    }
+
+    /**
+     * Converts a single conversion request object.
+     * @param in The reader positioned at the start of the object
+     * @param out The writer of the response body
+     * @param snapshot The currency data the conversion is made with
+     * @throws IOException If the object is not valid JSON
+     */
+    private void convertObject(JsonReader in, JsonWriter out, StoredCurrency snapshot) throws IOException {
+        String from = null;
+        String to = null;
+        String amount = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals("from")) {
+                from = in.nextString();
+            }
+            else if (name.equals("to")) {
+                to = in.nextString();
+            }
+            else if (name.equals("amount")) {
+                amount = in.nextString();
+            }
+            else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        writeConversion(out, snapshot, from, to, amount);
+    }
+
+    /**
+     * Converts an amount and writes the result as a JSON object.
+     * @param out The writer of the response body
+     * @param snapshot The currency data the conversion is made with
+     * @param from The ISO code of the currency to convert from
+     * @param to The ISO code of the currency to convert to
+     * @param amount The amount to convert
+     * @throws IOException If the result could not be written
+     * @throws IllegalArgumentException If a field is missing, the amount is not a number or a currency is unsupported
+     */
+    private void writeConversion(JsonWriter out, StoredCurrency snapshot, String from, String to, String amount)
+            throws IOException {
+        if (from == null || to == null || amount == null) {
+            throw new IllegalArgumentException("from, to and amount are required");
+        }
+        int toId = CurrencyRegistry.idOf(to.toUpperCase(Locale.ROOT));
+        BigDecimal rate = snapshot.getCrossRate(CurrencyRegistry.idOf(from.toUpperCase(Locale.ROOT)), toId);
+        if (rate == null) {
+            throw new IllegalArgumentException("Conversion from " + from + " to " + to + " is not supported");
+        }
+        BigDecimal result = this.controller.convert(new BigDecimal(amount), rate, CurrencyRegistry.minorDigitsOf(toId));
+
+        out.beginObject();
+        out.name("from").value(from);
+        out.name("to").value(to);
+        out.name("amount").value(amount);
+        out.name("result").value(result.toPlainString());
+        out.name("date").value(snapshot.getDate().toLocalDate().toString());
+        out.name("stale").value(snapshot.isStale(LocalDateTime.now()));
+        out.endObject();
+    }
+
+    private static void writeError(JsonWriter out, String message) throws IOException {
+        out.beginObject();
+        out.name("error").value(message);
+        out.endObject();
+    }
+
+    /**
+     * Splits a URL query string into its decoded parameters.
+     * @param query The raw query string, which may be null
+     * @return HashMap of parameter names to values
+     * @throws UnsupportedEncodingException Never, as UTF-8 is always supported
+     */
+    private static HashMap<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        HashMap<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private ResponseBuffer acquireBuffer() {
+        ResponseBuffer buffer = this.buffers.poll();
+        return buffer == null ? new ResponseBuffer() : buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool unless the pool is full or the buffer has grown too large to keep.
+     * @param buffer The buffer to return
+     * @throws IOException Never, as the buffer is in memory
+     */
+    private void releaseBuffer(ResponseBuffer buffer) throws IOException {
+        if (buffer.capacity() <= MAX_POOLED_BUFFER_SIZE && this.buffers.size() < MAX_POOLED_BUFFERS) {
+            buffer.clear();
+            this.buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Starts a server on the given port and keeps it running until the JVM exits.
+     * @param controller The controller to convert with
+     * @param port The port to listen on, on the loopback interface only
+     */
+    public static void run(ConverterController controller, int port) {
+        try {
+            ConverterServer server = new ConverterServer(controller, port);
+            server.start();
+            System.out.println("Listening on http://localhost:" + port + "/convert");
+        }
+        catch (IOException e) {
+            System.out.println("Server could not be started: " + e.getMessage());
+        }
+    }
+
+    /**
+     * ResponseBuffer is a reusable byte buffer for response bodies.
+     */
+    private static final class ResponseBuffer extends ByteArrayOutputStream {
+
+        private final Writer writer = new OutputStreamWriter(this, StandardCharsets.UTF_8);
+
+        ResponseBuffer() {
+            super(4096);
+        }
+
+        /**
+         * @return A JSON writer appending to the buffer, which must be flushed before the buffer is read
+         */
+        JsonWriter newJsonWriter() {
+            return new JsonWriter(this.writer);
+        }
+
+        /**
+         * Empties the buffer, discarding anything written to it that has not been flushed yet.
+         * @throws IOException Never, as the buffer is in memory
+         */
+        void clear() throws IOException {
+            this.writer.flush();
+            reset();
+        }
+
+        int capacity() {
+            return this.buf.length;
+        }
+    }
+}
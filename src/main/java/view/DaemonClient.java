@@ -0,0 +1,168 @@
+package view;
+
+import controller.ConverterController;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The DaemonClient class forwards conversions to a running ConverterDaemon over its Unix domain socket.
+ * Only the socket classes are loaded to talk to the daemon, so a conversion costs little more than starting the JVM.
+ * When no daemon is running, the conversion is made in process instead.
+ */
+public class DaemonClient implements Closeable {
+
+    private final SocketChannel channel;
+    private final BufferedReader in;
+    private final Writer out;
+
+    /**
+     * Constructor for a DaemonClient object.
+     * @param socketPath The path of the socket of the daemon
+     * @throws IOException If no daemon is listening on the socket
+     */
+    public DaemonClient(Path socketPath) throws IOException {
+        this.channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            this.channel.connect(UnixDomainSocketAddress.of(socketPath));
+        }
+        catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+        this.in = new BufferedReader(new InputStreamReader(Channels.newInputStream(this.channel),
+                StandardCharsets.UTF_8));
+        this.out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(this.channel),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Finds the socket path configured by the currency.daemon.socket system property.
+     * By default the socket is kept where only the user can reach it, in $XDG_RUNTIME_DIR if it is set and in the
+     * .currency-converter directory of the home directory otherwise, which the daemon creates with 0700 permissions.
+     * @return The path of the socket
+     */
+    public static Path getDefaultSocketPath() {
+        String path = System.getProperty("currency.daemon.socket");
+        if (path != null) {
+            return Paths.get(path);
+        }
+        String runtimeDirectory = System.getenv("XDG_RUNTIME_DIR");
+        if (runtimeDirectory != null && !runtimeDirectory.isEmpty()) {
+            return Paths.get(runtimeDirectory, "currency-converter.sock");
+        }
+        return Paths.get(System.getProperty("user.home"), ".currency-converter", "daemon.sock");
+    }
+
+    /**
+     * Checks whether a daemon is accepting connections on a socket.
+     * @param socketPath The path of the socket
+     * @return Whether a connection could be made
+     */
+    static boolean isListening(Path socketPath) {
+        try {
+            new DaemonClient(socketPath).close();
+            return true;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Asks the daemon to convert an amount.
+     * @param from The ISO code of the currency to convert from
+     * @param to The ISO code of the currency to convert to
+     * @param amount The amount to convert
+     * @return The reply of the daemon, in the form OK result date FRESH|STALE or ERR message
+     * @throws IOException If the daemon could not be reached or closed the connection
+     */
+    public String convert(String from, String to, String amount) throws IOException {
+        this.out.write("CONVERT " + from + " " + to + " " + amount + "\n");
+        this.out.flush();
+        String reply = this.in.readLine();
+        if (reply == null) {
+            throw new EOFException("The daemon closed the connection");
+        }
+        return reply;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Converts an amount and prints the result, through the daemon if one is running and in process otherwise.
+     * The result alone is printed to standard output so scripts can read it, and any warning goes to standard error.
+     * @param amount The amount to convert
+     * @param from The ISO code of the currency to convert from
+     * @param to The ISO code of the currency to convert to
+     * @return Whether the amount was converted
+     */
+    public static boolean run(String amount, String from, String to) {
+        String reply;
+        try (DaemonClient client = new DaemonClient(getDefaultSocketPath())) {
+            reply = client.convert(from, to, amount);
+        }
+        catch (IOException e) {
+            return convertInProcess(amount, from, to);
+        }
+
+        if (reply.startsWith("OK ")) {
+            String[] parts = reply.split(" ");
+            System.out.println(parts[1]);
+            if (parts.length > 3 && parts[3].equals("STALE")) {
+                printStaleWarning(parts[2]);
+            }
+            return true;
+        }
+        System.err.println(reply.startsWith("ERR ") ? reply.substring(4) : reply);
+        return false;
+    }
+
+    /**
+     * Converts an amount without a daemon, loading the rates in this process.
+     * Whatever the controller prints while loading the rates is sent to standard error, so only the result reaches
+     * standard output.
+     * @param amount The amount to convert
+     * @param from The ISO code of the currency to convert from
+     * @param to The ISO code of the currency to convert to
+     * @return Whether the amount was converted
+     */
+    private static boolean convertInProcess(String amount, String from, String to) {
+        PrintStream result = System.out;
+        System.setOut(System.err);
+        ConverterController controller = new ConverterController();
+        try {
+            result.println(controller.convertByCode(from, to, new BigDecimal(amount)).toPlainString());
+            if (controller.isStale()) {
+                printStaleWarning(controller.getSnapshot().getDate().toLocalDate().toString());
+            }
+            return true;
+        }
+        catch (NumberFormatException e) {
+            System.err.println(amount + " is not a valid amount");
+            return false;
+        }
+        catch (IllegalArgumentException | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+        finally {
+            controller.close();
+            System.setOut(result);
+        }
+    }
+
+    private static void printStaleWarning(String date) {
+        System.err.println("Rates from " + date + " were used because newer rates could not be retrieved yet.");
+    }
+}
@@ -0,0 +1,161 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The BulkConverterTest class checks both bulk conversion paths against converting each amount on its own with
+ * BigDecimal and setScale HALF_UP.
+ */
+class BulkConverterTest {
+
+    private static final BigDecimal[] RATES = {
+            new BigDecimal("0.5"),
+            new BigDecimal("1"),
+            new BigDecimal("0.8567"),
+            new BigDecimal("142.3551234"),
+            new BigDecimal("1.2E+3"),
+            new BigDecimal("0.00000000000000000000123"),
+            new BigDecimal("1.2345678901234567890123456789"),
+            new BigDecimal("-0.75")
+    };
+
+    @Test
+    void doublesMatchBigDecimalForRandomAmounts() {
+        Random random = new Random(42);
+        double[] amounts = new double[5000];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = BigDecimal.valueOf(random.nextInt(200_000_000) - 100_000_000L, 2).doubleValue();
+        }
+        for (BigDecimal rate : RATES) {
+            for (int digits = 0; digits <= 3; digits++) {
+                assertDoublesMatch(amounts, rate, digits);
+            }
+        }
+    }
+
+    @Test
+    void minorUnitsMatchBigDecimalForRandomAmounts() {
+        Random random = new Random(42);
+        long[] amounts = new long[5000];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = random.nextInt(2_000_000_000) - 1_000_000_000L;
+        }
+        for (BigDecimal rate : RATES) {
+            for (int fromDigits = 0; fromDigits <= 3; fromDigits++) {
+                for (int toDigits = 0; toDigits <= 3; toDigits++) {
+                    assertMinorUnitsMatch(amounts, fromDigits, rate, toDigits);
+                }
+            }
+        }
+    }
+
+    @Test
+    void exactTiesRoundHalfUpAwayFromZero() {
+        double[] amounts = {0.01, -0.01, 0.03, -0.03, 1.005, -1.005, 2.675, -2.675, 0.125, -0.125};
+        assertDoublesMatch(amounts, new BigDecimal("0.5"), 2);
+        assertDoublesMatch(amounts, BigDecimal.ONE, 2);
+        assertDoublesMatch(amounts, BigDecimal.ONE, 1);
+
+        double[] results = new double[2];
+        BulkConverter.convert(new double[] {0.01, -0.01}, new BigDecimal("0.5"), 2, results);
+        assertArrayEquals(new double[] {0.01, -0.01}, results);
+
+        long[] minorUnits = {1, -1, 3, -3, 5, -5, 15, -15};
+        long[] minorResults = new long[minorUnits.length];
+        BulkConverter.convert(minorUnits, 2, new BigDecimal("0.5"), 2, minorResults);
+        assertArrayEquals(new long[] {1, -1, 2, -2, 3, -3, 8, -8}, minorResults);
+        assertMinorUnitsMatch(minorUnits, 2, new BigDecimal("0.5"), 2);
+        assertMinorUnitsMatch(minorUnits, 3, new BigDecimal("0.5"), 2);
+    }
+
+    @Test
+    void negativeAmountsMatchBigDecimal() {
+        double[] amounts = {-0.01, -1.99, -123456.78, -0.0, -99999999.99};
+        long[] minorUnits = {-1, -199, -12345678, 0, -9999999999L, Long.MIN_VALUE / 1_000_000};
+        for (BigDecimal rate : RATES) {
+            assertDoublesMatch(amounts, rate, 2);
+            assertMinorUnitsMatch(minorUnits, 2, rate, 2);
+        }
+    }
+
+    @Test
+    void ratesWithScaleAboveEighteenMatchBigDecimal() {
+        BigDecimal[] rates = {
+                new BigDecimal("0.0000000000000000001"),
+                new BigDecimal("1.00000000000000000050"),
+                new BigDecimal("137.12345678901234567890123"),
+                new BigDecimal("0.9999999999999999999999999999999999")
+        };
+        long[] minorUnits = {1, -1, 50, 199, -12345678, 9999999999L, Long.MAX_VALUE / 1_000_000,
+                Long.MIN_VALUE / 1_000_000};
+        double[] amounts = {0.01, -0.01, 0.5, 1.99, -123456.78, 99999999.99};
+        for (BigDecimal rate : rates) {
+            assertMinorUnitsMatch(minorUnits, 2, rate, 2);
+            assertMinorUnitsMatch(minorUnits, 0, rate, 3);
+            assertDoublesMatch(amounts, rate, 2);
+        }
+    }
+
+    @Test
+    void resultsMayOverwriteTheAmounts() {
+        long[] minorUnits = {100, -250, 333};
+        BulkConverter.convert(minorUnits, 2, new BigDecimal("1.5"), 2, minorUnits);
+        assertArrayEquals(new long[] {150, -375, 500}, minorUnits);
+
+        double[] amounts = {1.00, -2.50, 3.33};
+        BulkConverter.convert(amounts, new BigDecimal("1.5"), 2, amounts);
+        assertArrayEquals(new double[] {1.50, -3.75, 5.00}, amounts);
+    }
+
+    @Test
+    void overflowThrowsArithmeticException() {
+        long[] results = new long[1];
+        assertThrows(ArithmeticException.class, () ->
+                BulkConverter.convert(new long[] {Long.MAX_VALUE}, 2, new BigDecimal("2"), 2, results));
+        assertThrows(ArithmeticException.class, () ->
+                BulkConverter.convert(new long[] {Long.MIN_VALUE}, 2, new BigDecimal("1.5"), 2, results));
+        assertThrows(ArithmeticException.class, () ->
+                BulkConverter.convert(new long[] {Long.MAX_VALUE / 10}, 2, new BigDecimal("1"), 4, results));
+        assertThrows(ArithmeticException.class, () -> BulkConverter.convert(new long[] {Long.MAX_VALUE}, 2,
+                new BigDecimal("1.0100000000000000000000000001"), 2, results));
+    }
+
+    @Test
+    void mismatchedLengthsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () ->
+                BulkConverter.convert(new double[2], BigDecimal.ONE, 2, new double[1]));
+        assertThrows(IllegalArgumentException.class, () ->
+                BulkConverter.convert(new long[2], 2, BigDecimal.ONE, 2, new long[3]));
+    }
+
+    private static void assertDoublesMatch(double[] amounts, BigDecimal rate, int digits) {
+        double[] results = new double[amounts.length];
+        BulkConverter.convert(amounts, rate, digits, results);
+        for (int i = 0; i < amounts.length; i++) {
+            double expected = BigDecimal.valueOf(amounts[i]).multiply(rate)
+                    .setScale(digits, RoundingMode.HALF_UP).doubleValue();
+            assertEquals(expected, results[i], 0.0,
+                    () -> "Converting a double at a rate of " + rate + " to " + digits + " digits");
+        }
+    }
+
+    private static void assertMinorUnitsMatch(long[] amounts, int fromDigits, BigDecimal rate, int toDigits) {
+        long[] results = new long[amounts.length];
+        BulkConverter.convert(amounts, fromDigits, rate, toDigits, results);
+        for (int i = 0; i < amounts.length; i++) {
+            long expected = BigDecimal.valueOf(amounts[i], fromDigits).multiply(rate)
+                    .setScale(toDigits, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+            int index = i;
+            assertEquals(expected, results[i], () -> "Converting " + amounts[index] + " minor units at a rate of "
+                    + rate + " from " + fromDigits + " to " + toDigits + " digits");
+        }
+    }
+}
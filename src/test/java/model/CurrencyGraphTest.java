@@ -0,0 +1,139 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The CurrencyGraphTest class checks the best rates a CurrencyGraph keeps up to date as quotes change against
+ * recomputing them from scratch with Floyd-Warshall, and that arbitrages are found and cleared.
+ */
+class CurrencyGraphTest {
+
+    private static final int SIZE = 24;
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    void incrementalUpdatesMatchFullRecompute() {
+        Random random = new Random(42);
+        double[] values = new double[SIZE];
+        for (int id = 0; id < SIZE; id++) {
+            values[id] = Math.exp(random.nextGaussian() * 3);
+        }
+        CurrencyGraph graph = new CurrencyGraph(SIZE, 1e-9);
+        double[] quotes = new double[SIZE * SIZE];
+
+        for (int step = 0; step < 2000; step++) {
+            int from = random.nextInt(SIZE);
+            int to = random.nextInt(SIZE - 1);
+            if (to >= from) {
+                to++;
+            }
+            if (random.nextInt(5) == 0) {
+                graph.removeQuote(from, to);
+                quotes[from * SIZE + to] = 0;
+            }
+            else {
+                // A spread below the consistent cross rate keeps every cycle from gaining
+                double rate = values[to] / values[from] * (1 - random.nextDouble() * 0.02);
+                graph.setQuote(from, to, rate);
+                quotes[from * SIZE + to] = rate;
+            }
+            if (step % 50 == 0 || step >= 1950) {
+                assertMatchesFullRecompute(graph, quotes);
+            }
+        }
+        assertNull(graph.findArbitrage());
+    }
+
+    @Test
+    void arbitrageIsFoundAndCleared() {
+        int usd = 0;
+        int eur = 1;
+        int gbp = 2;
+        CurrencyGraph graph = new CurrencyGraph(3, 1e-6);
+        graph.setQuote(usd, eur, 0.9);
+        graph.setQuote(eur, usd, 1 / 0.9);
+        graph.setQuote(usd, gbp, 0.8);
+        graph.setQuote(gbp, usd, 1 / 0.8);
+        assertNull(graph.findArbitrage());
+        assertEquals(0.8 / 0.9, graph.getBestRate(eur, gbp), TOLERANCE);
+        assertTrue(Arrays.equals(new int[] {eur, usd, gbp}, graph.getBestPath(eur, gbp)));
+
+        graph.setQuote(eur, gbp, 0.8 / 0.9 * 1.01);
+        CurrencyGraph.Arbitrage arbitrage = graph.findArbitrage();
+        assertNotNull(arbitrage);
+        assertEquals(0.01, arbitrage.getGain(), TOLERANCE);
+        int[] cycle = arbitrage.getCycle();
+        assertEquals(cycle[0], cycle[cycle.length - 1]);
+        double product = 1;
+        for (int i = 0; i + 1 < cycle.length; i++) {
+            product *= graph.getQuote(cycle[i], cycle[i + 1]);
+        }
+        assertEquals(1.01, product, TOLERANCE);
+
+        graph.setQuote(eur, gbp, 0.8 / 0.9 * 0.99);
+        assertNull(graph.findArbitrage());
+        assertEquals(0.8 / 0.9, graph.getBestRate(eur, gbp), TOLERANCE);
+
+        graph.setQuote(eur, gbp, 0.8 / 0.9 * 1.01);
+        assertNotNull(graph.findArbitrage());
+        graph.removeQuote(eur, gbp);
+        assertNull(graph.findArbitrage());
+        assertEquals(0, graph.getQuote(eur, gbp));
+    }
+
+    /**
+     * Checks every best rate of a graph, and that its best paths hold the quotes that make up those rates.
+     * @param graph The graph whose quotes were changed one at a time
+     * @param quotes The quoted rates of the graph by pair, or 0 for pairs without a quote
+     */
+    private static void assertMatchesFullRecompute(CurrencyGraph graph, double[] quotes) {
+        double[] expected = floydWarshall(quotes);
+        for (int from = 0; from < SIZE; from++) {
+            for (int to = 0; to < SIZE; to++) {
+                double best = expected[from * SIZE + to];
+                double actual = graph.getBestRate(from, to);
+                assertEquals(best, actual, best * TOLERANCE, "Best rate from " + from + " to " + to);
+
+                int[] path = graph.getBestPath(from, to);
+                if (best == 0) {
+                    assertNull(path);
+                    continue;
+                }
+                double product = 1;
+                for (int i = 0; i + 1 < path.length; i++) {
+                    product *= quotes[path[i] * SIZE + path[i + 1]];
+                }
+                assertEquals(best, product, best * TOLERANCE, "Best path from " + from + " to " + to);
+            }
+        }
+    }
+
+    /**
+     * Finds the best rate between every pair of currencies by multiplying quotes directly, without logarithms.
+     * @param quotes The quoted rates by pair, or 0 for pairs without a quote
+     * @return The best rates by pair, or 0 for pairs without a path
+     */
+    private static double[] floydWarshall(double[] quotes) {
+        double[] best = quotes.clone();
+        for (int id = 0; id < SIZE; id++) {
+            best[id * SIZE + id] = Math.max(1, best[id * SIZE + id]);
+        }
+        for (int via = 0; via < SIZE; via++) {
+            for (int from = 0; from < SIZE; from++) {
+                for (int to = 0; to < SIZE; to++) {
+                    best[from * SIZE + to] = Math.max(best[from * SIZE + to],
+                            best[from * SIZE + via] * best[via * SIZE + to]);
+                }
+            }
+        }
+        return best;
+    }
+}